@@ -0,0 +1,76 @@
+package com.foxapplication.simplerpc.benchmark;
+
+import com.foxapplication.simplerpc.common.APIResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * APIResponse默认序列化方式的JSON与BSON往返开销。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class APIResponseBenchmark {
+
+    /**
+     * 消息体的大致字节数。
+     */
+    @Param({"16", "256", "4096"})
+    public int payloadSize;
+
+    private APIResponse request;
+    private String json;
+    private byte[] bson;
+
+    @Setup
+    public void setup() throws IOException {
+        request = Payloads.request("user.get", payloadSize);
+        json = request.toString();
+        bson = request.toBin();
+    }
+
+    @Benchmark
+    public String jsonEncode() {
+        return request.toString();
+    }
+
+    @Benchmark
+    public APIResponse jsonDecode() throws IOException {
+        return APIResponse.fromStr(json);
+    }
+
+    @Benchmark
+    public APIResponse jsonRoundTrip() throws IOException {
+        return APIResponse.fromStr(request.toString());
+    }
+
+    @Benchmark
+    public byte[] bsonEncode() throws IOException {
+        return request.toBin();
+    }
+
+    @Benchmark
+    public APIResponse bsonDecode() throws IOException {
+        return APIResponse.fromBin(bson);
+    }
+
+    @Benchmark
+    public APIResponse bsonRoundTrip() throws IOException {
+        return APIResponse.fromBin(request.toBin());
+    }
+}
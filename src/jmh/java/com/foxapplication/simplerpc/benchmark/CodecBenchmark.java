@@ -0,0 +1,84 @@
+package com.foxapplication.simplerpc.benchmark;
+
+import com.foxapplication.simplerpc.common.APIResponse;
+import com.foxapplication.simplerpc.common.BufferPool;
+import com.foxapplication.simplerpc.common.Codec;
+import com.foxapplication.simplerpc.common.Codecs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各编解码器的编码、延迟解码与完整往返开销。
+ * headerOnly只读取路由所需的头部字段，对应路由不存在或回调已超时时的开销。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    /**
+     * 编解码器名称。
+     */
+    @Param({"json", "bson", "smile", "cbor", "framed"})
+    public String codecName;
+
+    /**
+     * 消息体的大致字节数。
+     */
+    @Param({"16", "256", "4096"})
+    public int payloadSize;
+
+    private Codec codec;
+    private APIResponse request;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        codec = Codecs.get(codecName);
+        request = Payloads.request("user.get", payloadSize);
+        encoded = codec.encode(request);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return codec.encode(request);
+    }
+
+    @Benchmark
+    public int encodePooled() throws IOException {
+        try (BufferPool.Buffer buffer = BufferPool.acquire()) {
+            codec.encode(request, buffer);
+            return buffer.size();
+        }
+    }
+
+    @Benchmark
+    public String headerOnly() throws IOException {
+        return codec.decode(encoded).getKey();
+    }
+
+    @Benchmark
+    public Object decode() throws IOException {
+        return codec.decode(encoded).getRequest();
+    }
+
+    @Benchmark
+    public Object roundTrip() throws IOException {
+        return codec.decode(codec.encode(request)).getRequest();
+    }
+}
@@ -0,0 +1,104 @@
+package com.foxapplication.simplerpc.benchmark;
+
+import com.foxapplication.simplerpc.client.SimpleRPCClient;
+import com.foxapplication.simplerpc.common.APIResponse;
+import com.foxapplication.simplerpc.server.SimpleRPC;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SimpleRPC与SimpleRPCClient在本机回环上的端到端调用。
+ * 每次调用发送请求并等待响应，同时报告吞吐量与延迟分位数（SampleTime模式下的p0.99）；
+ * 使用-t指定线程数可以测量并发调用。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackBenchmark {
+
+    /**
+     * 协商的编解码器，为none时不参与协商，使用JSON文本。
+     */
+    @Param({"none", "json", "framed"})
+    public String codec;
+
+    /**
+     * 消息体的大致字节数。
+     */
+    @Param({"64", "1024"})
+    public int payloadSize;
+
+    /**
+     * 客户端每批最多合并的消息数量，0为不合并；配合-t多线程并发调用时使用-p batchSize=16对照。
+     */
+    @Param({"0"})
+    public int batchSize;
+
+    private SimpleRPC server;
+    private SimpleRPCClient client;
+    private Object body;
+
+    @Setup
+    public void setup() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new SimpleRPC("/ws", port);
+        server.init();
+        server.getRpcRouter().addRouterNode("echo", (request, response, data) -> Optional.of(APIResponse.success("ok", data.getRequest())));
+        server.start();
+
+        client = new SimpleRPCClient("127.0.0.1:" + port + "/ws");
+        client.setCodecs("none".equals(codec) ? List.of() : List.of(codec));
+        client.setBatchSize(batchSize);
+        client.init();
+        client.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!client.isStandby()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException("Client connect timeout");
+            }
+            Thread.sleep(10);
+        }
+        body = Payloads.body(payloadSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.stop();
+        server.stop();
+    }
+
+    @Benchmark
+    public APIResponse call() throws Exception {
+        CompletableFuture<APIResponse> future = new CompletableFuture<>();
+        APIResponse request = APIResponse.success("benchmark", body).createUUID();
+        request.setKey("echo");
+        client.sendAndCallBack(request, data -> {
+            future.complete(data);
+            return Optional.empty();
+        });
+        return future.get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,48 @@
+package com.foxapplication.simplerpc.benchmark;
+
+import com.foxapplication.simplerpc.common.APIResponse;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 基准测试使用的消息体。
+ */
+final class Payloads {
+
+    private Payloads() {
+    }
+
+    /**
+     * 构造编码后约为指定字节数的消息体
+     *
+     * @param size 消息体的大致字节数
+     * @return 消息体
+     */
+    static Map<String, Object> body(int size) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("id", 123456789L);
+        body.put("name", "SimpleRPC");
+        body.put("enabled", true);
+        body.put("score", 98.5);
+        StringBuilder text = new StringBuilder(size);
+        while (text.length() < size) {
+            text.append("abcdefghijklmnopqrstuvwxyz0123456789");
+        }
+        body.put("text", text.substring(0, size));
+        return body;
+    }
+
+    /**
+     * 构造一个带路由键和消息体的请求
+     *
+     * @param key 路由键
+     * @param size 消息体的大致字节数
+     * @return 请求
+     */
+    static APIResponse request(String key, int size) {
+        APIResponse request = APIResponse.success("benchmark", body(size)).createUUID();
+        request.setKey(key);
+        return request;
+    }
+}
@@ -0,0 +1,71 @@
+package com.foxapplication.simplerpc.benchmark;
+
+import com.foxapplication.simplerpc.common.APIResponse;
+import com.foxapplication.simplerpc.common.RPCRouterNode;
+import com.foxapplication.simplerpc.server.RPCRouter;
+import com.foxapplication.simplerpc.server.RPCServer;
+import com.foxapplication.simplerpc.server.SimpleRPC;
+import org.dromara.hutool.core.text.split.SplitUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RPCRouter的路由键解析开销。
+ * index为当前使用的扁平索引查找，treeWalk为按"."拆分后逐级遍历路由树，作为对照。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteBenchmark {
+
+    /**
+     * 要解析的路由键。
+     */
+    @Param({"user", "user.profile.get", "org.team.project.module.service.resource.action.get"})
+    public String key;
+
+    private RPCRouter router;
+
+    @Setup
+    public void setup() {
+        router = new SimpleRPC().getRpcRouter();
+        RPCServer server = (request, response, data) -> Optional.of(APIResponse.success("ok"));
+        // 200个不同深度的干扰路由
+        for (int i = 0; i < 200; i++) {
+            router.addRouterNode("service" + i + ".method" + (i % 7), server);
+        }
+        router.addRouterNode(key, server);
+    }
+
+    @Benchmark
+    public RPCRouterNode<RPCServer> index() {
+        return router.getRouteTable().lookup(key);
+    }
+
+    @Benchmark
+    public RPCRouterNode<RPCServer> treeWalk() {
+        RPCRouterNode<RPCServer> node = router.getRouteTable().getRoot();
+        for (String s : SplitUtil.split(key, ".", true, false)) {
+            node = node.getChildren().get(s);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+}
@@ -0,0 +1,98 @@
+package com.foxapplication.simplerpc.benchmark;
+
+import com.foxapplication.simplerpc.common.LongPendingTable;
+import com.foxapplication.simplerpc.common.TimedCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 挂起调用表在多线程竞争下的开销。
+ * putClaim对应正常响应，putExpire对应超时，均与TimedCache和LongPendingTable对照。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class TimedCacheBenchmark {
+
+    private static final Object VALUE = new Object();
+
+    private TimedCache<String, Object> cache;
+    private LongPendingTable<Object> table;
+    private final AtomicLong expired = new AtomicLong();
+
+    /**
+     * 每个线程独立的键序列。
+     */
+    @State(Scope.Thread)
+    public static class Keys {
+        private static final AtomicLong THREADS = new AtomicLong();
+        private final String prefix = "t" + THREADS.incrementAndGet() + "-";
+        private long sequence;
+
+        String next() {
+            return prefix + (sequence++);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        cache = new TimedCache<>(60_000, entry -> expired.incrementAndGet());
+        table = new LongPendingTable<>();
+        table.setTimeout(60_000);
+        table.setCallback((key, value) -> expired.incrementAndGet());
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.shutdown();
+        table.shutdown();
+    }
+
+    @Benchmark
+    public Object cachePutClaim(Keys keys) {
+        String key = keys.next();
+        cache.put(key, VALUE);
+        return cache.claim(key);
+    }
+
+    @Benchmark
+    public Object cachePutGet(Keys keys) {
+        String key = keys.next();
+        cache.put(key, VALUE);
+        Object value = cache.get(key);
+        cache.remove(key);
+        return value;
+    }
+
+    @Benchmark
+    public void cachePutExpire(Keys keys) {
+        cache.put(keys.next(), VALUE, 1);
+    }
+
+    @Benchmark
+    public Object tablePutClaim() {
+        return table.claim(table.put(VALUE));
+    }
+
+    @Benchmark
+    public long tablePutExpire() {
+        return table.put(VALUE, 1);
+    }
+}
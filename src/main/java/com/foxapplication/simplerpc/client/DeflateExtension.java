@@ -0,0 +1,53 @@
+package com.foxapplication.simplerpc.client;
+
+import com.foxapplication.simplerpc.common.DeflateOptions;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.FramedataImpl1;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 客户端的permessage-deflate扩展。
+ * Java-WebSocket自带的实现按负载的整个底层数组压缩，而发送时负载是线程级缓冲区的一段，
+ * 这里在达到阈值需要压缩时先截取出有效数据；握手请求按DeflateOptions决定是否要求服务端不保留上下文。
+ * 客户端发送时总是不保留压缩上下文。
+ */
+class DeflateExtension extends PerMessageDeflateExtension {
+
+    private final DeflateOptions options;
+
+    DeflateExtension(DeflateOptions options) {
+        this.options = options;
+        setThreshold(options.getThreshold());
+    }
+
+    @Override
+    public void encodeFrame(Framedata inputFrame) {
+        if (!(inputFrame instanceof DataFrame)) {
+            return;
+        }
+        ByteBuffer payload = inputFrame.getPayloadData();
+        if (payload.remaining() < options.getThreshold()) {
+            return;
+        }
+        if (payload.arrayOffset() + payload.position() != 0 || payload.remaining() != payload.array().length) {
+            int from = payload.arrayOffset() + payload.position();
+            ((FramedataImpl1) inputFrame).setPayload(ByteBuffer.wrap(Arrays.copyOfRange(payload.array(), from, from + payload.remaining())));
+        }
+        super.encodeFrame(inputFrame);
+    }
+
+    @Override
+    public String getProvidedExtensionAsClient() {
+        return options.offer();
+    }
+
+    @Override
+    public IExtension copyInstance() {
+        return new DeflateExtension(options);
+    }
+}
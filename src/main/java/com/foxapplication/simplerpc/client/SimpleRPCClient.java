@@ -1,18 +1,42 @@
 package com.foxapplication.simplerpc.client;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.foxapplication.simplerpc.common.APIResponse;
+import com.foxapplication.simplerpc.common.Batch;
+import com.foxapplication.simplerpc.common.BatchQueue;
+import com.foxapplication.simplerpc.common.BufferPool;
+import com.foxapplication.simplerpc.common.Cancellation;
+import com.foxapplication.simplerpc.common.Codec;
+import com.foxapplication.simplerpc.common.Codecs;
+import com.foxapplication.simplerpc.common.DeflateOptions;
+import com.foxapplication.simplerpc.common.ExecutionMode;
+import com.foxapplication.simplerpc.common.Invalidation;
+import com.foxapplication.simplerpc.common.LazyAPIResponse;
+import com.foxapplication.simplerpc.common.LongPendingTable;
+import com.foxapplication.simplerpc.common.RPCException;
 import com.foxapplication.simplerpc.common.RPCRouterNode;
+import com.foxapplication.simplerpc.common.RequestKey;
+import com.foxapplication.simplerpc.common.RouteOptions;
+import com.foxapplication.simplerpc.common.RouteTable;
 import com.foxapplication.simplerpc.common.TimedCache;
+import com.foxapplication.simplerpc.common.TinyLfuCache;
+import com.foxapplication.simplerpc.common.Topics;
+import com.foxapplication.simplerpc.common.VirtualThreads;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.dromara.hutool.core.net.url.UrlBuilder;
+import org.dromara.hutool.core.net.url.UrlQuery;
 import org.dromara.hutool.core.net.url.UrlUtil;
 import org.dromara.hutool.core.text.StrUtil;
-import org.dromara.hutool.core.text.split.SplitUtil;
 import org.dromara.hutool.core.thread.ExecutorBuilder;
+import org.dromara.hutool.core.thread.ThreadUtil;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.framing.TextFrame;
 import org.java_websocket.handshake.ServerHandshake;
 import org.smartboot.http.server.WebSocketRequest;
 import org.smartboot.http.server.WebSocketResponse;
@@ -20,10 +44,23 @@ import org.smartboot.http.server.WebSocketResponse;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 public class SimpleRPCClient {
@@ -39,8 +76,23 @@ public class SimpleRPCClient {
     @Getter
     private WebSocketClient webSocketClient = null;
     private final TimedCache<String, RPCServer> cache = new TimedCache<>();
+    /**
+     *  数字关联的挂起调用表，ID在本连接内单调递增，值为回调的RPCServer或{@link #call}返回的CompletableFuture
+     */
+    private final LongPendingTable<Object> pendingTable = new LongPendingTable<>();
+    /**
+     *  是否使用数字关联模式，开启后发送并回调时为请求分配递增的数字ID代替UUID
+     */
+    @Getter
+    @Setter
+    private boolean numericCorrelation = false;
+    /**
+     *  路由表
+     */
+    @Getter
+    private final RouteTable<RPCServer> routeTable = new RouteTable<>();
     @Getter
-    private final RPCRouterNode<RPCServer> root = new RPCRouterNode<>();
+    private final RPCRouterNode<RPCServer> root = routeTable.getRoot();
     @Getter
     @Setter
     private boolean ssl = false;
@@ -52,26 +104,114 @@ public class SimpleRPCClient {
     @Getter
     @Setter
     private boolean binaryFirst = false;
-    private final ExecutorService executorService = ExecutorBuilder.of()
-            .setCorePoolSize(1)
-            .setMaxPoolSize(1)
-            .setKeepAliveTime(0)
-            .build();
+    /**
+     *  支持的编解码器，按偏好顺序在握手时发送给服务端，为空时不参与协商，沿用原有的JSON/BSON格式。
+     *  默认不参与协商，需要framed/Smile/CBOR时显式设置，例如Codecs.DEFAULT_PREFERENCE
+     */
+    @Getter
+    @Setter
+    private List<String> codecs = Collections.emptyList();
+    /**
+     *  握手时与服务端协商的编解码器，服务端未参与协商时为null
+     */
+    @Getter
+    private volatile Codec codec = null;
+    /**
+     *  permessage-deflate压缩配置，为null时不请求压缩，需在init前设置
+     */
+    @Getter
+    @Setter
+    private DeflateOptions compression = null;
+    /**
+     *  单条消息允许的最大字节数，分片消息按重组后的大小计算，需在init前设置
+     */
+    @Getter
+    @Setter
+    private int maxMessageSize = 64 * 1024 * 1024;
+    /**
+     *  处理线程，停止时关闭，再次启动时重新创建
+     */
+    private volatile ExecutorService executorService = newExecutorService();
+    /**
+     *  处理器执行模式，需在启动前设置
+     */
+    @Getter
+    @Setter
+    private ExecutionMode executionMode = ExecutionMode.DEFAULT;
+    /**
+     *  虚拟线程执行器，仅在虚拟线程模式下创建
+     */
+    private volatile ExecutorService virtualExecutor = null;
+    /**
+     *  每批最多合并的消息数量，小于2时不合并，需在启动前设置
+     */
+    @Getter
+    @Setter
+    private int batchSize = 0;
+    /**
+     *  批量的等待窗口，单位为微秒，第一条消息入队后最多等待该时长
+     */
+    @Getter
+    @Setter
+    private long batchLingerMicros = 200;
+    /**
+     *  发送批量队列，仅在开启批量时创建
+     */
+    private BatchQueue batchQueue = null;
+    /**
+     *  调用缓存，键为路由键，仅为开启了缓存的路由创建
+     */
+    private final Map<String, TinyLfuCache<RequestKey, APIResponse>> memoCaches = new ConcurrentHashMap<>();
+    /**
+     *  调用缓存的失效次数，调用发出后发生过失效时其结果不写入缓存，避免写回失效前计算的结果
+     */
+    private final AtomicLong memoGeneration = new AtomicLong();
+    /**
+     *  连接断开后是否自动重连，重连间隔按带随机抖动的指数退避增长，需在启动前设置
+     */
+    @Getter
+    @Setter
+    private boolean autoReconnect = false;
+    /**
+     *  重连退避的最小间隔，单位为毫秒
+     */
+    @Getter
+    @Setter
+    private long reconnectMinDelay = 100;
+    /**
+     *  重连退避的最大间隔，单位为毫秒
+     */
+    @Getter
+    @Setter
+    private long reconnectMaxDelay = 30 * 1000;
+    /**
+     *  连续重连失败的次数，连接建立后清零
+     */
+    private volatile int reconnectAttempt = 0;
+    /**
+     *  重连调度器，仅在开启自动重连时创建，WebSocket的读线程在连接断开时读取
+     */
+    private volatile ScheduledExecutorService reconnectScheduler = null;
+    /**
+     *  是否已停止，停止后不再重连
+     */
+    private volatile boolean stopped = false;
+    /**
+     *  幂等路由，断线时这些路由未完成的调用不立即失败，而是在重连后重新发送
+     */
+    private final Set<String> idempotentRoutes = ConcurrentHashMap.newKeySet();
+    /**
+     *  已订阅的主题，重连后重新订阅
+     */
+    private final Set<String> subscriptions = ConcurrentHashMap.newKeySet();
 
     public SimpleRPCClient(String url) {
         this.url = url;
         // 设置根路由的RPC服务器处理逻辑
         root.setRpcServer((data)->{
-            // 从任务缓存中获取与请求UUID关联的RPC服务器实例
-            RPCServer server = cache.get(data.getUUID());
-            if (server != null){
-                // 如果找到匹配的RPC服务器实例，则从缓存中移除，以避免重复处理
-                cache.remove(data.getUUID());
-                // 调用找到的RPC服务器实例处理请求并返回处理结果
-                return server.handle(data);
-            }
-            // 如果没有找到匹配的RPC服务器实例，返回空的Optional
-            return Optional.empty();
+            // 从任务缓存中原子地取出与请求数字ID或UUID关联的RPC服务器实例，避免与超时重复处理
+            Object pending = data.getId() != 0 ? pendingTable.claim(data.getId()) : cache.claim(data.getUUID());
+            return complete(pending, data);
         });
         cache.setCallback((key, value)->{
             APIResponse response = APIResponse.create().UUID(key);
@@ -79,17 +219,29 @@ public class SimpleRPCClient {
             response.setMessage("Request timeout");
             value.handle(response);
         });
+        pendingTable.setCallback((key, value)->{
+            APIResponse response = APIResponse.create().id(key);
+            response.setStatus(408);
+            response.setMessage("Request timeout");
+            complete(value, response);
+        });
     }
     public void init(){
-        String ws_url = UrlBuilder.of()
-                .setScheme(ssl ? "wss" : "ws")
-                .setHost(url)
-                .addQuery("token",token)
-                .build();
-        webSocketClient = new WebSocketClient(UrlUtil.toURI(ws_url)) {
+        // java.net.URL不支持ws协议，查询参数单独构建后拼接
+        UrlQuery query = UrlQuery.of().add("token",token);
+        if (codecs != null && !codecs.isEmpty()) {
+            query.add(Codecs.QUERY_PARAM, String.join(",", codecs));
+        }
+        String ws_url = (ssl ? "wss" : "ws") + "://" + url + "?" + query.build(StandardCharsets.UTF_8);
+        List<IExtension> extensions = compression == null ? Collections.emptyList() : Collections.singletonList(new DeflateExtension(compression));
+        Draft draft = new Draft_6455(extensions, maxMessageSize);
+        webSocketClient = new WebSocketClient(UrlUtil.toURI(ws_url), draft) {
             @Override
             public void onOpen(ServerHandshake serverHandshake) {
+                codec = Codecs.get(serverHandshake.getFieldValue(Codecs.HEADER));
                 standby=true;
+                reconnectAttempt = 0;
+                restore();
             }
 
             @Override
@@ -99,37 +251,77 @@ public class SimpleRPCClient {
 
             @Override
             public void onMessage(ByteBuffer bytes) {
-                handleBin(bytes.array());
+                handleBin(bytes);
             }
 
             @Override
             public void onClose(int i, String s, boolean b) {
                 standby=false;
+                // 断开期间收不到失效消息，缓存的结果不再可信
+                invalidateMemo();
+                failPending();
+                scheduleReconnect();
             }
 
             @Override
             public void onError(Exception e) {
-                log.error("WebSocket connection failed.",e);
+                if (autoReconnect && !stopped) {
+                    // 重连期间连接失败是预期的，随后的onClose会调度下一次重连
+                    log.warn("WebSocket connection failed: {}", e.toString());
+                } else {
+                    log.error("WebSocket connection failed.",e);
+                }
                 standby=false;
             }
         };
-        root.setRpcServer(data->{
-            RPCServer server = cache.get(data.getKey());
-            if (server != null){
-                return server.handle(data);
-            }
-            return Optional.empty();
-        });
     }
     public void start() throws IOException {
+        if (executorService.isShutdown()) {
+            executorService = newExecutorService();
+        }
+        if (executionMode == ExecutionMode.VIRTUAL && virtualExecutor == null) {
+            virtualExecutor = VirtualThreads.newPerTaskExecutor("SimpleRPC-Client-Virtual-");
+        }
+        if (batchSize > 1 && batchQueue == null) {
+            batchQueue = new BatchQueue(batchSize, TimeUnit.MICROSECONDS.toNanos(batchLingerMicros), this::flushBatch, "SimpleRPC-Client-Batch");
+        }
+        if (autoReconnect && reconnectScheduler == null) {
+            reconnectScheduler = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newNamedThreadFactory("SimpleRPC-Client-Reconnect-", true));
+        }
+        stopped = false;
         webSocketClient.connect();
+        cache.setTimeout(timeout);
+        pendingTable.setTimeout(timeout);
         cache.startCleanupTask();
     }
 
     public void handleBin(byte[] data){
         APIResponse apiResponse;
         try {
-            apiResponse = APIResponse.fromBin(data);
+            apiResponse = binaryCodec().decode(data);
+        } catch (Exception e) {
+            log.error("Data conversion failed.",e);
+            return;
+        }
+        handle(apiResponse);
+    }
+    /**
+     * 处理二进制消息，支持直接缓冲区
+     * 直接缓冲区的数据先复制到线程级的缓冲区中，解码结果不引用该缓冲区
+     *
+     * @param data 二进制消息
+     */
+    public void handleBin(ByteBuffer data){
+        APIResponse apiResponse;
+        try {
+            if (data.hasArray()) {
+                apiResponse = binaryCodec().decode(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            } else {
+                try (BufferPool.Buffer buffer = BufferPool.acquire()) {
+                    buffer.write(data);
+                    apiResponse = binaryCodec().decode(buffer.array(), 0, buffer.size());
+                }
+            }
         } catch (Exception e) {
             log.error("Data conversion failed.",e);
             return;
@@ -139,8 +331,8 @@ public class SimpleRPCClient {
     public void handleStr(String data){
         APIResponse apiResponse;
         try {
-            apiResponse = APIResponse.fromStr(data);
-        } catch (JsonProcessingException e) {
+            apiResponse = LazyAPIResponse.decodeStr(data);
+        } catch (IOException e) {
             log.error("Data conversion failed.",e);
             return;
         }
@@ -148,51 +340,335 @@ public class SimpleRPCClient {
     }
 
     private void handle(APIResponse data){
+        if (Invalidation.KEY.equals(data.getKey())){
+            applyInvalidation(data);
+            return;
+        }
+        if (Batch.isBatch(data)){
+            List<APIResponse> items;
+            try {
+                items = Batch.unpack(data);
+            } catch (Exception e) {
+                log.error("Data conversion failed.",e);
+                return;
+            }
+            items.forEach(this::handle);
+            return;
+        }
         if (StrUtil.isBlankIfStr(data.getKey())){
-            executorService.execute(()->{
+            if (data.getId() != 0) {
+                Object pending = pendingTable.claim(data.getId());
+                if (pending == null) {
+                    return;
+                }
+                if (unwrap(pending) instanceof CompletableFuture) {
+                    // 在读取线程上直接完成，不经过执行器
+                    complete(pending, data);
+                    return;
+                }
+                dispatch(() -> complete(pending, data).ifPresent(this::send));
+                return;
+            }
+            dispatch(()->{
                 Optional<APIResponse> result = root.getRpcServer().handle(data);
                 result.ifPresent(this::send);
             });
             return;
         }
-        executorService.execute(()->{
-            List<String> keys = SplitUtil.split(data.getKey(), ".");
-            RPCRouterNode<RPCServer> cacheNode = root;
-            for (String s : keys) {
-                cacheNode = cacheNode.getChildren().get(s);
-                if (cacheNode == null){
-                    break;
-                }
+        long deadline = data.getDeadline() > 0 ? System.nanoTime() + data.getDeadline() * 1_000_000L : 0;
+        dispatch(()->{
+            if (deadline != 0 && System.nanoTime() - deadline >= 0) {
+                // 服务端已经放弃等待，不再执行
+                log.debug("Call expired before execution:[{}]", data.getKey());
+                return;
             }
+            RPCRouterNode<RPCServer> cacheNode = routeTable.lookup(data.getKey());
             if (cacheNode == null){
-                send(APIResponse.error404("No matching APIs found").UUID(data.getUUID()));
+                send(APIResponse.error404("No matching APIs found").correlate(data));
                 return;
             }
-            Optional<APIResponse> result = cacheNode.getRpcServer().handle(data);
-            result.ifPresent(this::send);
+            RouteOptions options = cacheNode.getOptions();
+            Optional<APIResponse> result;
+            if (options == null) {
+                result = cacheNode.getRpcServer().handle(data);
+            } else {
+                // 只有虚拟线程模式下等待许可，平台线程上达到上限时直接拒绝
+                if (virtualExecutor != null) {
+                    try {
+                        options.acquire();
+                    } catch (InterruptedException e) {
+                        // 客户端停止时中断等待，不再执行处理器
+                        Thread.currentThread().interrupt();
+                        log.debug("Interrupted while waiting for route permit:[{}]", data.getKey());
+                        return;
+                    }
+                } else if (!options.tryAcquire()) {
+                    APIResponse rejected = APIResponse.create().correlate(data);
+                    rejected.setStatus(503);
+                    rejected.setMessage("Route busy");
+                    send(rejected);
+                    return;
+                }
+                try {
+                    result = cacheNode.getRpcServer().handle(data);
+                } finally {
+                    options.release();
+                }
+            }
+            result.ifPresent(apiResponse -> send(apiResponse.correlate(data)));
         });
     }
 
+    /**
+     * 以响应完成挂起的调用
+     *
+     * @param pending 挂起的回调或CompletableFuture，为null时忽略
+     * @param data 响应
+     * @return 回调的处理结果
+     */
+    @SuppressWarnings("unchecked")
+    private static Optional<APIResponse> complete(Object pending, APIResponse data){
+        pending = unwrap(pending);
+        if (pending instanceof CompletableFuture) {
+            ((CompletableFuture<APIResponse>) pending).complete(data);
+            return Optional.empty();
+        }
+        if (pending instanceof RPCServer) {
+            return ((RPCServer) pending).handle(data);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * 取出重发登记中的回调或CompletableFuture
+     *
+     * @param pending 挂起的值
+     * @return 挂起的回调或CompletableFuture
+     */
+    private static Object unwrap(Object pending){
+        return pending instanceof Resend ? ((Resend) pending).pending : pending;
+    }
+
+    /**
+     * 连接断开时立即以503结束挂起的调用，不再等待超时；开启自动重连时幂等路由的调用保留到重连后重新发送
+     */
+    private void failPending(){
+        boolean keepResend = autoReconnect && !stopped;
+        int failed = pendingTable.claimIf(pending -> !keepResend || !(pending instanceof Resend), (id, pending) ->
+                failPending(pending, APIResponse.create().id(id)));
+        failed += cache.claimIf(pending -> !keepResend || !(pending instanceof Resend), (uuid, pending) ->
+                failPending(pending, APIResponse.create().UUID(uuid)));
+        if (failed > 0) {
+            log.debug("Connection closed, failed {} pending calls.", failed);
+        }
+    }
+
+    /**
+     * 以连接断开的响应结束挂起的调用
+     * 回调与正常响应一样在处理线程中执行，不占用WebSocket的读线程，回调返回的响应同样会被发送
+     *
+     * @param pending 挂起的值
+     * @param response 与调用关联的空响应
+     */
+    private void failPending(Object pending, APIResponse response){
+        response.setStatus(503);
+        response.setMessage("Connection closed");
+        dispatch(() -> complete(pending, response).ifPresent(this::send));
+    }
+
+    /**
+     * 按带随机抖动的指数退避调度下一次重连，间隔在最小间隔与当前退避上限之间随机选取，避免大量客户端同时重连
+     */
+    private void scheduleReconnect(){
+        ScheduledExecutorService scheduler = reconnectScheduler;
+        if (!autoReconnect || stopped || scheduler == null) {
+            return;
+        }
+        int attempt = reconnectAttempt++;
+        long ceiling = Math.min(reconnectMaxDelay, reconnectMinDelay << Math.min(attempt, 20));
+        long delay = ThreadLocalRandom.current().nextLong(reconnectMinDelay, Math.max(reconnectMinDelay, ceiling) + 1);
+        log.debug("Reconnect attempt {} in {}ms.", attempt + 1, delay);
+        try {
+            scheduler.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            // 调度器已在停止时关闭
+            log.debug("Reconnect cancelled.", e);
+        }
+    }
+
+    /**
+     * 重新建立连接，不能在连接自身的线程中调用
+     */
+    private void reconnect(){
+        if (stopped) {
+            return;
+        }
+        try {
+            webSocketClient.reconnect();
+        } catch (RuntimeException e) {
+            log.warn("Reconnect failed.", e);
+            scheduleReconnect();
+        }
+    }
+
+    /**
+     * 连接建立后恢复连接级状态：重新订阅主题，并重新发送断线时保留的幂等调用
+     */
+    private void restore(){
+        try {
+            if (!subscriptions.isEmpty()) {
+                send(Topics.subscribe(subscriptions.toArray(new String[0])));
+            }
+            pendingTable.forEach((id, pending) -> {
+                if (pending instanceof Resend) {
+                    resend((Resend) pending);
+                }
+            });
+            cache.forEach((uuid, pending) -> {
+                if (pending instanceof Resend) {
+                    resend((Resend) pending);
+                }
+            });
+        } catch (RuntimeException e) {
+            // 连接在恢复期间再次断开，保留的调用由下一次重连继续处理
+            log.warn("Restore connection state failed.", e);
+        }
+    }
+
+    /**
+     * 重新发送保留的调用，截止时间按剩余的超时时间更新
+     *
+     * @param resend 保留的调用
+     */
+    private void resend(Resend resend){
+        APIResponse data = resend.request;
+        long remaining = TimeUnit.NANOSECONDS.toMillis(resend.expiresAt - System.nanoTime());
+        if (remaining <= 0) {
+            return;
+        }
+        data.setDeadline(remaining);
+        send(data);
+    }
+
+    /**
+     * 按执行模式提交处理任务
+     *
+     * @param task 处理任务
+     */
+    private void dispatch(Runnable task){
+        ExecutorService executor = virtualExecutor;
+        if (executor == null) {
+            executor = executorService;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // 客户端已停止，在当前线程中执行，挂起的调用仍能结束
+            task.run();
+        }
+    }
+
+    /**
+     * 创建单线程的处理线程池
+     *
+     * @return 处理线程池
+     */
+    private static ExecutorService newExecutorService(){
+        return ExecutorBuilder.of()
+                .setCorePoolSize(1)
+                .setMaxPoolSize(1)
+                .setKeepAliveTime(0)
+                .build();
+    }
+
     public void stop(){
         if (webSocketClient == null){
             return;
         }
+        stopped = true;
+        ScheduledExecutorService scheduler = reconnectScheduler;
+        if (scheduler != null) {
+            reconnectScheduler = null;
+            scheduler.shutdownNow();
+        }
+        if (batchQueue != null) {
+            batchQueue.shutdown();
+            batchQueue = null;
+        }
         webSocketClient.close();
+        // 关闭握手是异步的，onClose可能在执行器关闭后才执行，挂起的调用在此同步结束，回调在执行器关闭前提交
+        failPending();
         cache.shutdown();
+        pendingTable.shutdown();
+        ExecutorService executor = virtualExecutor;
+        if (executor != null) {
+            virtualExecutor = null;
+            executor.shutdown();
+        }
+        // 已提交的回调在关闭后仍会执行完
+        executorService.shutdown();
     }
+    /**
+     * 获取收发二进制消息使用的编解码器
+     *
+     * @return 协商的二进制编解码器，未协商或协商结果为文本格式时返回BSON编解码器
+     */
+    private Codec binaryCodec(){
+        Codec current = codec;
+        if (current == null || !current.isBinary()) {
+            return Codecs.BSON;
+        }
+        return current;
+    }
+    /**
+     * 发送数据，协商过编解码器时按协商结果选择消息类型，否则按binaryFirst选择
+     * 开启批量时消息先进入批量队列，由批量线程合并发送
+     *
+     * @param data API响应数据
+     */
     public void send(APIResponse data){
-        send(data,binaryFirst);
+        BatchQueue queue = batchQueue;
+        if (queue != null && queue.add(data)) {
+            return;
+        }
+        Codec current = codec;
+        send(data, current == null ? binaryFirst : current.isBinary());
+    }
+    /**
+     * 发送一批消息，只有一条时直接发送，否则合并为一个批量信封
+     *
+     * @param items 要发送的消息
+     */
+    private void flushBatch(List<APIResponse> items){
+        Codec current = codec;
+        boolean bin = current == null ? binaryFirst : current.isBinary();
+        send(items.size() == 1 ? items.get(0) : Batch.of(items), bin);
     }
+    /**
+     * 发送数据，消息编码到线程级的缓冲区后直接组帧，不经过中间字符串或数组
+     *
+     * @param data API响应数据
+     * @param bin 是否以二进制方式发送
+     */
     public void send(APIResponse data,boolean bin){
-        if (bin) {
+        try (BufferPool.Buffer buffer = BufferPool.acquire()) {
             try {
-                webSocketClient.send(data.toBin());
-            } catch (JsonProcessingException e) {
+                (bin ? binaryCodec() : Codecs.JSON).encode(data, buffer);
+            } catch (IOException e) {
                 log.error("Data conversion failed.", e);
-                cache.remove(data.getUUID());
+                removeSendCallBack(data);
+                return;
+            }
+            // 帧在发送调用内完成掩码复制，返回后缓冲区即可复用
+            ByteBuffer payload = ByteBuffer.wrap(buffer.array(), 0, buffer.size());
+            if (bin) {
+                webSocketClient.send(payload);
+            } else {
+                TextFrame frame = new TextFrame();
+                frame.setPayload(payload);
+                frame.setTransferemasked(true);
+                webSocketClient.sendFrame(frame);
             }
-        } else {
-            webSocketClient.send(data.toString());
         }
     }
     /**
@@ -204,6 +680,49 @@ public class SimpleRPCClient {
     public void addSendCallBack(String uuid,RPCServer rpcServer) {
         cache.put(uuid, rpcServer);
     }
+
+    /**
+     * 为请求登记回调，数字关联模式下为请求分配数字ID，否则使用请求的UUID
+     * 请求未设置截止时间时以回调的超时时间作为截止时间，服务端不会执行排队期间已超时的请求
+     *
+     * @param data 要发送的请求
+     * @param rpcServer 回调的RPC服务器实例
+     */
+    private void addSendCallBack(APIResponse data, RPCServer rpcServer) {
+        if (data.getDeadline() == 0) {
+            data.setDeadline(timeout);
+        }
+        if (isIdempotent(data.getKey())) {
+            rpcServer = new Resend(data, rpcServer, timeout);
+        }
+        if (numericCorrelation) {
+            data.setId(pendingTable.put(rpcServer));
+        } else {
+            addSendCallBack(data.getUUID(), rpcServer);
+        }
+    }
+
+    /**
+     * 取消请求登记的回调
+     *
+     * @param data 已登记回调的请求
+     */
+    private void removeSendCallBack(APIResponse data) {
+        if (Batch.isBatch(data)) {
+            for (Object item : (List<?>) data.getRequest()) {
+                removeSendCallBack((APIResponse) item);
+            }
+            return;
+        }
+        if (data.getId() != 0) {
+            Object pending = unwrap(pendingTable.claim(data.getId()));
+            if (pending instanceof CompletableFuture) {
+                ((CompletableFuture<?>) pending).completeExceptionally(new RPCException(400, "Data conversion failed"));
+            }
+        } else {
+            cache.remove(data.getUUID());
+        }
+    }
     /**
      * 发送数据并回调
      *
@@ -212,53 +731,379 @@ public class SimpleRPCClient {
      * @param rpcServer 相关的RPC服务器实例
      */
     public void sendAndCallBack( APIResponse data, boolean isBinary, RPCServer rpcServer) {
-        addSendCallBack(data.getUUID(), rpcServer);
+        RPCServer callback = memoized(data, rpcServer);
+        if (callback == null) {
+            return;
+        }
+        addSendCallBack(data, callback);
         send(data, isBinary);
     }
     public void sendAndCallBack(APIResponse data,RPCServer rpcServer) {
-        addSendCallBack(data.getUUID(), rpcServer);
+        RPCServer callback = memoized(data, rpcServer);
+        if (callback == null) {
+            return;
+        }
+        addSendCallBack(data, callback);
         send(data);
     }
 
     /**
-     * 添加路由节点
+     * 调用服务端路由，返回在响应到达时完成的CompletableFuture
+     * 调用使用数字关联，挂起的Future直接保存在挂起调用表中；响应在连接的读取线程上完成Future，
+     * 依赖的阶段如需阻塞应使用带执行器的异步方法。超时或出错时Future以对应状态的响应正常完成，例如408。
+     * 超时时间同时作为调用的截止时间发给服务端；取消返回的Future会通知服务端取消该调用
      *
-     * @param key 路由键，用于标识节点路径
-     * @param rpcServer 关联的RPC服务器实例
+     * @param key 路由键
+     * @param request 请求对象
+     * @param timeout 超时时间
+     * @return 响应的CompletableFuture
      */
-    public void addRouterNode(String key, RPCServer rpcServer) {
-        if (StrUtil.isBlank(key)) {
-            log.error("It is not allowed to override the root node");
-            return;
+    public CompletableFuture<APIResponse> call(String key, Object request, Duration timeout) {
+        APIResponse data = APIResponse.create();
+        data.setKey(key);
+        data.setRequest(request);
+        return call(data, timeout);
+    }
+
+    /**
+     * 调用服务端路由，返回在响应到达时完成的CompletableFuture，请求的数字ID由本方法分配
+     *
+     * @param data 请求
+     * @param timeout 超时时间
+     * @return 响应的CompletableFuture
+     * @see #call(String, Object, Duration)
+     */
+    public CompletableFuture<APIResponse> call(APIResponse data, Duration timeout) {
+        CompletableFuture<APIResponse> future = new CompletableFuture<>();
+        Object pending = future;
+        if (!memoCaches.isEmpty() && memoCaches.containsKey(data.getKey())) {
+            RPCServer callback = memoized(data, response -> {
+                future.complete(response);
+                return Optional.empty();
+            });
+            if (callback == null) {
+                return future;
+            }
+            pending = callback;
+        }
+        if (data.getDeadline() == 0) {
+            data.setDeadline(timeout.toMillis());
+        }
+        if (isIdempotent(data.getKey())) {
+            pending = new Resend(data, pending, timeout.toMillis());
+        }
+        long id = pendingTable.put(pending, timeout.toMillis());
+        data.setId(id);
+        try {
+            send(data);
+        } catch (RuntimeException e) {
+            // 连接未建立或已断开
+            if (pendingTable.claim(id) != null) {
+                future.completeExceptionally(e);
+            }
+            return future;
         }
-        List<String> link = SplitUtil.split(key, ".", true, false);
-        RPCRouterNode<RPCServer> cacheNode = root;
-        for (String s : link) {
-            cacheNode = cacheNode.getChildren().computeIfAbsent(s, k -> RPCRouterNode.create(s));
+        future.whenComplete((response, error) -> {
+            if (error instanceof CancellationException && pendingTable.claim(id) != null) {
+                sendCancellation(data);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 取消已发出的调用
+     * 挂起的回调以状态499的响应回调，挂起的Future被取消，并通知服务端跳过或中断该调用，之后到达的响应被忽略
+     *
+     * @param data 已发出的请求
+     * @return 调用仍在等待响应时返回true
+     */
+    public boolean cancel(APIResponse data) {
+        Object pending = data.getId() != 0 ? pendingTable.claim(data.getId()) : cache.claim(data.getUUID());
+        if (pending == null) {
+            return false;
+        }
+        sendCancellation(data);
+        if (unwrap(pending) instanceof CompletableFuture) {
+            ((CompletableFuture<?>) unwrap(pending)).cancel(false);
+        } else {
+            APIResponse response = APIResponse.create().correlate(data);
+            response.setStatus(499);
+            response.setMessage("Request cancelled");
+            dispatch(() -> complete(pending, response));
         }
-        cacheNode.setRpcServer(rpcServer);
+        return true;
     }
-    public void removeRouterNode(String key) {
-        if (StrUtil.isBlank(key)) {
-            log.error("Cannot remove root");
+
+    /**
+     * 通知服务端取消调用，连接已断开时忽略
+     *
+     * @param data 要取消的请求
+     */
+    private void sendCancellation(APIResponse data) {
+        try {
+            send(Cancellation.of(data));
+        } catch (RuntimeException e) {
+            log.debug("Send cancellation failed.", e);
+        }
+    }
+
+    /**
+     * 调用服务端路由，并将成功响应的消息体解码为指定类型
+     * 响应状态不为200时Future以{@link RPCException}异常完成
+     *
+     * @param key 路由键
+     * @param request 请求对象
+     * @param responseType 响应消息体的类型
+     * @param timeout 超时时间
+     * @return 响应消息体的CompletableFuture
+     */
+    public <T> CompletableFuture<T> call(String key, Object request, Class<T> responseType, Duration timeout) {
+        ObjectReader reader = APIResponse.getSerializer().readerFor(responseType);
+        return call(key, request, timeout).thenApply(response -> readResponse(response, reader));
+    }
+
+    /**
+     * 调用服务端路由，并将成功响应的消息体解码为泛型类型
+     *
+     * @param key 路由键
+     * @param request 请求对象
+     * @param responseType 响应消息体的类型引用
+     * @param timeout 超时时间
+     * @return 响应消息体的CompletableFuture
+     * @see #call(String, Object, Class, Duration)
+     */
+    public <T> CompletableFuture<T> call(String key, Object request, TypeReference<T> responseType, Duration timeout) {
+        ObjectReader reader = APIResponse.getSerializer().readerFor(responseType);
+        return call(key, request, timeout).thenApply(response -> readResponse(response, reader));
+    }
+
+    /**
+     * 解码成功响应的消息体
+     *
+     * @param response 响应
+     * @param reader 消息体类型的ObjectReader
+     * @return 消息体
+     * @throws RPCException 响应状态不为200或消息体无法解码时抛出
+     */
+    private static <T> T readResponse(APIResponse response, ObjectReader reader) {
+        if (!Integer.valueOf(200).equals(response.getStatus())) {
+            throw RPCException.of(response);
+        }
+        try {
+            return response.readRequest(reader);
+        } catch (IOException e) {
+            throw new RPCException(400, "Response body conversion failed", e);
+        }
+    }
+
+    /**
+     * 为路由开启调用缓存，只应用于结果仅由request与params决定的只读路由
+     * 存活时间内相同的调用直接以缓存的响应回调，不发送请求；服务端可以推送失效消息清理缓存，连接断开时缓存全部失效
+     *
+     * @param key 路由键
+     * @param ttl 缓存项的存活时间，单位为毫秒
+     * @param maxEntries 缓存的最大项数
+     */
+    public void memoize(String key, long ttl, long maxEntries) {
+        memoCaches.put(key, new TinyLfuCache<>(maxEntries, ttl));
+    }
+
+    /**
+     * 获取路由的调用缓存，可用于查看命中率等统计
+     *
+     * @param key 路由键
+     * @return 调用缓存，未开启缓存时返回null
+     */
+    public TinyLfuCache<RequestKey, APIResponse> memoCache(String key) {
+        return memoCaches.get(key);
+    }
+
+    /**
+     * 使全部调用缓存失效
+     */
+    public void invalidateMemo() {
+        memoGeneration.incrementAndGet();
+        memoCaches.values().forEach(TinyLfuCache::invalidateAll);
+    }
+
+    /**
+     * 使路由的全部调用缓存失效
+     *
+     * @param key 路由键
+     */
+    public void invalidateMemo(String key) {
+        TinyLfuCache<RequestKey, APIResponse> memo = memoCaches.get(key);
+        if (memo != null) {
+            memoGeneration.incrementAndGet();
+            memo.invalidateAll();
+        }
+    }
+
+    /**
+     * 使一次调用的缓存失效
+     *
+     * @param key 路由键
+     * @param request 请求对象
+     * @param params 请求参数，为null时视为空参数
+     */
+    public void invalidateMemo(String key, Object request, Map<String, Object> params) {
+        TinyLfuCache<RequestKey, APIResponse> memo = memoCaches.get(key);
+        if (memo == null) {
             return;
         }
-        List<String> link = SplitUtil.split(key, ".", true, false);
-        RPCRouterNode<RPCServer> cacheNode = root;
-        RPCRouterNode<RPCServer> lastNode = null;
-        String findKey = null;
-        for (String s : link) {
-            lastNode = cacheNode;
-            findKey = s;
-            cacheNode = cacheNode.getChildren().get(s);
-            if (cacheNode == null){
-                return;
+        memoGeneration.incrementAndGet();
+        try {
+            memo.invalidate(RequestKey.of(key, request, params == null ? new ConcurrentHashMap<>() : params));
+        } catch (JsonProcessingException e) {
+            log.warn("Invalid invalidation request, invalidate route:[{}]", key, e);
+            memo.invalidateAll();
+        }
+    }
+
+    /**
+     * 查询调用缓存，命中时以缓存的响应回调
+     *
+     * @param data 要发送的请求
+     * @param rpcServer 调用方的回调
+     * @return 需要发送请求时返回实际登记的回调，成功的响应会写入缓存；命中缓存时返回null
+     */
+    private RPCServer memoized(APIResponse data, RPCServer rpcServer) {
+        TinyLfuCache<RequestKey, APIResponse> memo = memoCaches.isEmpty() ? null : memoCaches.get(data.getKey());
+        if (memo == null) {
+            return rpcServer;
+        }
+        RequestKey requestKey;
+        try {
+            requestKey = RequestKey.of(data);
+        } catch (JsonProcessingException e) {
+            log.debug("Request is not cacheable:[{}]", data.getKey(), e);
+            return rpcServer;
+        }
+        APIResponse cached = memo.get(requestKey);
+        if (cached != null) {
+            APIResponse hit = cached.copyUncorrelated().correlate(data);
+            dispatch(() -> rpcServer.handle(hit));
+            return null;
+        }
+        long generation = memoGeneration.get();
+        return result -> {
+            if (Integer.valueOf(200).equals(result.getStatus()) && memoGeneration.get() == generation) {
+                memo.put(requestKey, result.copyUncorrelated());
             }
+            return rpcServer.handle(result);
+        };
+    }
+
+    /**
+     * 处理服务端推送的失效消息
+     *
+     * @param data 失效信封
+     */
+    private void applyInvalidation(APIResponse data) {
+        Object request = data.getRequest();
+        if (!(request instanceof Map) || !(((Map<?, ?>) request).get(Invalidation.ROUTE) instanceof String)) {
+            log.warn("Invalid invalidation message:[{}]", data);
+            return;
         }
-        if (lastNode == null || findKey == null){
+        Map<?, ?> body = (Map<?, ?>) request;
+        String route = (String) body.get(Invalidation.ROUTE);
+        if (!body.containsKey(Invalidation.REQUEST)) {
+            invalidateMemo(route);
             return;
         }
-        lastNode.getChildren().remove(findKey);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> params = body.get(Invalidation.PARAMS) instanceof Map ? (Map<String, Object>) body.get(Invalidation.PARAMS) : null;
+        invalidateMemo(route, body.get(Invalidation.REQUEST), params);
+    }
 
+    /**
+     * 订阅主题，服务端发布到这些主题的消息按其key交给本地路由处理
+     *
+     * @param topics 主题名称
+     */
+    public void subscribe(String... topics) {
+        subscriptions.addAll(Arrays.asList(topics));
+        send(Topics.subscribe(topics));
+    }
+
+    /**
+     * 取消订阅主题
+     *
+     * @param topics 主题名称
+     */
+    public void unsubscribe(String... topics) {
+        Arrays.asList(topics).forEach(subscriptions::remove);
+        send(Topics.unsubscribe(topics));
+    }
+
+    /**
+     * 将路由标记为幂等，开启自动重连时这些路由未完成的调用在断线后保留，重连后以原关联标识重新发送，
+     * 超时时间从首次发送开始计算。只应用于重复执行没有副作用的路由
+     *
+     * @param keys 路由键
+     */
+    public void idempotent(String... keys) {
+        idempotentRoutes.addAll(Arrays.asList(keys));
+    }
+
+    /**
+     * 路由是否被标记为幂等
+     *
+     * @param key 路由键
+     * @return 标记为幂等时返回true
+     */
+    public boolean isIdempotent(String key) {
+        return key != null && !idempotentRoutes.isEmpty() && idempotentRoutes.contains(key);
+    }
+
+    /**
+     * 断线后可以重新发送的挂起调用，保存原始请求与其回调或CompletableFuture。
+     */
+    private static final class Resend implements RPCServer {
+        private final APIResponse request;
+        private final Object pending;
+        private final long expiresAt;
+
+        Resend(APIResponse request, Object pending, long timeout) {
+            this.request = request;
+            this.pending = pending;
+            this.expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        }
+
+        @Override
+        public Optional<APIResponse> handle(APIResponse data) {
+            return complete(pending, data);
+        }
+    }
+
+    /**
+     * 添加路由节点
+     *
+     * @param key 路由键，用于标识节点路径
+     * @param rpcServer 关联的RPC服务器实例
+     */
+    public void addRouterNode(String key, RPCServer rpcServer) {
+        addRouterNode(key, rpcServer, null);
+    }
+
+    /**
+     * 添加带附加配置的路由节点
+     *
+     * @param key 路由键，用于标识节点路径
+     * @param rpcServer 关联的RPC服务器实例
+     * @param options 路由的附加配置，例如最大并发数量
+     */
+    public void addRouterNode(String key, RPCServer rpcServer, RouteOptions options) {
+        routeTable.add(key, rpcServer, options);
+    }
+
+    /**
+     * 移除路由节点及其所有子节点
+     *
+     * @param key 路由键，用于标识节点路径
+     */
+    public void removeRouterNode(String key) {
+        routeTable.remove(key);
     }
 }
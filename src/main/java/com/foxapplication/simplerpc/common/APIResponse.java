@@ -1,7 +1,10 @@
 package com.foxapplication.simplerpc.common;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import de.undercouch.bson4jackson.BsonFactory;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -12,6 +15,7 @@ import org.dromara.hutool.core.data.id.IdUtil;
 import org.dromara.hutool.core.text.StrUtil;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -66,6 +70,20 @@ public class APIResponse {
      * 定义一个参数映射字段，用于存储调用过程中的各种参数
      */
     private Map<String,Object> params = new ConcurrentHashMap<>();
+
+    /**
+     * 定义一个数字关联ID字段，在数字关联模式下代替UUID标识一次调用
+     * 该字段默认为0，表示未使用数字关联，为0时不会被序列化
+     */
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private long id = 0;
+
+    /**
+     * 定义一个剩余截止时间字段，单位为毫秒，表示发送时调用方还愿意等待的时长
+     * 使用相对时长而不是绝对时间，不受双方时钟偏差影响；该字段默认为0，表示未设置，为0时不会被序列化
+     */
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private long deadline = 0;
     //------------------------------类参数定义完-----------------------------------
     /**
      * 将APIResponse对象转换为JSON字符串
@@ -81,12 +99,18 @@ public class APIResponse {
         }
     }
     /**
-     * 将当前对象转换为十六进制字符串表示形式
+     * 将当前对象转换为UTF-8编码的JSON字节数组
+     * 直接序列化为字节，不经过中间字符串，也不依赖平台默认字符集
      *
-     * @return 字节数组，表示对象的十六进制字符串形式
+     * @return 字节数组，表示对象的JSON编码
      */
     public byte[] toHex(){
-        return toString().getBytes();
+        try {
+            return serializer.writeValueAsBytes(this);
+        } catch (JsonProcessingException e) {
+            log.error("APIResponse toHex error",e);
+            return StrUtil.EMPTY_JSON.getBytes(StandardCharsets.UTF_8);
+        }
     }
     /**
      * 将当前对象转换为BSON二进制字节数组
@@ -97,6 +121,17 @@ public class APIResponse {
     public byte[] toBin() throws JsonProcessingException {
         return bsonSerializer.writeValueAsBytes(this);
     }
+    /**
+     * 使用指定的ObjectReader将请求对象解码为目标类型
+     *
+     * @param reader 目标类型的ObjectReader
+     * @return 解码后的请求对象
+     * @throws IOException 如果请求对象无法转换为目标类型，则抛出此异常
+     */
+    public <T> T readRequest(ObjectReader reader) throws IOException {
+        JsonNode tree = serializer.valueToTree(request);
+        return reader.readValue(tree);
+    }
     /**
      * 生成一个唯一的UUID
      *
@@ -122,6 +157,59 @@ public class APIResponse {
         return this;
     }
 
+    /**
+     * 设置数字关联ID
+     *
+     * @param id 要设置的数字关联ID
+     * @return APIResponse对象，便于链式调用
+     */
+    public APIResponse id(long id){
+        this.id = id;
+        return this;
+    }
+
+    /**
+     * 从请求中补全当前对象缺失的关联标识
+     * 仅在当前对象的UUID为空或数字关联ID为0时，从请求中复制对应字段
+     *
+     * @param source 对应的请求
+     * @return APIResponse对象，便于链式调用
+     */
+    public APIResponse correlate(APIResponse source){
+        if (StrUtil.isEmpty(this.UUID)) {
+            this.UUID = source.UUID;
+        }
+        if (this.id == 0) {
+            this.id = source.id;
+        }
+        return this;
+    }
+
+    /**
+     * 复制当前对象，不复制UUID与数字关联ID
+     * request与params与原对象共享，用于把同一个响应交给不同的调用方
+     *
+     * @return 新的APIResponse对象
+     */
+    public APIResponse copyUncorrelated(){
+        return copyTo(new APIResponse());
+    }
+
+    /**
+     * 将状态、消息、路径、请求对象与参数复制到目标对象
+     *
+     * @param target 目标对象
+     * @return 目标对象
+     */
+    protected APIResponse copyTo(APIResponse target){
+        target.setStatus(getStatus());
+        target.setMessage(getMessage());
+        target.setKey(getKey());
+        target.setRequest(getRequest());
+        target.setParams(getParams());
+        return target;
+    }
+
     //------------------------------类工具方法完-----------------------------------
     /**
      * 创建一个APIResponse实例
@@ -0,0 +1,164 @@
+package com.foxapplication.simplerpc.common;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 自适应并发限制器，按梯度算法根据调用耗时调整允许同时进行的调用数量。
+ * 长期耗时取调用耗时的指数移动平均，作为无排队时的基准；每次调用完成后以 容忍倍数×长期耗时/本次耗时 作为梯度，
+ * 梯度小于1说明出现了排队，限制随之按比例收缩，否则在当前限制上增加与其平方根相当的余量继续试探。
+ * 进行中的调用不足限制的一半时不增加限制，避免空闲时限制无限增长。
+ * 下游变慢时限制自动收缩，多出的调用被快速拒绝，进行中调用的耗时保持稳定。
+ */
+@Slf4j
+public class AdaptiveLimiter {
+
+    /**
+     * 限制的下限。
+     */
+    @Getter
+    private final int minLimit;
+
+    /**
+     * 限制的上限。
+     */
+    @Getter
+    private final int maxLimit;
+
+    /**
+     * 本次耗时不超过长期耗时的该倍数时视为没有排队。
+     */
+    @Getter
+    private final double rttTolerance;
+
+    /**
+     * 每次调整时新限制所占的权重。
+     */
+    @Getter
+    private final double smoothing;
+
+    /**
+     * 长期耗时的平均窗口，单位为调用次数。
+     */
+    @Getter
+    private final int longWindow;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+    private double longRtt;
+    private long samples;
+
+    /**
+     * 使用默认参数构造限制器
+     *
+     * @param initialLimit 初始限制
+     * @param minLimit 限制的下限
+     * @param maxLimit 限制的上限
+     */
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, 1.5, 0.2, 600);
+    }
+
+    /**
+     * 构造限制器
+     *
+     * @param initialLimit 初始限制
+     * @param minLimit 限制的下限
+     * @param maxLimit 限制的上限
+     * @param rttTolerance 本次耗时不超过长期耗时的该倍数时视为没有排队，不小于1
+     * @param smoothing 每次调整时新限制所占的权重，取值(0, 1]
+     * @param longWindow 长期耗时的平均窗口，单位为调用次数
+     */
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, double rttTolerance, double smoothing, int longWindow) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.rttTolerance = Math.max(1.0, rttTolerance);
+        this.smoothing = Math.min(1.0, Math.max(0.01, smoothing));
+        this.longWindow = Math.max(1, longWindow);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * 尝试开始一次调用
+     * 成功时调用方自行记录开始时间，调用完成时交给{@link #release(long)}
+     *
+     * @return 开始调用返回true；达到限制时返回false，调用应被拒绝
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 结束一次调用并以其耗时调整限制
+     *
+     * @param startNanos 调用开始时由{@link System#nanoTime()}记录的时间
+     */
+    public void release(long startNanos) {
+        int current = inFlight.getAndDecrement();
+        onSample(System.nanoTime() - startNanos, current);
+    }
+
+    /**
+     * 获取当前限制
+     *
+     * @return 允许同时进行的调用数量
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * 获取进行中的调用数量
+     *
+     * @return 已开始尚未结束的调用数量
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 获取长期耗时
+     *
+     * @return 调用耗时的指数移动平均，单位为纳秒，尚无样本时为0
+     */
+    public synchronized long getLongRttNanos() {
+        return (long) longRtt;
+    }
+
+    private synchronized void onSample(long rttNanos, int inFlightAtEnd) {
+        double shortRtt = Math.max(1, rttNanos);
+        samples++;
+        if (samples == 1) {
+            longRtt = shortRtt;
+        } else {
+            long window = Math.min(samples, longWindow);
+            longRtt = longRtt * (window - 1) / window + shortRtt / window;
+        }
+        // 负载下降后长期耗时偏高，逐步回落到新的基准
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+        double current = limit;
+        if (inFlightAtEnd < current / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * longRtt / shortRtt));
+        double next = current * gradient + Math.sqrt(current);
+        next = current * (1 - smoothing) + next * smoothing;
+        next = Math.max(minLimit, Math.min(maxLimit, next));
+        if ((int) next != (int) current) {
+            log.debug("Concurrency limit changed:[{}] -> [{}], rtt:[{}]us, long rtt:[{}]us", (int) current, (int) next, (long) shortRtt / 1000, (long) longRtt / 1000);
+        }
+        limit = next;
+    }
+}
@@ -0,0 +1,69 @@
+package com.foxapplication.simplerpc.common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量信封工具。
+ * 批量信封是key为{@link #KEY}的APIResponse，request为多个普通信封组成的数组，
+ * 与普通消息使用同一编解码器编码，对端收到后拆开逐个处理。
+ */
+public final class Batch {
+
+    /**
+     * 批量信封的保留路由键。
+     */
+    public static final String KEY = "$batch";
+
+    private Batch() {
+    }
+
+    /**
+     * 判断是否为批量信封
+     *
+     * @param data 信封
+     * @return 批量信封返回true
+     */
+    public static boolean isBatch(APIResponse data) {
+        return KEY.equals(data.getKey());
+    }
+
+    /**
+     * 将多个信封打包为批量信封
+     *
+     * @param items 要打包的信封
+     * @return 批量信封
+     */
+    public static APIResponse of(List<APIResponse> items) {
+        APIResponse batch = APIResponse.create();
+        batch.setKey(KEY);
+        batch.setRequest(items);
+        return batch;
+    }
+
+    /**
+     * 拆开批量信封
+     *
+     * @param batch 批量信封
+     * @return 批量中的信封，延迟解码的批量信封拆出的信封同样延迟解码
+     * @throws IOException 批量信封格式不正确时抛出
+     */
+    public static List<APIResponse> unpack(APIResponse batch) throws IOException {
+        if (batch instanceof LazyAPIResponse) {
+            List<APIResponse> items = ((LazyAPIResponse) batch).readBatch();
+            if (items != null) {
+                return items;
+            }
+        }
+        Object request = batch.getRequest();
+        if (!(request instanceof List)) {
+            throw new IOException("Batch request must be an array");
+        }
+        List<APIResponse> items = new ArrayList<>();
+        for (Object item : (List<?>) request) {
+            items.add(item instanceof APIResponse ? (APIResponse) item : APIResponse.getSerializer().convertValue(item, APIResponse.class));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,163 @@
+package com.foxapplication.simplerpc.common;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 带等待窗口的发送批量队列。
+ * 第一条消息入队后最多等待lingerNanos纳秒，期间入队的消息与其合并为一批；
+ * 攒满maxSize条时立即发出。批量由单独的守护线程交给flusher发送，入队方不会阻塞在网络写入上。
+ */
+@Slf4j
+public class BatchQueue {
+
+    /**
+     * 每批最多的消息数量。
+     */
+    @Getter
+    private final int maxSize;
+
+    /**
+     * 第一条消息入队后的最长等待时间，单位为纳秒。
+     */
+    @Getter
+    private final long lingerNanos;
+
+    /**
+     * 批量的发送逻辑。
+     */
+    private final Consumer<List<APIResponse>> flusher;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition full = lock.newCondition();
+    private List<APIResponse> pending;
+    private long firstNanos;
+    private volatile boolean running = true;
+    private final Thread thread;
+
+    /**
+     * 构造批量队列并启动发送线程。
+     *
+     * @param maxSize 每批最多的消息数量
+     * @param lingerNanos 第一条消息入队后的最长等待时间，单位为纳秒
+     * @param flusher 批量的发送逻辑，在发送线程中调用
+     * @param name 发送线程名称
+     */
+    public BatchQueue(int maxSize, long lingerNanos, Consumer<List<APIResponse>> flusher, String name) {
+        this.maxSize = Math.max(1, maxSize);
+        this.lingerNanos = Math.max(0, lingerNanos);
+        this.flusher = flusher;
+        this.pending = new ArrayList<>(this.maxSize);
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * 将消息加入当前批量
+     *
+     * @param data 要发送的消息
+     * @return 队列已停止时返回false，消息未入队
+     */
+    public boolean add(APIResponse data) {
+        lock.lock();
+        try {
+            if (!running) {
+                return false;
+            }
+            if (pending.isEmpty()) {
+                firstNanos = System.nanoTime();
+                notEmpty.signal();
+            }
+            pending.add(data);
+            if (pending.size() >= maxSize) {
+                full.signal();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 停止发送线程，已入队的消息会在停止前发出
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            running = false;
+        } finally {
+            lock.unlock();
+        }
+        thread.interrupt();
+    }
+
+    private void run() {
+        while (true) {
+            List<APIResponse> batch;
+            try {
+                batch = take();
+            } catch (InterruptedException e) {
+                batch = drain();
+                flush(batch);
+                return;
+            }
+            flush(batch);
+        }
+    }
+
+    /**
+     * 等待一批消息就绪：攒满或自第一条消息起超过等待时间
+     */
+    private List<APIResponse> take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (pending.isEmpty()) {
+                if (!running) {
+                    throw new InterruptedException();
+                }
+                notEmpty.await();
+            }
+            long remaining = lingerNanos - (System.nanoTime() - firstNanos);
+            while (pending.size() < maxSize && remaining > 0) {
+                remaining = full.awaitNanos(remaining);
+            }
+            return swap();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<APIResponse> drain() {
+        lock.lock();
+        try {
+            return swap();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<APIResponse> swap() {
+        List<APIResponse> batch = pending;
+        pending = new ArrayList<>(maxSize);
+        return batch;
+    }
+
+    private void flush(List<APIResponse> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            flusher.accept(batch);
+        } catch (RuntimeException e) {
+            log.error("Batch send failed.", e);
+        }
+    }
+}
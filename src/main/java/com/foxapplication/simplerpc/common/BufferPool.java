@@ -0,0 +1,192 @@
+package com.foxapplication.simplerpc.common;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 线程级的编解码缓冲区池。
+ * 每个线程持有一个可增长的字节缓冲区，编码时直接写入其中并按偏移发送，解码直接缓冲区时先复制到其中，
+ * 热路径上无需为每条消息分配中间数组。获取方必须在同一线程内使用完毕并关闭缓冲区，不能将其保存或交给其他线程；
+ * 每个线程持有两个缓冲区，编码后再压缩这样的一层嵌套同样不需要分配；更深的嵌套会得到一个不入池的新缓冲区，不会互相覆盖。
+ * 虚拟线程不会复用缓冲区，但行为保持正确。
+ */
+public final class BufferPool {
+
+    /**
+     * 缓冲区的初始容量。
+     */
+    private static final int INITIAL_CAPACITY = 4096;
+
+    /**
+     * 缓冲区保留的最大容量，偶发的大消息结束后会收缩到初始容量，避免长期占用内存。
+     */
+    private static final int MAX_RETAINED_CAPACITY = 1 << 20;
+
+    /**
+     * 各线程的缓冲区。
+     */
+    private static final ThreadLocal<Buffer[]> BUFFERS = ThreadLocal.withInitial(() -> new Buffer[]{new Buffer(), new Buffer()});
+
+    private BufferPool() {
+    }
+
+    /**
+     * 获取当前线程的缓冲区并清空，使用完毕后需调用{@link Buffer#close()}归还
+     *
+     * @return 当前线程的缓冲区，当前线程的缓冲区均未归还时返回一个新的缓冲区
+     */
+    public static Buffer acquire() {
+        for (Buffer buffer : BUFFERS.get()) {
+            if (!buffer.inUse) {
+                buffer.inUse = true;
+                buffer.reset();
+                return buffer;
+            }
+        }
+        return new Buffer();
+    }
+
+    /**
+     * 可增长的字节缓冲区，可直接作为编码输出流使用。
+     */
+    public static final class Buffer extends OutputStream {
+        private byte[] buf = new byte[INITIAL_CAPACITY];
+        private int count;
+        private boolean inUse;
+
+        private Buffer() {
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        /**
+         * 写入ByteBuffer的剩余数据，ByteBuffer的位置会移动到末尾
+         *
+         * @param src 数据来源，可以是直接缓冲区
+         */
+        public void write(ByteBuffer src) {
+            int len = src.remaining();
+            ensureCapacity(count + len);
+            src.get(buf, count, len);
+            count += len;
+        }
+
+        /**
+         * 以同步刷新方式压缩Deflater中已提供的全部输入，并将输出追加到缓冲区
+         * 压缩级别改变后的第一次调用可能只应用新级别而没有输出，因此直到输入全部消耗且输出未填满缓冲区才结束
+         *
+         * @param deflater 已设置输入的Deflater
+         */
+        public void deflate(Deflater deflater) {
+            do {
+                ensureCapacity(count + 256);
+                count += deflater.deflate(buf, count, buf.length - count, Deflater.SYNC_FLUSH);
+            } while (count == buf.length || !deflater.needsInput());
+        }
+
+        /**
+         * 解压Inflater中已提供的全部输入，并将输出追加到缓冲区
+         *
+         * @param inflater 已设置输入的Inflater
+         * @param maxSize 缓冲区允许的最大字节数
+         * @throws DataFormatException 数据格式错误或需要预设字典时抛出
+         * @throws MessageTooLargeException 解压后超过最大字节数时抛出
+         */
+        public void inflate(Inflater inflater, int maxSize) throws DataFormatException, MessageTooLargeException {
+            while (true) {
+                ensureCapacity(count + 256);
+                int n = inflater.inflate(buf, count, buf.length - count);
+                count += n;
+                if (count > maxSize) {
+                    throw new MessageTooLargeException(maxSize);
+                }
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        throw new DataFormatException("Preset dictionary is not supported");
+                    }
+                    if (inflater.needsInput() || inflater.finished()) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * 归还缓冲区，归还后不能再使用
+         */
+        @Override
+        public void close() {
+            inUse = false;
+        }
+
+        /**
+         * 清空缓冲区，超过保留容量时收缩
+         */
+        public void reset() {
+            if (buf.length > MAX_RETAINED_CAPACITY) {
+                buf = new byte[INITIAL_CAPACITY];
+            }
+            count = 0;
+        }
+
+        /**
+         * 丢弃指定长度之后的数据
+         *
+         * @param size 保留的字节数，不能超过已写入的字节数
+         */
+        public void truncate(int size) {
+            if (size < 0 || size > count) {
+                throw new IndexOutOfBoundsException("size: " + size + ", count: " + count);
+            }
+            count = size;
+        }
+
+        /**
+         * 获取底层数组，有效数据为[0, size())
+         *
+         * @return 底层数组
+         */
+        public byte[] array() {
+            return buf;
+        }
+
+        /**
+         * 获取已写入的字节数
+         *
+         * @return 已写入的字节数
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * 复制已写入的数据
+         *
+         * @return 长度恰好为已写入字节数的新数组
+         */
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(capacity, buf.length << 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.foxapplication.simplerpc.common;
+
+/**
+ * 调用取消信封工具。
+ * 取消消息是key为{@link #KEY}的APIResponse，UUID或数字ID与要取消的调用相同。
+ * 服务端收到后跳过尚在排队的调用，或中断正在执行的处理器，被取消的调用不再返回响应。
+ */
+public final class Cancellation {
+
+    /**
+     * 取消调用的保留路由键。
+     */
+    public static final String KEY = "$cancel";
+
+    private Cancellation() {
+    }
+
+    /**
+     * 构造取消信封
+     *
+     * @param call 要取消的调用
+     * @return 取消信封
+     */
+    public static APIResponse of(APIResponse call) {
+        APIResponse data = APIResponse.create();
+        data.setKey(KEY);
+        data.setUUID(call.getUUID());
+        data.setId(call.getId());
+        return data;
+    }
+}
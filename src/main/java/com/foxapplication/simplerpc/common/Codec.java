@@ -0,0 +1,103 @@
+package com.foxapplication.simplerpc.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * APIResponse信封的编解码器。
+ * 每个连接在握手时协商一个双方都支持的编解码器，之后该连接上的消息均使用它编码和解码。
+ * 自定义实现通过{@link Codecs#register(Codec)}注册后即可参与协商。
+ */
+public interface Codec {
+
+    /**
+     * 获取编解码器名称，握手协商时使用，不区分大小写
+     *
+     * @return 编解码器名称
+     */
+    String getName();
+
+    /**
+     * 编码结果是否为二进制数据
+     *
+     * @return 二进制数据返回true，编码结果为UTF-8文本时返回false
+     */
+    boolean isBinary();
+
+    /**
+     * 将信封编码为字节数组
+     *
+     * @param data 要编码的信封
+     * @return 编码后的字节数组
+     * @throws IOException 编码失败时抛出
+     */
+    byte[] encode(APIResponse data) throws IOException;
+
+    /**
+     * 将信封编码并写入输出流，用于直接写入{@link BufferPool}的缓冲区
+     *
+     * @param data 要编码的信封
+     * @param out 输出流
+     * @throws IOException 编码失败时抛出
+     */
+    default void encode(APIResponse data, OutputStream out) throws IOException {
+        out.write(encode(data));
+    }
+
+    /**
+     * 将字节数组解码为信封，解码结果可以继续引用该数组
+     *
+     * @param data 编码后的字节数组
+     * @return 解码后的信封，消息体可以延迟绑定
+     * @throws IOException 数据格式不正确时抛出
+     */
+    APIResponse decode(byte[] data) throws IOException;
+
+    /**
+     * 将字节数组的指定区间解码为信封
+     * 调用返回后该数组可能被复用，解码结果不能引用该数组
+     *
+     * @param data 编码后的字节数组
+     * @param offset 起始偏移
+     * @param length 数据长度
+     * @return 解码后的信封，消息体可以延迟绑定
+     * @throws IOException 数据格式不正确时抛出
+     */
+    default APIResponse decode(byte[] data, int offset, int length) throws IOException {
+        return decode(Arrays.copyOfRange(data, offset, offset + length));
+    }
+
+    /**
+     * 创建增量解码器，分片到达的大消息可以逐片交给它解码，无需先拼接出完整的消息
+     *
+     * @return 增量解码器，不支持增量解码时返回null
+     */
+    default Decoder newDecoder() {
+        return null;
+    }
+
+    /**
+     * 单条消息的增量解码器，每个实例只解码一条消息，不是线程安全的。
+     */
+    interface Decoder {
+
+        /**
+         * 提供消息的下一段数据，调用返回后该数组可能被复用
+         *
+         * @param data 数据
+         * @param offset 起始偏移
+         * @param length 数据长度
+         * @throws IOException 数据格式不正确时抛出
+         */
+        void feed(byte[] data, int offset, int length) throws IOException;
+
+        /**
+         * 消息的数据已全部提供，完成解码
+         *
+         * @return 解码后的信封
+         * @throws IOException 数据不完整或格式不正确时抛出
+         */
+        APIResponse finish() throws IOException;
+    }
+}
@@ -0,0 +1,117 @@
+package com.foxapplication.simplerpc.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.dromara.hutool.core.text.StrUtil;
+import org.dromara.hutool.core.text.split.SplitUtil;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 编解码器注册表与握手协商工具。
+ * 客户端在握手URL的查询参数中按偏好顺序列出支持的编解码器，服务端按自身的偏好顺序选出第一个双方都支持的编解码器，
+ * 并通过握手响应头告知客户端。未携带该参数的客户端不参与协商，沿用原有的JSON/BSON行为。
+ */
+public class Codecs {
+
+    /**
+     * 握手URL中列出编解码器的查询参数名。
+     */
+    public static final String QUERY_PARAM = "codecs";
+
+    /**
+     * 握手响应中返回协商结果的响应头名。
+     */
+    public static final String HEADER = "SimpleRPC-Codec";
+
+    /**
+     * JSON文本编解码器。
+     */
+    public static final JacksonCodec JSON = new JacksonCodec("json", APIResponse.getSerializer(), false);
+
+    /**
+     * BSON编解码器。
+     */
+    public static final JacksonCodec BSON = new JacksonCodec("bson", APIResponse.getBsonSerializer(), true);
+
+    /**
+     * Smile编解码器。
+     */
+    public static final JacksonCodec SMILE = new JacksonCodec("smile", new ObjectMapper(new SmileFactory()), true);
+
+    /**
+     * CBOR编解码器。
+     */
+    public static final JacksonCodec CBOR = new JacksonCodec("cbor", new ObjectMapper(new CBORFactory()), true);
+
+    /**
+     * 固定布局头部、Smile消息体的编解码器。
+     */
+    public static final FramedCodec FRAMED = new FramedCodec(SMILE);
+
+    /**
+     * 默认的偏好顺序，体积更小、解码更快的编解码器在前。
+     */
+    public static final List<String> DEFAULT_PREFERENCE = List.of(FRAMED.getName(), SMILE.getName(), CBOR.getName(), BSON.getName(), JSON.getName());
+
+    /**
+     * 已注册的编解码器，键为小写名称。
+     */
+    private static final Map<String, Codec> CODECS = new ConcurrentHashMap<>();
+
+    static {
+        register(JSON);
+        register(BSON);
+        register(SMILE);
+        register(CBOR);
+        register(FRAMED);
+    }
+
+    /**
+     * 注册编解码器，同名的编解码器会被替换
+     *
+     * @param codec 编解码器
+     */
+    public static void register(Codec codec) {
+        CODECS.put(codec.getName().toLowerCase(), codec);
+    }
+
+    /**
+     * 按名称获取编解码器
+     *
+     * @param name 编解码器名称，不区分大小写
+     * @return 编解码器，未注册或名称为空时返回null
+     */
+    public static Codec get(String name) {
+        if (StrUtil.isBlank(name)) {
+            return null;
+        }
+        return CODECS.get(name.trim().toLowerCase());
+    }
+
+    /**
+     * 协商编解码器
+     *
+     * @param offered 对端支持的编解码器名称，以逗号分隔
+     * @param preference 本端的偏好顺序
+     * @return 本端偏好顺序中第一个对端也支持且已注册的编解码器，没有时返回null
+     */
+    public static Codec negotiate(String offered, List<String> preference) {
+        if (StrUtil.isBlank(offered)) {
+            return null;
+        }
+        List<String> names = SplitUtil.split(offered.toLowerCase(), ",", true, true);
+        for (String name : preference) {
+            if (names.contains(name.toLowerCase())) {
+                Codec codec = get(name);
+                if (codec != null) {
+                    return codec;
+                }
+            }
+        }
+        return null;
+    }
+}
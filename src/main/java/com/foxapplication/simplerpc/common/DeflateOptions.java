@@ -0,0 +1,169 @@
+package com.foxapplication.simplerpc.common;
+
+import lombok.Getter;
+
+import java.util.zip.Deflater;
+
+/**
+ * permessage-deflate压缩扩展（RFC 7692）的配置，在启动前设置到服务端或客户端上。
+ * 保留上下文时后续消息可以引用之前消息中出现过的内容，重复的字段名几乎不再占用带宽，
+ * 但每个连接需要常驻一个Deflater（约数百KB本地内存）；不保留上下文时每条消息独立压缩，压缩器按线程复用。
+ */
+@Getter
+public class DeflateOptions {
+
+    /**
+     * 扩展名称，同时是握手头中的扩展标识。
+     */
+    public static final String EXTENSION_NAME = "permessage-deflate";
+
+    /**
+     * 握手时携带扩展协商的请求头与响应头。
+     */
+    public static final String HEADER = "Sec-WebSocket-Extensions";
+
+    /**
+     * 服务端不保留压缩上下文的参数名。
+     */
+    public static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+
+    /**
+     * 客户端不保留压缩上下文的参数名。
+     */
+    public static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+
+    /**
+     * 编码后小于该字节数的消息不压缩。
+     */
+    private int threshold = 256;
+
+    /**
+     * 压缩级别，取值同{@link Deflater#setLevel(int)}，仅服务端使用。
+     */
+    private int level = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * 服务端发送时是否不保留压缩上下文，对端请求不保留时总是不保留。
+     */
+    private boolean serverNoContextTakeover = false;
+
+    /**
+     * 是否要求客户端发送时不保留压缩上下文，要求后服务端解压时不需要为每个连接常驻Inflater。
+     */
+    private boolean clientNoContextTakeover = true;
+
+    //------------------------------类参数定义完-----------------------------------
+
+    /**
+     * 设置压缩的最小消息字节数
+     *
+     * @param threshold 编码后小于该字节数的消息不压缩
+     * @return DeflateOptions对象，便于链式调用
+     */
+    public DeflateOptions threshold(int threshold) {
+        this.threshold = threshold;
+        return this;
+    }
+
+    /**
+     * 设置压缩级别
+     *
+     * @param level 压缩级别，取值同{@link Deflater#setLevel(int)}
+     * @return DeflateOptions对象，便于链式调用
+     */
+    public DeflateOptions level(int level) {
+        this.level = level;
+        return this;
+    }
+
+    /**
+     * 设置服务端发送时是否不保留压缩上下文
+     *
+     * @param serverNoContextTakeover 为true时每条消息独立压缩
+     * @return DeflateOptions对象，便于链式调用
+     */
+    public DeflateOptions serverNoContextTakeover(boolean serverNoContextTakeover) {
+        this.serverNoContextTakeover = serverNoContextTakeover;
+        return this;
+    }
+
+    /**
+     * 设置是否要求客户端发送时不保留压缩上下文
+     *
+     * @param clientNoContextTakeover 为true时要求客户端每条消息独立压缩
+     * @return DeflateOptions对象，便于链式调用
+     */
+    public DeflateOptions clientNoContextTakeover(boolean clientNoContextTakeover) {
+        this.clientNoContextTakeover = clientNoContextTakeover;
+        return this;
+    }
+
+    //------------------------------类工具方法完-----------------------------------
+
+    /**
+     * 以服务端身份处理客户端的扩展请求，选择第一个可以接受的permessage-deflate请求
+     * 由于JDK的Deflater不能缩小窗口，要求server_max_window_bits小于15的请求会被跳过；带未知参数的请求同样跳过
+     *
+     * @param offered 客户端的Sec-WebSocket-Extensions请求头，可以为null
+     * @return 协商结果，客户端未请求或没有可以接受的请求时返回null
+     */
+    public PerMessageDeflate accept(String offered) {
+        if (offered == null || offered.isEmpty()) {
+            return null;
+        }
+        for (String offer : offered.split(",")) {
+            String[] params = offer.split(";");
+            if (!EXTENSION_NAME.equalsIgnoreCase(params[0].trim())) {
+                continue;
+            }
+            boolean serverNoContext = serverNoContextTakeover;
+            boolean clientNoContext = clientNoContextTakeover;
+            boolean acceptable = true;
+            for (int i = 1; i < params.length && acceptable; i++) {
+                String param = params[i].trim();
+                int eq = param.indexOf('=');
+                String name = (eq < 0 ? param : param.substring(0, eq)).trim();
+                String value = eq < 0 ? null : param.substring(eq + 1).trim().replace("\"", "");
+                switch (name.toLowerCase()) {
+                    case SERVER_NO_CONTEXT_TAKEOVER:
+                        serverNoContext = true;
+                        break;
+                    case CLIENT_NO_CONTEXT_TAKEOVER:
+                        clientNoContext = true;
+                        break;
+                    case "client_max_window_bits":
+                        // 仅表示客户端允许服务端限制其窗口，不回应即可
+                        break;
+                    case "server_max_window_bits":
+                        acceptable = "15".equals(value);
+                        break;
+                    default:
+                        acceptable = false;
+                }
+            }
+            if (acceptable) {
+                return new PerMessageDeflate(threshold, level, serverNoContext, clientNoContext);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 生成客户端的扩展请求，客户端总是不保留压缩上下文
+     *
+     * @return Sec-WebSocket-Extensions请求头的值
+     */
+    public String offer() {
+        return EXTENSION_NAME + "; " + CLIENT_NO_CONTEXT_TAKEOVER
+                + (serverNoContextTakeover ? "; " + SERVER_NO_CONTEXT_TAKEOVER : "");
+    }
+
+    /**
+     * 创建一个DeflateOptions实例
+     *
+     * @return 新创建的DeflateOptions实例
+     */
+    public static DeflateOptions create() {
+        return new DeflateOptions();
+    }
+}
@@ -0,0 +1,104 @@
+package com.foxapplication.simplerpc.common;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.Map;
+
+/**
+ * APIResponse信封的流式写出工具。
+ * 头部字段按UUID、数字ID、剩余截止时间、key、status、message的顺序逐个写出，便于对端先读取头部再决定是否解码消息体；
+ * request字段可以使用预先构建的ObjectWriter写出，避免按运行时类型查找序列化器。
+ */
+public class EnvelopeWriter {
+
+    /**
+     * 将信封写入生成器
+     *
+     * @param generator 目标生成器
+     * @param data 要写出的信封
+     * @param requestWriter 写出request字段使用的ObjectWriter，为null时使用生成器自带的ObjectMapper
+     * @throws IOException 写出失败时抛出
+     */
+    public static void write(JsonGenerator generator, APIResponse data, ObjectWriter requestWriter) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("uuid", data.getUUID());
+        if (data.getId() != 0) {
+            generator.writeNumberField("id", data.getId());
+        }
+        if (data.getDeadline() != 0) {
+            generator.writeNumberField("deadline", data.getDeadline());
+        }
+        generator.writeStringField("key", data.getKey());
+        if (data.getStatus() == null) {
+            generator.writeNullField("status");
+        } else {
+            generator.writeNumberField("status", data.getStatus());
+        }
+        generator.writeStringField("message", data.getMessage());
+        generator.writeFieldName("request");
+        Object request = data.getRequest();
+        if (requestWriter != null && request != null) {
+            requestWriter.writeValue(generator, request);
+        } else {
+            generator.writeObject(request);
+        }
+        Map<String, Object> params = data.getParams();
+        generator.writeFieldName("params");
+        generator.writeObject(params);
+        generator.writeEndObject();
+    }
+
+    /**
+     * 将信封写为JSON字符串
+     *
+     * @param mapper JSON格式的ObjectMapper
+     * @param data 要写出的信封
+     * @param requestWriter 写出request字段使用的ObjectWriter，可以为null
+     * @return JSON字符串
+     * @throws IOException 写出失败时抛出
+     */
+    public static String writeAsString(ObjectMapper mapper, APIResponse data, ObjectWriter requestWriter) throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+            write(generator, data, requestWriter);
+        }
+        return out.toString();
+    }
+
+    /**
+     * 将信封写为字节数组
+     *
+     * @param mapper 数据格式对应的ObjectMapper
+     * @param data 要写出的信封
+     * @param requestWriter 写出request字段使用的ObjectWriter，可以为null
+     * @return 编码后的字节数组
+     * @throws IOException 写出失败时抛出
+     */
+    public static byte[] writeAsBytes(ObjectMapper mapper, APIResponse data, ObjectWriter requestWriter) throws IOException {
+        try (BufferPool.Buffer out = BufferPool.acquire()) {
+            try (JsonGenerator generator = createGenerator(mapper, out)) {
+                write(generator, data, requestWriter);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * 创建写入输出流的生成器，关闭生成器时不会关闭输出流
+     *
+     * @param mapper 数据格式对应的ObjectMapper
+     * @param out 输出流
+     * @return 生成器
+     * @throws IOException 创建失败时抛出
+     */
+    public static JsonGenerator createGenerator(ObjectMapper mapper, OutputStream out) throws IOException {
+        JsonGenerator generator = mapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return generator;
+    }
+}
@@ -0,0 +1,16 @@
+package com.foxapplication.simplerpc.common;
+
+/**
+ * 处理器的执行模式。
+ */
+public enum ExecutionMode {
+    /**
+     * 默认模式，使用平台线程执行器执行处理器（服务端为按连接分片的执行器，客户端为单线程执行器），保证同一连接内的处理顺序。
+     */
+    DEFAULT,
+    /**
+     * 虚拟线程模式，每次处理器调用都在独立的虚拟线程中执行，适合会阻塞等待数据库或其他服务的处理器。
+     * 该模式不保证同一连接内的处理顺序，需要JDK 21及以上版本。
+     */
+    VIRTUAL
+}
@@ -0,0 +1,282 @@
+package com.foxapplication.simplerpc.common;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 固定布局头部的编解码器。
+ * 头部字段以固定偏移的二进制布局写出，路由和关联只需按偏移读取，无需经过通用的数据格式解析；
+ * request和params组成的消息体使用指定的编解码器编码，并在处理器访问时才解码。
+ * <pre>
+ * 偏移  长度  字段
+ * 0     2     魔数 0x5352（"SR"）
+ * 2     1     版本
+ * 3     1     标志位，bit0表示status为null，bit1表示带有剩余截止时间
+ * 4     4     status
+ * 8     8     数字关联ID
+ * 16    2     UUID长度
+ * 18    2     key长度
+ * 20    4     message长度
+ * 24    8     剩余截止时间，单位为毫秒，仅在bit1置位时存在
+ * -     -     UUID、key、message的UTF-8字节，随后为消息体
+ * </pre>
+ */
+public class FramedCodec implements Codec {
+
+    /**
+     * 魔数。
+     */
+    private static final short MAGIC = 0x5352;
+
+    /**
+     * 当前布局版本。
+     */
+    private static final byte VERSION = 1;
+
+    /**
+     * 固定头部长度。
+     */
+    private static final int HEADER_LENGTH = 24;
+
+    /**
+     * 标志位：status为null。
+     */
+    private static final int FLAG_NULL_STATUS = 1;
+
+    /**
+     * 标志位：固定头部后带有8字节的剩余截止时间。
+     */
+    private static final int FLAG_DEADLINE = 2;
+
+    /**
+     * 空字节数组。
+     */
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * 消息体使用的编解码器，必须为二进制格式。
+     */
+    private final JacksonCodec body;
+
+    /**
+     * 构造一个固定布局头部的编解码器
+     *
+     * @param body 消息体使用的编解码器
+     */
+    public FramedCodec(JacksonCodec body) {
+        this.body = body;
+    }
+
+    @Override
+    public String getName() {
+        return "framed";
+    }
+
+    @Override
+    public boolean isBinary() {
+        return true;
+    }
+
+    @Override
+    public byte[] encode(APIResponse data) throws IOException {
+        try (BufferPool.Buffer buffer = BufferPool.acquire()) {
+            encode(data, buffer);
+            return buffer.toByteArray();
+        }
+    }
+
+    @Override
+    public void encode(APIResponse data, OutputStream out) throws IOException {
+        byte[] uuid = utf8(data.getUUID());
+        byte[] key = utf8(data.getKey());
+        byte[] message = utf8(data.getMessage());
+        if (uuid.length > 0xFFFF || key.length > 0xFFFF) {
+            throw new IOException("UUID or key is too long");
+        }
+        writeShort(out, MAGIC);
+        out.write(VERSION);
+        out.write((data.getStatus() == null ? FLAG_NULL_STATUS : 0) | (data.getDeadline() != 0 ? FLAG_DEADLINE : 0));
+        writeInt(out, data.getStatus() == null ? 0 : data.getStatus());
+        writeLong(out, data.getId());
+        writeShort(out, uuid.length);
+        writeShort(out, key.length);
+        writeInt(out, message.length);
+        if (data.getDeadline() != 0) {
+            writeLong(out, data.getDeadline());
+        }
+        out.write(uuid);
+        out.write(key);
+        out.write(message);
+        ObjectWriter requestWriter = body.writerFor(data);
+        try (JsonGenerator generator = EnvelopeWriter.createGenerator(body.getMapper(), out)) {
+            generator.writeStartObject();
+            generator.writeFieldName("request");
+            Object request = data.getRequest();
+            if (requestWriter != null && request != null) {
+                requestWriter.writeValue(generator, request);
+            } else {
+                generator.writeObject(request);
+            }
+            generator.writeFieldName("params");
+            generator.writeObject(data.getParams());
+            generator.writeEndObject();
+        }
+    }
+
+    @Override
+    public APIResponse decode(byte[] data) throws IOException {
+        return decode(data, 0, data.length);
+    }
+
+    @Override
+    public APIResponse decode(byte[] data, int offset, int length) throws IOException {
+        int headerLength = headerLength(data, offset, length);
+        if (headerLength < 0) {
+            throw new IOException("Frame is too short: " + length);
+        }
+        // 消息体暂存为令牌序列，不引用原始数组
+        LazyAPIResponse response = LazyAPIResponse.decode(body.getMapper(), data, offset + headerLength, length - headerLength);
+        readHeader(data, offset, response);
+        return response;
+    }
+
+    /**
+     * 头部先缓存到完整，之后的消息体交给消息体编解码器的增量解码器
+     *
+     * @return 增量解码器，消息体编解码器不支持增量解码时返回null
+     */
+    @Override
+    public Decoder newDecoder() {
+        Decoder bodyDecoder = body.newDecoder();
+        if (bodyDecoder == null) {
+            return null;
+        }
+        return new Decoder() {
+            /**
+             * 完整头部到达前收到的数据，跨分片保存
+             */
+            private byte[] pending = EMPTY;
+            private byte[] headerBytes = null;
+
+            @Override
+            public void feed(byte[] data, int offset, int length) throws IOException {
+                if (headerBytes != null) {
+                    bodyDecoder.feed(data, offset, length);
+                    return;
+                }
+                int previous = pending.length;
+                pending = Arrays.copyOf(pending, previous + length);
+                System.arraycopy(data, offset, pending, previous, length);
+                int headerLength = headerLength(pending, 0, pending.length);
+                if (headerLength < 0) {
+                    return;
+                }
+                headerBytes = Arrays.copyOf(pending, headerLength);
+                bodyDecoder.feed(pending, headerLength, pending.length - headerLength);
+                pending = null;
+            }
+
+            @Override
+            public APIResponse finish() throws IOException {
+                if (headerBytes == null) {
+                    throw new IOException("Frame is too short: " + pending.length);
+                }
+                LazyAPIResponse response = (LazyAPIResponse) bodyDecoder.finish();
+                readHeader(headerBytes, 0, response);
+                return response;
+            }
+        };
+    }
+
+    /**
+     * 校验固定头部并计算包括剩余截止时间、UUID、key和message在内的完整头部长度
+     *
+     * @param data 数据
+     * @param offset 帧起始偏移
+     * @param length 已有的数据长度
+     * @return 完整头部长度，数据不足以确定或容纳完整头部时返回-1
+     * @throws IOException 魔数或版本不正确时抛出
+     */
+    private static int headerLength(byte[] data, int offset, int length) throws IOException {
+        if (length < HEADER_LENGTH) {
+            return -1;
+        }
+        ByteBuffer header = ByteBuffer.wrap(data, offset, length);
+        if (header.getShort() != MAGIC) {
+            throw new IOException("Illegal frame magic");
+        }
+        byte version = header.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported frame version: " + version);
+        }
+        int uuidLength = header.getShort(offset + 16) & 0xFFFF;
+        int keyLength = header.getShort(offset + 18) & 0xFFFF;
+        int messageLength = header.getInt(offset + 20);
+        if (messageLength < 0) {
+            throw new IOException("Frame header is out of range");
+        }
+        int deadlineLength = (data[offset + 3] & FLAG_DEADLINE) != 0 ? 8 : 0;
+        long total = (long) HEADER_LENGTH + deadlineLength + uuidLength + keyLength + messageLength;
+        return total > length ? -1 : (int) total;
+    }
+
+    /**
+     * 读取完整头部中的字段并设置到信封上
+     *
+     * @param data 数据
+     * @param offset 帧起始偏移
+     * @param response 要设置的信封
+     */
+    private static void readHeader(byte[] data, int offset, LazyAPIResponse response) {
+        ByteBuffer header = ByteBuffer.wrap(data);
+        int flags = data[offset + 3];
+        int status = header.getInt(offset + 4);
+        long id = header.getLong(offset + 8);
+        int uuidLength = header.getShort(offset + 16) & 0xFFFF;
+        int keyLength = header.getShort(offset + 18) & 0xFFFF;
+        int messageLength = header.getInt(offset + 20);
+        int position = offset + HEADER_LENGTH;
+        if ((flags & FLAG_DEADLINE) != 0) {
+            response.setDeadline(header.getLong(position));
+            position += 8;
+        }
+        response.setUUID(new String(data, position, uuidLength, StandardCharsets.UTF_8));
+        position += uuidLength;
+        response.setKey(new String(data, position, keyLength, StandardCharsets.UTF_8));
+        position += keyLength;
+        response.setMessage(new String(data, position, messageLength, StandardCharsets.UTF_8));
+        response.setId(id);
+        response.setStatus((flags & FLAG_NULL_STATUS) != 0 ? null : status);
+    }
+
+    /**
+     * 将字符串编码为UTF-8字节数组
+     *
+     * @param value 字符串，为null时视为空字符串
+     * @return UTF-8字节数组
+     */
+    private static byte[] utf8(String value) {
+        return value == null ? EMPTY : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        writeShort(out, value >>> 16);
+        writeShort(out, value);
+    }
+
+    private static void writeLong(OutputStream out, long value) throws IOException {
+        writeInt(out, (int) (value >>> 32));
+        writeInt(out, (int) value);
+    }
+}
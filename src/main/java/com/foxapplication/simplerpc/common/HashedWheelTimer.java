@@ -0,0 +1,401 @@
+package com.foxapplication.simplerpc.common;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.hutool.core.thread.ThreadUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 哈希时间轮定时器。
+ * 定时任务按到期时间散列到固定数量的槽位中，由单个工作线程逐槽推进，添加和取消定时任务的开销均为O(1)，
+ * 与挂起任务的总数无关。到期精度为一个刻度的时长。
+ * 同一刻度到期的任务作为一批交给任务执行器，在一个线程中依次运行，不会占用工作线程，任务阻塞或耗时较长时不影响其他定时任务按时到期。
+ * 默认的任务执行器线程数固定，大量任务在同一刻度到期时也不会为每个任务创建线程。
+ */
+@Slf4j
+public class HashedWheelTimer {
+
+    /**
+     * 默认任务执行器的线程数。
+     */
+    private static final int DEFAULT_TASK_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * 所有TimedCache共享的定时器，刻度为10毫秒，共512个槽位。
+     */
+    private static final HashedWheelTimer SHARED = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 512, "SimpleRPC-Timer");
+
+    /**
+     * 执行到期任务的执行器。
+     */
+    private final Executor taskExecutor;
+
+    /**
+     * 每个刻度的时长，单位为纳秒。
+     */
+    private final long tickNanos;
+
+    /**
+     * 时间轮槽位，长度为2的幂。
+     */
+    private final Bucket[] wheel;
+
+    /**
+     * 槽位下标掩码。
+     */
+    private final int mask;
+
+    /**
+     * 新添加、尚未放入槽位的定时任务。
+     */
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 已取消、等待从槽位中移除的定时任务。
+     */
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 尚未到期且未取消的定时任务数量。
+     */
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    /**
+     * 定时器的起始时间，所有到期时间均相对于该时间计算。
+     */
+    private final long startTime;
+
+    /**
+     * 工作线程已推进的刻度数，仅由工作线程访问。
+     */
+    private long tick;
+
+    /**
+     * 构造并启动一个时间轮定时器，到期任务在名为 threadName-Task- 的固定大小守护线程池中执行。
+     *
+     * @param tickDuration 每个刻度的时长
+     * @param unit 刻度时长的单位
+     * @param ticksPerWheel 槽位数量，会向上取整为2的幂
+     * @param threadName 工作线程名称
+     */
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, int ticksPerWheel, String threadName) {
+        this(tickDuration, unit, ticksPerWheel, threadName,
+                Executors.newFixedThreadPool(DEFAULT_TASK_THREADS, ThreadUtil.newNamedThreadFactory(threadName + "-Task-", true)));
+    }
+
+    /**
+     * 构造并启动一个时间轮定时器。
+     *
+     * @param tickDuration 每个刻度的时长
+     * @param unit 刻度时长的单位
+     * @param ticksPerWheel 槽位数量，会向上取整为2的幂
+     * @param threadName 工作线程名称
+     * @param taskExecutor 执行到期任务的执行器，每个刻度到期的任务作为一个批次提交
+     */
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, int ticksPerWheel, String threadName, Executor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.tickNanos = Math.max(unit.toNanos(tickDuration), TimeUnit.MILLISECONDS.toNanos(1));
+        this.startTime = System.nanoTime();
+        Thread worker = new Thread(this::run, threadName);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 获取共享定时器。
+     *
+     * @return 共享的时间轮定时器
+     */
+    public static HashedWheelTimer shared() {
+        return SHARED;
+    }
+
+    /**
+     * 添加一个定时任务。
+     *
+     * @param task 到期时交给任务执行器执行的任务
+     * @param delay 延迟时间
+     * @param unit 延迟时间的单位
+     * @return 定时任务句柄，可用于取消
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(Math.max(delay, 0)) - startTime;
+        Timeout timeout = new Timeout(this, task, deadline);
+        pendingCount.incrementAndGet();
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * 获取尚未到期且未取消的定时任务数量。
+     *
+     * @return 挂起的定时任务数量
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * 工作线程主循环。
+     */
+    private void run() {
+        while (true) {
+            waitForNextTick();
+            removeCancelledTimeouts();
+            transferPendingTimeouts();
+            List<Timeout> expired = wheel[(int) (tick & mask)].expireTimeouts();
+            if (expired != null) {
+                runExpired(expired);
+            }
+            tick++;
+        }
+    }
+
+    /**
+     * 将同一刻度到期的任务作为一批交给任务执行器，在一个线程中依次运行。
+     *
+     * @param expired 本刻度到期的定时任务
+     */
+    private void runExpired(List<Timeout> expired) {
+        try {
+            taskExecutor.execute(() -> expired.forEach(Timeout::runTask));
+        } catch (RejectedExecutionException e) {
+            log.warn("Timer tasks rejected: {}", expired.size(), e);
+        }
+    }
+
+    /**
+     * 等待到下一个刻度。
+     */
+    private void waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while (true) {
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos <= 0) {
+                return;
+            }
+            LockSupport.parkNanos(this, sleepNanos);
+        }
+    }
+
+    /**
+     * 将新添加的定时任务放入对应槽位。
+     */
+    private void transferPendingTimeouts() {
+        // 每个刻度最多转移固定数量，避免大量添加时工作线程长时间无法推进
+        for (int i = 0; i < 100000; i++) {
+            Timeout timeout = pendingTimeouts.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state.get() == Timeout.ST_CANCELLED) {
+                continue;
+            }
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * 将已取消的定时任务从槽位中移除。
+     */
+    private void removeCancelledTimeouts() {
+        while (true) {
+            Timeout timeout = cancelledTimeouts.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * 定时任务句柄。
+     */
+    public static final class Timeout {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final HashedWheelTimer timer;
+        private final Runnable task;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+        /**
+         * 到期时间，相对于定时器起始时间的纳秒数。
+         */
+        @Getter
+        private final long deadline;
+
+        // 以下字段仅由工作线程访问
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 取消定时任务。
+         *
+         * @return 取消成功返回true，任务已到期或已被取消时返回false
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            timer.pendingCount.decrementAndGet();
+            timer.cancelledTimeouts.add(this);
+            return true;
+        }
+
+        /**
+         * 判断定时任务是否已被取消。
+         *
+         * @return 已取消返回true
+         */
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        /**
+         * 判断定时任务是否已到期。
+         *
+         * @return 已到期返回true
+         */
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        /**
+         * 将定时任务标记为到期。
+         *
+         * @return 标记成功返回true，任务已被取消时返回false
+         */
+        private boolean expire() {
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+                return false;
+            }
+            timer.pendingCount.decrementAndGet();
+            return true;
+        }
+
+        /**
+         * 在任务执行器中运行任务，任务的异常不影响同一批次的其他任务。
+         */
+        private void runTask() {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                log.error("Timer task failed", t);
+            }
+        }
+    }
+
+    /**
+     * 时间轮槽位，以双向链表保存定时任务，仅由工作线程访问。
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        /**
+         * 向槽位中添加定时任务。
+         *
+         * @param timeout 定时任务
+         */
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        /**
+         * 取出槽位中所有已到期的定时任务，未到期的任务剩余轮数减一。
+         *
+         * @return 到期的定时任务，没有到期任务时返回null
+         */
+        List<Timeout> expireTimeouts() {
+            List<Timeout> expired = null;
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    // 剩余轮数为0的任务在本刻度内到期，最多晚一个刻度
+                    remove(timeout);
+                    if (timeout.expire()) {
+                        if (expired == null) {
+                            expired = new ArrayList<>();
+                        }
+                        expired.add(timeout);
+                    }
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+            return expired;
+        }
+
+        /**
+         * 从槽位中移除定时任务。
+         *
+         * @param timeout 定时任务
+         */
+        void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.foxapplication.simplerpc.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 缓存失效信封工具。
+ * 失效消息是key为{@link #KEY}的APIResponse，request包含被修改的路由键，以及可选的请求对象与请求参数；
+ * 只有路由键时该路由的全部缓存失效，否则只有该请求的缓存失效。客户端收到后清理本地的调用缓存。
+ */
+public final class Invalidation {
+
+    /**
+     * 缓存失效的保留路由键。
+     */
+    public static final String KEY = "$invalidate";
+
+    /**
+     * 失效消息中路由键的字段名。
+     */
+    public static final String ROUTE = "route";
+
+    /**
+     * 失效消息中请求对象的字段名。
+     */
+    public static final String REQUEST = "request";
+
+    /**
+     * 失效消息中请求参数的字段名。
+     */
+    public static final String PARAMS = "params";
+
+    private Invalidation() {
+    }
+
+    /**
+     * 构造使路由全部缓存失效的信封
+     *
+     * @param route 路由键
+     * @return 失效信封
+     */
+    public static APIResponse of(String route) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put(ROUTE, route);
+        APIResponse data = APIResponse.create();
+        data.setKey(KEY);
+        data.setRequest(body);
+        return data;
+    }
+
+    /**
+     * 构造使一次调用的缓存失效的信封
+     *
+     * @param route 路由键
+     * @param request 请求对象
+     * @param params 请求参数，为null时视为空参数
+     * @return 失效信封
+     */
+    public static APIResponse of(String route, Object request, Map<String, Object> params) {
+        APIResponse data = of(route);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> body = (Map<String, Object>) data.getRequest();
+        body.put(REQUEST, request);
+        body.put(PARAMS, params == null ? new LinkedHashMap<>() : params);
+        return data;
+    }
+}
@@ -0,0 +1,126 @@
+package com.foxapplication.simplerpc.common;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于Jackson数据格式的编解码器。
+ * 信封由{@link EnvelopeWriter}按头部优先的顺序写出，解码时只读取头部字段，消息体延迟绑定；
+ * 类型化消息体的ObjectWriter按类型缓存，每种类型只构建一次。
+ */
+public class JacksonCodec implements Codec {
+
+    /**
+     * 编解码器名称。
+     */
+    @Getter
+    private final String name;
+
+    /**
+     * 数据格式对应的ObjectMapper。
+     */
+    @Getter
+    private final ObjectMapper mapper;
+
+    /**
+     * 编码结果是否为二进制数据。
+     */
+    private final boolean binary;
+
+    /**
+     * 类型化消息体的ObjectWriter缓存。
+     */
+    private final Map<JavaType, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    /**
+     * 构造一个编解码器
+     *
+     * @param name 编解码器名称
+     * @param mapper 数据格式对应的ObjectMapper
+     * @param binary 编码结果是否为二进制数据，为false时数据格式必须为JSON
+     */
+    public JacksonCodec(String name, ObjectMapper mapper, boolean binary) {
+        this.name = name;
+        this.mapper = mapper;
+        this.binary = binary;
+    }
+
+    @Override
+    public boolean isBinary() {
+        return binary;
+    }
+
+    @Override
+    public byte[] encode(APIResponse data) throws IOException {
+        return EnvelopeWriter.writeAsBytes(mapper, data, writerFor(data));
+    }
+
+    @Override
+    public void encode(APIResponse data, OutputStream out) throws IOException {
+        try (JsonGenerator generator = EnvelopeWriter.createGenerator(mapper, out)) {
+            EnvelopeWriter.write(generator, data, writerFor(data));
+        }
+    }
+
+    @Override
+    public APIResponse decode(byte[] data) throws IOException {
+        if (!binary) {
+            return LazyAPIResponse.decodeJson(data);
+        }
+        return LazyAPIResponse.decode(mapper, data);
+    }
+
+    @Override
+    public APIResponse decode(byte[] data, int offset, int length) throws IOException {
+        if (!binary) {
+            // JSON消息体按偏移引用原始数组，需要复制
+            return LazyAPIResponse.decodeJson(Arrays.copyOfRange(data, offset, offset + length));
+        }
+        return LazyAPIResponse.decode(mapper, data, offset, length);
+    }
+
+    /**
+     * 数据格式支持非阻塞解析时（JSON与Smile）返回增量解码器，消息体暂存为令牌序列
+     *
+     * @return 增量解码器，数据格式不支持非阻塞解析时返回null
+     */
+    @Override
+    public Decoder newDecoder() {
+        if (!mapper.getFactory().canParseAsync()) {
+            return null;
+        }
+        return new StreamingEnvelopeDecoder(mapper);
+    }
+
+    /**
+     * 获取指定类型的ObjectWriter，首次获取时构建并缓存
+     *
+     * @param type 消息体的类型
+     * @return 该数据格式下的ObjectWriter
+     */
+    public ObjectWriter writerFor(JavaType type) {
+        return writers.computeIfAbsent(type, mapper::writerFor);
+    }
+
+    /**
+     * 获取写出信封消息体使用的ObjectWriter
+     *
+     * @param data 要写出的信封
+     * @return 类型化信封对应的ObjectWriter，其他信封返回null
+     */
+    ObjectWriter writerFor(APIResponse data) {
+        if (data instanceof TypedAPIResponse) {
+            return writerFor(((TypedAPIResponse) data).getResponseType());
+        }
+        return null;
+    }
+}
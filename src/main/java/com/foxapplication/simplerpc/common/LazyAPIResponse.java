@@ -0,0 +1,408 @@
+package com.foxapplication.simplerpc.common;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 延迟解码的APIResponse。
+ * 解码时只读取UUID、数字ID、key、status和message等头部字段，request和params仅记录其原始数据，
+ * 在处理器第一次访问时才绑定为对象。路由不存在、回调已超时等情况下无需为消息体付出完整的解码开销。
+ */
+public class LazyAPIResponse extends APIResponse {
+
+    /**
+     * 尚未绑定的request原始数据，绑定或被重新赋值后为null。
+     */
+    private LazyValue lazyRequest = null;
+
+    /**
+     * 尚未绑定的params原始数据，绑定或被重新赋值后为null。
+     */
+    private LazyValue lazyParams = null;
+
+    //------------------------------类参数定义完-----------------------------------
+
+    /**
+     * 获取请求对象，首次访问时绑定原始数据。
+     *
+     * @return 请求对象
+     * @throws UncheckedIOException 原始数据无法绑定时抛出
+     */
+    @Override
+    public Object getRequest() {
+        if (lazyRequest != null) {
+            super.setRequest(lazyRequest.bind(Object.class));
+            lazyRequest = null;
+        }
+        return super.getRequest();
+    }
+
+    /**
+     * 设置请求对象，同时丢弃尚未绑定的原始数据。
+     *
+     * @param request 请求对象
+     */
+    @Override
+    public void setRequest(Object request) {
+        lazyRequest = null;
+        super.setRequest(request);
+    }
+
+    /**
+     * 获取参数映射，首次访问时绑定原始数据。
+     *
+     * @return 参数映射
+     * @throws UncheckedIOException 原始数据无法绑定时抛出
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getParams() {
+        if (lazyParams != null) {
+            super.setParams(lazyParams.bind(Map.class));
+            lazyParams = null;
+        }
+        return super.getParams();
+    }
+
+    /**
+     * 设置参数映射，同时丢弃尚未绑定的原始数据。
+     *
+     * @param params 参数映射
+     */
+    @Override
+    public void setParams(Map<String, Object> params) {
+        lazyParams = null;
+        super.setParams(params);
+    }
+
+    /**
+     * 使用指定的ObjectReader将请求对象解码为目标类型
+     * 尚未绑定时直接从原始数据解码为目标类型，不会先生成通用的Map结构
+     *
+     * @param reader 目标类型的ObjectReader，需基于JSON格式的ObjectMapper构建
+     * @return 解码后的请求对象
+     * @throws IOException 如果请求对象无法转换为目标类型，则抛出此异常
+     */
+    @Override
+    public <T> T readRequest(ObjectReader reader) throws IOException {
+        if (lazyRequest == null) {
+            return super.readRequest(reader);
+        }
+        T value = lazyRequest.read(reader);
+        setRequest(value);
+        return value;
+    }
+
+    /**
+     * 将request中的批量信封数组逐个延迟解码，每个信封同样只解码头部字段
+     *
+     * @return 批量中的信封，request不是数组时返回null
+     * @throws IOException 如果数据格式不正确，则抛出此异常
+     */
+    public List<APIResponse> readBatch() throws IOException {
+        if (lazyRequest == null) {
+            return null;
+        }
+        LazyValue value = lazyRequest;
+        try (JsonParser parser = value.parser()) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return null;
+            }
+            List<APIResponse> items = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                // 文本片段的解析器偏移相对于片段本身，可以继续按偏移截取；字节片段改为暂存令牌
+                items.add(readFields(parser, value.mapper, value.text, null));
+            }
+            return items;
+        }
+    }
+
+    /**
+     * 设置暂存为令牌序列的request，供增量解码使用
+     *
+     * @param mapper 绑定时使用的ObjectMapper
+     * @param tokens 令牌序列
+     */
+    void setLazyRequest(ObjectMapper mapper, TokenBuffer tokens) {
+        super.setRequest(null);
+        lazyRequest = new LazyValue(mapper, null, null, 0, 0, tokens);
+    }
+
+    /**
+     * 设置暂存为令牌序列的params，供增量解码使用
+     *
+     * @param mapper 绑定时使用的ObjectMapper
+     * @param tokens 令牌序列
+     */
+    void setLazyParams(ObjectMapper mapper, TokenBuffer tokens) {
+        super.setParams(null);
+        lazyParams = new LazyValue(mapper, null, null, 0, 0, tokens);
+    }
+
+    //------------------------------类工具方法完-----------------------------------
+
+    /**
+     * 从JSON字符串中延迟解码API响应对象
+     *
+     * @param jsonStr 一个包含API响应信息的JSON字符串
+     * @return 只解码了头部字段的APIResponse对象
+     * @throws IOException 如果JSON格式不正确，则抛出此异常
+     */
+    public static LazyAPIResponse decodeStr(String jsonStr) throws IOException {
+        ObjectMapper mapper = getSerializer();
+        try (JsonParser parser = mapper.getFactory().createParser(jsonStr)) {
+            return read(parser, mapper, jsonStr, null);
+        }
+    }
+
+    /**
+     * 从UTF-8编码的JSON字节数组中延迟解码API响应对象
+     *
+     * @param json UTF-8编码的JSON字节数组
+     * @return 只解码了头部字段的APIResponse对象
+     * @throws IOException 如果JSON格式不正确，则抛出此异常
+     */
+    public static LazyAPIResponse decodeJson(byte[] json) throws IOException {
+        ObjectMapper mapper = getSerializer();
+        try (JsonParser parser = mapper.getFactory().createParser(json)) {
+            return read(parser, mapper, null, json);
+        }
+    }
+
+    /**
+     * 从BSON字节数组中延迟解码API响应对象
+     * 二进制格式没有可用的偏移量，消息体会被暂存为令牌序列，绑定时无需再次解析原始数据
+     *
+     * @param bson 二进制编码的BSON字节数组
+     * @return 只解码了头部字段的APIResponse对象
+     * @throws IOException 如果无法读取指定的字节数组，则抛出此异常
+     */
+    public static LazyAPIResponse decodeBin(byte[] bson) throws IOException {
+        return decode(getBsonSerializer(), bson);
+    }
+
+    /**
+     * 使用指定的ObjectMapper从字节数组中延迟解码API响应对象，消息体暂存为令牌序列
+     *
+     * @param mapper 数据格式对应的ObjectMapper
+     * @param data 编码后的字节数组
+     * @return 只解码了头部字段的APIResponse对象
+     * @throws IOException 如果无法读取指定的字节数组，则抛出此异常
+     */
+    public static LazyAPIResponse decode(ObjectMapper mapper, byte[] data) throws IOException {
+        return decode(mapper, data, 0, data.length);
+    }
+
+    /**
+     * 使用指定的ObjectMapper从字节数组的指定区间中延迟解码API响应对象，消息体暂存为令牌序列
+     *
+     * @param mapper 数据格式对应的ObjectMapper
+     * @param data 编码后的字节数组
+     * @param offset 起始偏移
+     * @param length 数据长度
+     * @return 只解码了头部字段的APIResponse对象
+     * @throws IOException 如果无法读取指定的字节数组，则抛出此异常
+     */
+    public static LazyAPIResponse decode(ObjectMapper mapper, byte[] data, int offset, int length) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(data, offset, length)) {
+            return read(parser, mapper, null, null);
+        }
+    }
+
+    /**
+     * 逐字段扫描信封，头部字段立即解码，消息体记录为延迟值
+     *
+     * @param parser 解析器
+     * @param mapper 绑定消息体时使用的ObjectMapper
+     * @param text JSON字符串来源，可按字符偏移截取消息体，为null表示不可用
+     * @param bytes JSON字节来源，可按字节偏移截取消息体，为null表示不可用
+     * @return 延迟解码的APIResponse对象
+     * @throws IOException 如果数据格式不正确，则抛出此异常
+     */
+    private static LazyAPIResponse read(JsonParser parser, ObjectMapper mapper, String text, byte[] bytes) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "APIResponse must be an object");
+        }
+        return readFields(parser, mapper, text, bytes);
+    }
+
+    /**
+     * 从对象起始处开始逐字段扫描信封
+     *
+     * @param parser 位于对象起始处的解析器
+     * @param mapper 绑定消息体时使用的ObjectMapper
+     * @param text JSON字符串来源，为null表示不可用
+     * @param bytes JSON字节来源，为null表示不可用
+     * @return 延迟解码的APIResponse对象
+     * @throws IOException 如果数据格式不正确，则抛出此异常
+     */
+    private static LazyAPIResponse readFields(JsonParser parser, ObjectMapper mapper, String text, byte[] bytes) throws IOException {
+        LazyAPIResponse response = new LazyAPIResponse();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (name) {
+                case "uuid":
+                    response.setUUID(token == JsonToken.VALUE_NULL ? null : parser.getText());
+                    break;
+                case "id":
+                    response.setId(parser.getValueAsLong());
+                    break;
+                case "deadline":
+                    response.setDeadline(parser.getValueAsLong());
+                    break;
+                case "key":
+                    response.setKey(token == JsonToken.VALUE_NULL ? null : parser.getText());
+                    break;
+                case "status":
+                    response.setStatus(token == JsonToken.VALUE_NULL ? null : parser.getValueAsInt());
+                    break;
+                case "message":
+                    response.setMessage(token == JsonToken.VALUE_NULL ? null : parser.getText());
+                    break;
+                case "request":
+                    if (token.isStructStart()) {
+                        response.lazyRequest = capture(parser, mapper, text, bytes);
+                    } else {
+                        response.setRequest(mapper.readValue(parser, Object.class));
+                    }
+                    break;
+                case "params":
+                    if (token.isStructStart()) {
+                        response.lazyParams = capture(parser, mapper, text, bytes);
+                    } else {
+                        response.setParams(null);
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        return response;
+    }
+
+    /**
+     * 记录当前对象或数组的原始数据并跳过
+     *
+     * @param parser 位于对象或数组起始处的解析器
+     * @param mapper 绑定时使用的ObjectMapper
+     * @param text JSON字符串来源，为null表示不可用
+     * @param bytes JSON字节来源，为null表示不可用
+     * @return 延迟值
+     * @throws IOException 如果数据格式不正确，则抛出此异常
+     */
+    private static LazyValue capture(JsonParser parser, ObjectMapper mapper, String text, byte[] bytes) throws IOException {
+        if (text != null) {
+            int start = (int) parser.currentTokenLocation().getCharOffset();
+            parser.skipChildren();
+            return new LazyValue(mapper, text.substring(start, (int) parser.currentLocation().getCharOffset()), null, 0, 0, null);
+        }
+        if (bytes != null) {
+            int start = (int) parser.currentTokenLocation().getByteOffset();
+            parser.skipChildren();
+            int end = (int) parser.currentLocation().getByteOffset();
+            return new LazyValue(mapper, null, bytes, start, end - start, null);
+        }
+        TokenBuffer buffer = new TokenBuffer(parser);
+        buffer.copyCurrentStructure(parser);
+        return new LazyValue(mapper, null, null, 0, 0, buffer);
+    }
+
+    /**
+     * 尚未绑定的值，来源为JSON文本片段、JSON字节片段或令牌序列之一。
+     */
+    static final class LazyValue {
+        private final ObjectMapper mapper;
+        private final String text;
+        private final byte[] bytes;
+        private final int offset;
+        private final int length;
+        private final TokenBuffer tokens;
+
+        LazyValue(ObjectMapper mapper, String text, byte[] bytes, int offset, int length, TokenBuffer tokens) {
+            this.mapper = mapper;
+            this.text = text;
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+            this.tokens = tokens;
+        }
+
+        /**
+         * 使用指定的ObjectReader读取
+         *
+         * @param reader 目标类型的ObjectReader
+         * @return 读取结果
+         * @throws IOException 无法读取时抛出
+         */
+        <T> T read(ObjectReader reader) throws IOException {
+            if (text != null) {
+                return reader.readValue(text);
+            }
+            if (bytes != null) {
+                return reader.readValue(bytes, offset, length);
+            }
+            return reader.readValue(tokens.asParser());
+        }
+
+        /**
+         * 创建读取原始数据的解析器
+         *
+         * @return 解析器
+         * @throws IOException 无法创建时抛出
+         */
+        JsonParser parser() throws IOException {
+            if (text != null) {
+                return mapper.getFactory().createParser(text);
+            }
+            if (bytes != null) {
+                return mapper.getFactory().createParser(bytes, offset, length);
+            }
+            return tokens.asParser();
+        }
+
+        /**
+         * 绑定为指定类型
+         *
+         * @param type 目标类型
+         * @return 绑定结果
+         * @throws UncheckedIOException 无法绑定时抛出
+         */
+        <T> T bind(Class<T> type) {
+            return bind(mapper.constructType(type));
+        }
+
+        /**
+         * 绑定为指定类型
+         *
+         * @param type 目标类型
+         * @return 绑定结果
+         * @throws UncheckedIOException 无法绑定时抛出
+         */
+        <T> T bind(JavaType type) {
+            try {
+                if (text != null) {
+                    return mapper.readValue(text, type);
+                }
+                if (bytes != null) {
+                    return mapper.readValue(bytes, offset, length, type);
+                }
+                return mapper.readValue(tokens.asParser(), type);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
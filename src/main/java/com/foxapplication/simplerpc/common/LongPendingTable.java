@@ -0,0 +1,335 @@
+package com.foxapplication.simplerpc.common;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * 以long为键的挂起调用表。
+ * 为每次调用分配单调递增的数字ID，使用分段的开放寻址表保存回调，避免字符串键的哈希与装箱开销；
+ * 回调只能通过{@link #claim(long)}原子地取出一次，响应与超时之间不会重复投递。
+ *
+ * @param <V> 挂起值的类型
+ */
+public class LongPendingTable<V> {
+
+    /**
+     * 分段数量，必须为2的幂。
+     */
+    private static final int SEGMENT_COUNT = 64;
+
+    /**
+     * 各分段，每个分段独立加锁。
+     */
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    /**
+     * ID序列，从1开始单调递增，0保留为空槽标记。
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 用于驱动超时的时间轮定时器。
+     */
+    private final HashedWheelTimer timer = HashedWheelTimer.shared();
+
+    /**
+     * 挂起项的默认超时时间，单位为毫秒。
+     */
+    @Setter
+    @Getter
+    private long timeout = 1000;
+
+    /**
+     * 挂起项超时时的回调。
+     */
+    @Setter
+    @Getter
+    private TimedCache.CacheCallback<Long, V> callback = null;
+
+    /**
+     * 构造一个空的挂起调用表。
+     */
+    public LongPendingTable() {
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * 分配一个新的ID并以默认超时时间保存挂起值。
+     *
+     * @param value 挂起值，不能为null
+     * @return 分配的ID
+     */
+    public long put(V value) {
+        return put(value, timeout);
+    }
+
+    /**
+     * 分配一个新的ID并以指定超时时间保存挂起值。
+     *
+     * @param value 挂起值，不能为null
+     * @param timeout 超时时间，单位为毫秒
+     * @return 分配的ID
+     */
+    public long put(V value, long timeout) {
+        long id = sequence.incrementAndGet();
+        Segment segment = segmentFor(id);
+        segment.put(id, value);
+        HashedWheelTimer.Timeout task = timer.newTimeout(() -> expire(id), timeout, TimeUnit.MILLISECONDS);
+        if (!segment.attach(id, task)) {
+            // 在调度前已被取走
+            task.cancel();
+        }
+        return id;
+    }
+
+    /**
+     * 原子地取出并移除指定ID的挂起值，同时取消其超时任务。
+     *
+     * @param id 挂起项的ID
+     * @return 挂起值，不存在或已被取走时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public V claim(long id) {
+        if (id == 0) {
+            return null;
+        }
+        return (V) segmentFor(id).remove(id);
+    }
+
+    /**
+     * 原子地取出所有值满足条件的挂起项，同时取消其超时任务，取出的项不会再触发超时回调。
+     *
+     * @param predicate 挂起值的条件
+     * @param consumer 取出的挂起项的处理逻辑，在分段锁外调用
+     * @return 取出的挂起项数量
+     */
+    public int claimIf(Predicate<? super V> predicate, BiConsumer<Long, V> consumer) {
+        int claimed = 0;
+        for (Segment segment : segments) {
+            for (long id : segment.select(predicate)) {
+                V value = claim(id);
+                if (value != null) {
+                    consumer.accept(id, value);
+                    claimed++;
+                }
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * 遍历挂起项，遍历期间添加或取走的项可能不会被遍历到。
+     *
+     * @param consumer 挂起项的处理逻辑，在分段锁外调用
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<Long, V> consumer) {
+        for (Segment segment : segments) {
+            for (long id : segment.select(value -> true)) {
+                Object value = segment.get(id);
+                if (value != null) {
+                    consumer.accept(id, (V) value);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取挂起项数量。
+     *
+     * @return 挂起项数量
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * 取消所有挂起项的超时任务，挂起项保留在表中。
+     */
+    public void shutdown() {
+        for (Segment segment : segments) {
+            segment.cancelAll();
+        }
+    }
+
+    /**
+     * 超时时由定时器调用，仅当挂起项尚未被取走时触发回调。
+     *
+     * @param id 挂起项的ID
+     */
+    @SuppressWarnings("unchecked")
+    private void expire(long id) {
+        Object value = segmentFor(id).remove(id);
+        if (value != null && callback != null) {
+            callback.onExpire(id, (V) value);
+        }
+    }
+
+    /**
+     * 获取ID所在的分段。
+     *
+     * @param id 挂起项的ID
+     * @return 分段
+     */
+    private Segment segmentFor(long id) {
+        return segments[(int) mix(id) & (SEGMENT_COUNT - 1)];
+    }
+
+    /**
+     * 打散ID的位分布，避免连续ID集中在相邻槽位。
+     *
+     * @param id 挂起项的ID
+     * @return 打散后的哈希值
+     */
+    private static long mix(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * 开放寻址分段，使用线性探测与回移删除，所有操作在分段锁内完成。
+     */
+    private static final class Segment {
+        private long[] keys = new long[16];
+        private Object[] values = new Object[16];
+        private Object[] timeouts = new Object[16];
+        private int size;
+
+        synchronized void put(long id, Object value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            int i = indexOf(keys, id);
+            if (keys[i] == 0) {
+                size++;
+            }
+            keys[i] = id;
+            values[i] = value;
+            timeouts[i] = null;
+        }
+
+        synchronized boolean attach(long id, Object timeout) {
+            int i = indexOf(keys, id);
+            if (keys[i] == 0) {
+                return false;
+            }
+            timeouts[i] = timeout;
+            return true;
+        }
+
+        /**
+         * 移除挂起项并取消其超时任务（由定时器触发时取消操作无效果）。
+         */
+        synchronized Object remove(long id) {
+            int i = indexOf(keys, id);
+            if (keys[i] == 0) {
+                return null;
+            }
+            Object value = values[i];
+            if (timeouts[i] != null) {
+                ((HashedWheelTimer.Timeout) timeouts[i]).cancel();
+            }
+            deleteAt(i);
+            size--;
+            return value;
+        }
+
+        synchronized Object get(long id) {
+            return values[indexOf(keys, id)];
+        }
+
+        /**
+         * 选出值满足条件的挂起项的ID，之后由调用方逐个取出，避免在遍历时回移删除。
+         */
+        @SuppressWarnings("unchecked")
+        synchronized List<Long> select(Predicate<?> predicate) {
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0 && ((Predicate<Object>) predicate).test(values[i])) {
+                    ids.add(keys[i]);
+                }
+            }
+            return ids;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized void cancelAll() {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0 && timeouts[i] != null) {
+                    ((HashedWheelTimer.Timeout) timeouts[i]).cancel();
+                    timeouts[i] = null;
+                }
+            }
+        }
+
+        /**
+         * 查找ID所在槽位，不存在时返回应插入的空槽位。
+         */
+        private static int indexOf(long[] keys, long id) {
+            int mask = keys.length - 1;
+            int i = (int) (mix(id) >>> 32) & mask;
+            while (keys[i] != 0 && keys[i] != id) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        /**
+         * 删除槽位并将后续冲突项前移，保持探测链连续。
+         */
+        private void deleteAt(int i) {
+            int mask = keys.length - 1;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (keys[j] == 0) {
+                    break;
+                }
+                int home = (int) (mix(keys[j]) >>> 32) & mask;
+                // 若home不在(i, j]区间内，则j处的项可以移动到i
+                if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    timeouts[i] = timeouts[j];
+                    i = j;
+                }
+            }
+            keys[i] = 0;
+            values[i] = null;
+            timeouts[i] = null;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            Object[] oldTimeouts = timeouts;
+            keys = new long[oldKeys.length * 2];
+            values = new Object[oldKeys.length * 2];
+            timeouts = new Object[oldKeys.length * 2];
+            for (int k = 0; k < oldKeys.length; k++) {
+                if (oldKeys[k] != 0) {
+                    int i = indexOf(keys, oldKeys[k]);
+                    keys[i] = oldKeys[k];
+                    values[i] = oldValues[k];
+                    timeouts[i] = oldTimeouts[k];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.foxapplication.simplerpc.common;
+
+import java.io.IOException;
+
+/**
+ * 消息超过允许的最大字节数，包括分片重组后和解压后的大小。
+ */
+public class MessageTooLargeException extends IOException {
+
+    /**
+     * 构造异常
+     *
+     * @param maxSize 允许的最大字节数
+     */
+    public MessageTooLargeException(long maxSize) {
+        super("Message exceeds " + maxSize + " bytes");
+    }
+}
@@ -0,0 +1,256 @@
+package com.foxapplication.simplerpc.common;
+
+import lombok.Getter;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 一个连接上协商好的permessage-deflate压缩状态，由服务端在握手时创建。
+ * 不保留上下文的方向使用线程级的Deflater或Inflater，每条消息结束后重置；
+ * 保留上下文的方向为连接创建专用的实例，压缩与发送需要在{@link #lock()}上同步，保证消息按压缩顺序写出。
+ */
+public class PerMessageDeflate {
+
+    /**
+     * 同步刷新在压缩输出末尾产生的空块，发送时去掉，解压前补上。
+     */
+    private static final byte[] TAIL = {0, 0, (byte) 0xff, (byte) 0xff};
+
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    /**
+     * 编码后小于该字节数的消息不压缩。
+     */
+    @Getter
+    private final int threshold;
+
+    /**
+     * 压缩级别。
+     */
+    @Getter
+    private final int level;
+
+    /**
+     * 服务端发送时是否不保留压缩上下文。
+     */
+    @Getter
+    private final boolean serverNoContextTakeover;
+
+    /**
+     * 客户端发送时是否不保留压缩上下文。
+     */
+    @Getter
+    private final boolean clientNoContextTakeover;
+
+    private Deflater deflater;
+    private Inflater inflater;
+
+    /**
+     * 构造协商好的压缩状态
+     *
+     * @param threshold 编码后小于该字节数的消息不压缩
+     * @param level 压缩级别
+     * @param serverNoContextTakeover 服务端发送时是否不保留压缩上下文
+     * @param clientNoContextTakeover 客户端发送时是否不保留压缩上下文
+     */
+    public PerMessageDeflate(int threshold, int level, boolean serverNoContextTakeover, boolean clientNoContextTakeover) {
+        this.threshold = threshold;
+        this.level = level;
+        this.serverNoContextTakeover = serverNoContextTakeover;
+        this.clientNoContextTakeover = clientNoContextTakeover;
+    }
+
+    /**
+     * 生成服务端的扩展响应
+     *
+     * @return Sec-WebSocket-Extensions响应头的值
+     */
+    public String response() {
+        return DeflateOptions.EXTENSION_NAME
+                + (serverNoContextTakeover ? "; " + DeflateOptions.SERVER_NO_CONTEXT_TAKEOVER : "")
+                + (clientNoContextTakeover ? "; " + DeflateOptions.CLIENT_NO_CONTEXT_TAKEOVER : "");
+    }
+
+    /**
+     * 判断消息是否需要压缩
+     *
+     * @param length 编码后的字节数
+     * @return 达到压缩阈值时返回true
+     */
+    public boolean shouldCompress(int length) {
+        return length >= threshold;
+    }
+
+    /**
+     * 压缩锁，保留上下文时压缩与写出帧需要在同一把锁内完成
+     *
+     * @return 压缩锁
+     */
+    public Object lock() {
+        return this;
+    }
+
+    /**
+     * 压缩一条消息并追加到缓冲区，输出已去掉末尾的同步刷新块，可直接作为设置了RSV1的帧负载
+     *
+     * @param data 消息数据
+     * @param offset 起始位置
+     * @param length 字节数
+     * @param out 输出缓冲区
+     */
+    public void deflate(byte[] data, int offset, int length, BufferPool.Buffer out) {
+        Deflater current = serverNoContextTakeover ? DEFLATERS.get() : connectionDeflater();
+        int start = out.size();
+        try {
+            current.setLevel(level);
+            current.setInput(data, offset, length);
+            out.deflate(current);
+        } finally {
+            if (serverNoContextTakeover) {
+                current.reset();
+            }
+        }
+        if (out.size() - start >= TAIL.length && endsWithTail(out.array(), out.size())) {
+            out.truncate(out.size() - TAIL.length);
+        }
+    }
+
+    /**
+     * 解压一条设置了RSV1的消息
+     *
+     * @param data 压缩的消息负载
+     * @param maxSize 解压后允许的最大字节数
+     * @return 解压后的消息
+     * @throws DataFormatException 数据格式错误时抛出
+     * @throws MessageTooLargeException 解压后超过最大字节数时抛出
+     */
+    public byte[] inflate(byte[] data, int maxSize) throws DataFormatException, MessageTooLargeException {
+        if (clientNoContextTakeover) {
+            return inflate(INFLATERS.get(), data, maxSize);
+        }
+        synchronized (this) {
+            if (inflater == null) {
+                inflater = new Inflater(true);
+            }
+            return inflate(inflater, data, maxSize);
+        }
+    }
+
+    /**
+     * 开始逐片解压一条分片到达的消息
+     * 不保留上下文时为这条消息单独创建Inflater，分片可能在不同线程上到达，不能使用线程级的实例
+     *
+     * @return 单条消息的解压过程
+     */
+    public Inflation beginInflate() {
+        if (clientNoContextTakeover) {
+            return new Inflation(new Inflater(true), true);
+        }
+        synchronized (this) {
+            if (inflater == null) {
+                inflater = new Inflater(true);
+            }
+            return new Inflation(inflater, false);
+        }
+    }
+
+    /**
+     * 释放连接专用的压缩器，连接关闭时调用
+     */
+    public synchronized void close() {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    /**
+     * 单条分片消息的解压过程，按分片到达顺序调用{@link #update}，最后调用{@link #finish}。
+     */
+    public static final class Inflation {
+        private final Inflater inflater;
+        private final boolean owned;
+
+        private Inflation(Inflater inflater, boolean owned) {
+            this.inflater = inflater;
+            this.owned = owned;
+        }
+
+        /**
+         * 解压一个分片并追加到缓冲区
+         *
+         * @param data 压缩的分片负载
+         * @param maxSize 缓冲区允许的最大字节数
+         * @param out 输出缓冲区
+         * @throws DataFormatException 数据格式错误时抛出
+         * @throws MessageTooLargeException 超过最大字节数时抛出
+         */
+        public void update(byte[] data, int maxSize, BufferPool.Buffer out) throws DataFormatException, MessageTooLargeException {
+            inflater.setInput(data);
+            out.inflate(inflater, maxSize);
+        }
+
+        /**
+         * 消息结束，补上同步刷新块并追加剩余输出，之后释放资源
+         *
+         * @param maxSize 缓冲区允许的最大字节数
+         * @param out 输出缓冲区
+         * @throws DataFormatException 数据格式错误时抛出
+         * @throws MessageTooLargeException 超过最大字节数时抛出
+         */
+        public void finish(int maxSize, BufferPool.Buffer out) throws DataFormatException, MessageTooLargeException {
+            try {
+                inflater.setInput(TAIL);
+                out.inflate(inflater, maxSize);
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * 放弃解压并释放资源
+         */
+        public void close() {
+            if (owned) {
+                inflater.end();
+            }
+        }
+    }
+
+    private byte[] inflate(Inflater current, byte[] data, int maxSize) throws DataFormatException, MessageTooLargeException {
+        try (BufferPool.Buffer out = BufferPool.acquire()) {
+            current.setInput(data);
+            out.inflate(current, maxSize);
+            current.setInput(TAIL);
+            out.inflate(current, maxSize);
+            return out.toByteArray();
+        } finally {
+            if (clientNoContextTakeover) {
+                current.reset();
+            }
+        }
+    }
+
+    private synchronized Deflater connectionDeflater() {
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        }
+        return deflater;
+    }
+
+    private static boolean endsWithTail(byte[] data, int end) {
+        for (int i = 0; i < TAIL.length; i++) {
+            if (data[end - TAIL.length + i] != TAIL[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
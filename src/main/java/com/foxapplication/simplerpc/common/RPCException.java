@@ -0,0 +1,49 @@
+package com.foxapplication.simplerpc.common;
+
+import lombok.Getter;
+
+/**
+ * 调用未得到成功的响应，携带响应的状态码与消息，例如超时的408或服务端繁忙的503。
+ */
+@Getter
+public class RPCException extends RuntimeException {
+
+    /**
+     * 响应的状态码。
+     */
+    private final int status;
+
+    /**
+     * 构造异常
+     *
+     * @param status 响应的状态码
+     * @param message 响应的消息
+     */
+    public RPCException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    /**
+     * 构造异常
+     *
+     * @param status 响应的状态码
+     * @param message 响应的消息
+     * @param cause 原因
+     */
+    public RPCException(int status, String message, Throwable cause) {
+        super(message, cause);
+        this.status = status;
+    }
+
+    /**
+     * 以响应构造异常
+     *
+     * @param response 未成功的响应
+     * @return 异常
+     */
+    public static RPCException of(APIResponse response) {
+        Integer status = response.getStatus();
+        return new RPCException(status == null ? 500 : status, response.getMessage());
+    }
+}
@@ -32,6 +32,13 @@ public class RPCRouterNode<T> {
     @Getter // 自动生成rpcServer字段的getter方法
     private T rpcServer = null;
 
+    /**
+     * 路由的附加配置，默认值为null。
+     */
+    @Setter // 自动生成options字段的setter方法
+    @Getter // 自动生成options字段的getter方法
+    private RouteOptions options = null;
+
     /**
      * 清空所有子节点。
      */
@@ -46,6 +53,6 @@ public class RPCRouterNode<T> {
      * @return 一个带有指定名称的新RPCRouterNode实例
      */
     public static <T> RPCRouterNode<T> create(String key) {
-        return new RPCRouterNode<T>(key, null);
+        return new RPCRouterNode<T>(key, null, null);
     }
 }
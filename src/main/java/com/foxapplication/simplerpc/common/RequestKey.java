@@ -0,0 +1,92 @@
+package com.foxapplication.simplerpc.common;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 以路由键和请求内容标识一次调用，用于缓存与合并相同的调用。
+ * request与params按规范形式序列化，Map的键与对象的属性均按名称排序，内容相同但字段顺序不同的请求得到相同的标识；
+ * 比较时使用完整的规范字节，不会因哈希冲突把不同的请求视为相同。
+ */
+public final class RequestKey {
+
+    /**
+     * 规范序列化使用的ObjectMapper。
+     */
+    private static final ObjectMapper canonical = JsonMapper.builder()
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .build();
+
+    /**
+     * 路由键。
+     */
+    @Getter
+    private final String route;
+
+    /**
+     * request与params的规范序列化结果。
+     */
+    private final byte[] payload;
+
+    private final int hash;
+
+    private RequestKey(String route, byte[] payload) {
+        this.route = route;
+        this.payload = payload;
+        this.hash = 31 * route.hashCode() + Arrays.hashCode(payload);
+    }
+
+    /**
+     * 构造调用的标识
+     *
+     * @param route 路由键
+     * @param request 请求对象
+     * @param params 请求参数
+     * @return 调用的标识
+     * @throws JsonProcessingException 请求无法序列化时抛出
+     */
+    public static RequestKey of(String route, Object request, Map<String, Object> params) throws JsonProcessingException {
+        return new RequestKey(route, canonical.writeValueAsBytes(new Object[]{request, params}));
+    }
+
+    /**
+     * 构造调用的标识
+     *
+     * @param data 调用
+     * @return 调用的标识
+     * @throws JsonProcessingException 请求无法序列化时抛出
+     */
+    public static RequestKey of(APIResponse data) throws JsonProcessingException {
+        return of(data.getKey(), data.getRequest(), data.getParams());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RequestKey)) {
+            return false;
+        }
+        RequestKey other = (RequestKey) o;
+        return hash == other.hash && route.equals(other.route) && Arrays.equals(payload, other.payload);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return route + "#" + Integer.toHexString(hash);
+    }
+}
@@ -0,0 +1,127 @@
+package com.foxapplication.simplerpc.common;
+
+import lombok.Getter;
+
+import java.util.concurrent.Semaphore;
+import java.util.function.ToIntFunction;
+
+/**
+ * 路由的附加配置，在添加路由节点时指定。
+ */
+@Getter
+public class RouteOptions {
+
+    /**
+     * 该路由允许同时执行的处理器数量，小于1表示不限制。
+     */
+    private int maxConcurrency = 0;
+
+    /**
+     * 限制并发数量的信号量，未限制时为null。
+     */
+    private Semaphore limiter = null;
+
+    /**
+     * 该路由的响应缓存，未开启缓存时为null。
+     */
+    private TinyLfuCache<RequestKey, APIResponse> cache = null;
+
+    /**
+     * 合并相同调用的执行，未开启时为null。
+     */
+    private SingleFlight singleFlight = null;
+
+    //------------------------------类参数定义完-----------------------------------
+
+    /**
+     * 设置该路由允许同时执行的处理器数量。
+     * 达到上限后，虚拟线程模式下新的调用等待正在执行的调用完成，等待只占用虚拟线程；
+     * 其他模式下新的调用直接以503拒绝，不阻塞执行器线程，避免同一线程上其他路由与连接的调用被拖住。
+     *
+     * @param maxConcurrency 最大并发数量，小于1表示不限制
+     * @return RouteOptions对象，便于链式调用
+     */
+    public RouteOptions maxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+        this.limiter = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+        return this;
+    }
+
+    /**
+     * 将该路由标记为可缓存，只应用于结果仅由request与params决定的只读路由。
+     * 状态为200的响应按路由键与请求内容缓存，存活时间内的相同调用直接返回缓存的响应，不执行处理器。
+     *
+     * @param ttl 缓存项的存活时间，单位为毫秒
+     * @param maxEntries 缓存的最大项数
+     * @return RouteOptions对象，便于链式调用
+     */
+    public RouteOptions cacheable(long ttl, long maxEntries) {
+        return cacheable(ttl, maxEntries, null);
+    }
+
+    /**
+     * 将该路由标记为可缓存，并按指定的权重限制缓存容量。
+     *
+     * @param ttl 缓存项的存活时间，单位为毫秒
+     * @param maxWeight 缓存的总权重上限
+     * @param weigher 计算响应权重的函数，例如按响应的估计字节数，为null时每项权重为1
+     * @return RouteOptions对象，便于链式调用
+     */
+    public RouteOptions cacheable(long ttl, long maxWeight, ToIntFunction<APIResponse> weigher) {
+        this.cache = new TinyLfuCache<>(maxWeight, ttl, weigher);
+        return this;
+    }
+
+    /**
+     * 设置是否合并相同的进行中调用，只应用于结果仅由request与params决定的路由。
+     * 路由键与请求内容都相同的调用同时到达时处理器只执行一次，结果交给每个调用方。
+     *
+     * @param enabled 是否开启
+     * @return RouteOptions对象，便于链式调用
+     */
+    public RouteOptions singleFlight(boolean enabled) {
+        this.singleFlight = enabled ? new SingleFlight() : null;
+        return this;
+    }
+
+    /**
+     * 获取执行许可，未限制并发时立即返回。
+     * 等待可以被中断，调用在等待许可期间被取消时不再执行处理器。
+     *
+     * @throws InterruptedException 等待期间线程被中断
+     */
+    public void acquire() throws InterruptedException {
+        if (limiter != null) {
+            limiter.acquire();
+        }
+    }
+
+    /**
+     * 尝试获取执行许可，不等待。
+     *
+     * @return 获得许可或未限制并发时返回true
+     */
+    public boolean tryAcquire() {
+        return limiter == null || limiter.tryAcquire();
+    }
+
+    /**
+     * 归还执行许可。
+     */
+    public void release() {
+        if (limiter != null) {
+            limiter.release();
+        }
+    }
+
+    //------------------------------类工具方法完-----------------------------------
+
+    /**
+     * 创建一个RouteOptions实例
+     *
+     * @return 新创建的RouteOptions实例
+     */
+    public static RouteOptions create() {
+        return new RouteOptions();
+    }
+}
@@ -0,0 +1,130 @@
+package com.foxapplication.simplerpc.common;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.hutool.core.text.StrUtil;
+import org.dromara.hutool.core.text.split.SplitUtil;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 路由表。
+ * 路由树用于管理和查看路由结构，每次增删路由后会重新生成以完整路由键为键的扁平索引并原子替换，
+ * 消息分发时只需一次哈希查找，无需拆分路由键和逐级遍历子节点。
+ *
+ * @param <T> 路由处理器的类型
+ */
+@Slf4j
+public class RouteTable<T> {
+
+    /**
+     * 根路由节点。
+     */
+    @Getter
+    private final RPCRouterNode<T> root = new RPCRouterNode<>();
+
+    /**
+     * 完整路由键到路由节点的只读索引，仅包含设置了处理器的节点。
+     */
+    private volatile Map<String, RPCRouterNode<T>> index = Map.of();
+
+    /**
+     * 添加路由节点。
+     *
+     * @param key 路由键，用于标识节点路径
+     * @param handler 关联的处理器
+     * @param options 路由的附加配置，可以为null
+     */
+    public synchronized void add(String key, T handler, RouteOptions options) {
+        if (StrUtil.isBlank(key)) {
+            log.error("It is not allowed to override the root node");
+            return;
+        }
+        List<String> link = SplitUtil.split(key, ".", true, false);
+        RPCRouterNode<T> cacheNode = root;
+        for (String s : link) {
+            cacheNode = cacheNode.getChildren().computeIfAbsent(s, k -> RPCRouterNode.create(s));
+        }
+        cacheNode.setRpcServer(handler);
+        cacheNode.setOptions(options);
+        refresh();
+    }
+
+    /**
+     * 移除路由节点及其所有子节点。
+     *
+     * @param key 路由键，用于标识节点路径
+     */
+    public synchronized void remove(String key) {
+        if (StrUtil.isBlank(key)) {
+            log.error("Cannot remove root");
+            return;
+        }
+        List<String> link = SplitUtil.split(key, ".", true, false);
+        RPCRouterNode<T> cacheNode = root;
+        RPCRouterNode<T> lastNode = null;
+        String findKey = null;
+        for (String s : link) {
+            lastNode = cacheNode;
+            findKey = s;
+            cacheNode = cacheNode.getChildren().get(s);
+            if (cacheNode == null){
+                return;
+            }
+        }
+        if (lastNode == null || findKey == null){
+            return;
+        }
+        lastNode.getChildren().remove(findKey);
+        refresh();
+    }
+
+    /**
+     * 按完整路由键查找路由节点。
+     *
+     * @param key 完整路由键，例如"user.get"
+     * @return 设置了处理器的路由节点，不存在时返回null
+     */
+    public RPCRouterNode<T> lookup(String key) {
+        return index.get(key);
+    }
+
+    /**
+     * 获取当前的扁平索引。
+     *
+     * @return 完整路由键到路由节点的只读映射
+     */
+    public Map<String, RPCRouterNode<T>> getIndex() {
+        return index;
+    }
+
+    /**
+     * 根据路由树重新生成扁平索引。
+     * 直接修改路由树后需调用此方法使修改生效。
+     */
+    public synchronized void refresh() {
+        Map<String, RPCRouterNode<T>> map = new HashMap<>();
+        for (RPCRouterNode<T> child : root.getChildren().values()) {
+            collect(child.getName(), child, map);
+        }
+        index = Map.copyOf(map);
+    }
+
+    /**
+     * 递归收集设置了处理器的节点。
+     *
+     * @param path 当前节点的完整路由键
+     * @param node 当前节点
+     * @param map 收集结果
+     */
+    private void collect(String path, RPCRouterNode<T> node, Map<String, RPCRouterNode<T>> map) {
+        if (node.getRpcServer() != null) {
+            map.put(path, node);
+        }
+        for (RPCRouterNode<T> child : node.getChildren().values()) {
+            collect(path + "." + child.getName(), child, map);
+        }
+    }
+}
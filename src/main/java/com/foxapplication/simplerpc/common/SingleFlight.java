@@ -0,0 +1,143 @@
+package com.foxapplication.simplerpc.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 合并相同的进行中调用。
+ * 第一个调用执行处理器，执行期间到达的相同调用只登记结果的接收者，处理器完成后结果按各自的关联标识复制给每个调用方，
+ * 热点数据同时被大量请求时处理器只执行一次。调用完成后即移除，不会缓存结果。
+ * 执行的调用没有结果时，等待者收到与各自调用关联的503响应。
+ */
+public class SingleFlight {
+
+    /**
+     * 进行中的调用，键为调用的标识。
+     */
+    private final Map<RequestKey, Call> calls = new ConcurrentHashMap<>();
+
+    /**
+     * 通过合并获得结果的调用次数。
+     */
+    private final LongAdder sharedCount = new LongAdder();
+
+    /**
+     * 加入相同调用的执行
+     *
+     * @param key 调用的标识
+     * @param data 调用
+     * @param reply 调用结果的接收者
+     * @return 当前调用需要执行处理器时返回新的结果接收者，处理器的结果需交给它；
+     * 已有相同调用正在执行时返回null，结果会在该调用完成时交给reply
+     */
+    public Consumer<APIResponse> join(RequestKey key, APIResponse data, Consumer<APIResponse> reply) {
+        while (true) {
+            Call call = calls.get(key);
+            if (call == null) {
+                Call created = new Call();
+                call = calls.putIfAbsent(key, created);
+                if (call == null) {
+                    return result -> {
+                        calls.remove(key, created);
+                        List<Waiter> waiters = created.complete();
+                        reply.accept(result);
+                        for (Waiter waiter : waiters) {
+                            waiter.reply.accept(result == null ? noResult(waiter.data) : result.copyUncorrelated().correlate(waiter.data));
+                        }
+                    };
+                }
+            }
+            if (call.add(new Waiter(data, reply))) {
+                sharedCount.increment();
+                return null;
+            }
+            // 该调用刚刚完成，重新查找
+        }
+    }
+
+    /**
+     * 判断相同的调用是否有其他调用在等待结果
+     * 执行的调用被取消时据此决定是否继续执行处理器
+     *
+     * @param key 调用的标识
+     * @return 调用正在执行且有等待者时返回true
+     */
+    public boolean hasWaiters(RequestKey key) {
+        Call call = calls.get(key);
+        return call != null && call.hasWaiters();
+    }
+
+    /**
+     * 构造执行的调用没有交出结果时给等待者的响应
+     * 执行的调用被取消、超时丢弃或处理器没有返回响应时结果为null，等待者仍需收到回复，不必等到超时
+     *
+     * @param data 等待的调用
+     * @return 与调用关联的503响应
+     */
+    private static APIResponse noResult(APIResponse data) {
+        APIResponse response = APIResponse.create().correlate(data);
+        response.setStatus(503);
+        response.setMessage("Shared call returned no result");
+        return response;
+    }
+
+    /**
+     * 获取进行中的不同调用数量
+     *
+     * @return 进行中的调用数量
+     */
+    public int getInFlight() {
+        return calls.size();
+    }
+
+    /**
+     * 获取通过合并获得结果的调用次数
+     *
+     * @return 未执行处理器的调用次数
+     */
+    public long getSharedCount() {
+        return sharedCount.sum();
+    }
+
+    /**
+     * 一次进行中的调用及其等待结果的相同调用。
+     */
+    private static final class Call {
+        private List<Waiter> waiters = new ArrayList<>();
+
+        synchronized boolean add(Waiter waiter) {
+            if (waiters == null) {
+                return false;
+            }
+            waiters.add(waiter);
+            return true;
+        }
+
+        synchronized boolean hasWaiters() {
+            return waiters != null && !waiters.isEmpty();
+        }
+
+        synchronized List<Waiter> complete() {
+            List<Waiter> completed = waiters;
+            waiters = null;
+            return completed;
+        }
+    }
+
+    /**
+     * 等待结果的调用。
+     */
+    private static final class Waiter {
+        private final APIResponse data;
+        private final Consumer<APIResponse> reply;
+
+        Waiter(APIResponse data, Consumer<APIResponse> reply) {
+            this.data = data;
+            this.reply = reply;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.foxapplication.simplerpc.common;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+
+/**
+ * 基于Jackson非阻塞解析器的信封增量解码器。
+ * 每段数据到达后立即解析出其中完整的令牌：头部字段直接解码，request和params复制到各自的令牌序列中，
+ * 原始数据在解析后即可释放，解码一条大消息时不需要同时持有它的完整字节。
+ */
+class StreamingEnvelopeDecoder implements Codec.Decoder {
+
+    private final ObjectMapper mapper;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final LazyAPIResponse response = new LazyAPIResponse();
+
+    /**
+     * 当前的嵌套深度，信封对象内部为1。
+     */
+    private int depth;
+
+    /**
+     * 信封对象中当前值对应的字段名。
+     */
+    private String field;
+
+    /**
+     * 正在复制的对象或数组值，为null表示当前不在复制。
+     */
+    private TokenBuffer capture;
+
+    /**
+     * 信封对象是否已结束。
+     */
+    private boolean done;
+
+    /**
+     * 构造增量解码器
+     *
+     * @param mapper 数据格式对应的ObjectMapper，必须支持非阻塞解析
+     * @throws IllegalStateException 无法创建非阻塞解析器时抛出
+     */
+    StreamingEnvelopeDecoder(ObjectMapper mapper) {
+        this.mapper = mapper;
+        try {
+            this.parser = mapper.getFactory().createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Non-blocking parser is not supported", e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    @Override
+    public void feed(byte[] data, int offset, int length) throws IOException {
+        feeder.feedInput(data, offset, offset + length);
+        drain();
+    }
+
+    @Override
+    public APIResponse finish() throws IOException {
+        feeder.endOfInput();
+        drain();
+        parser.close();
+        if (!done) {
+            throw new JsonParseException(parser, "Unexpected end of APIResponse");
+        }
+        return response;
+    }
+
+    /**
+     * 处理已提供数据中所有完整的令牌，返回时解析器已消费全部输入
+     */
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.NOT_AVAILABLE && token != null) {
+            accept(token);
+        }
+    }
+
+    private void accept(JsonToken token) throws IOException {
+        if (capture != null) {
+            capture.copyCurrentEvent(parser);
+            if (token.isStructStart()) {
+                depth++;
+            } else if (token.isStructEnd() && --depth == 1) {
+                endCapture();
+            }
+            return;
+        }
+        if (done) {
+            throw new JsonParseException(parser, "Unexpected data after APIResponse");
+        }
+        if (depth == 0) {
+            if (token != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "APIResponse must be an object");
+            }
+            depth = 1;
+            return;
+        }
+        if (token == JsonToken.FIELD_NAME) {
+            field = parser.currentName();
+            return;
+        }
+        if (token == JsonToken.END_OBJECT) {
+            depth = 0;
+            done = true;
+            return;
+        }
+        if (token.isStructStart()) {
+            capture = new TokenBuffer(parser);
+            capture.copyCurrentEvent(parser);
+            depth = 2;
+            return;
+        }
+        switch (field) {
+            case "uuid":
+                response.setUUID(token == JsonToken.VALUE_NULL ? null : parser.getText());
+                break;
+            case "id":
+                response.setId(parser.getValueAsLong());
+                break;
+            case "deadline":
+                response.setDeadline(parser.getValueAsLong());
+                break;
+            case "key":
+                response.setKey(token == JsonToken.VALUE_NULL ? null : parser.getText());
+                break;
+            case "status":
+                response.setStatus(token == JsonToken.VALUE_NULL ? null : parser.getValueAsInt());
+                break;
+            case "message":
+                response.setMessage(token == JsonToken.VALUE_NULL ? null : parser.getText());
+                break;
+            case "request":
+                response.setRequest(mapper.readValue(parser, Object.class));
+                break;
+            case "params":
+                response.setParams(null);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 对象或数组值复制完毕，按字段名保存，未知字段直接丢弃
+     */
+    private void endCapture() {
+        if ("request".equals(field)) {
+            response.setLazyRequest(mapper, capture);
+        } else if ("params".equals(field)) {
+            response.setLazyParams(mapper, capture);
+        }
+        capture = null;
+    }
+}
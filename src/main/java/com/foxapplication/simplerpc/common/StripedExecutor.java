@@ -0,0 +1,130 @@
+package com.foxapplication.simplerpc.common;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.hutool.core.thread.ExecutorBuilder;
+import org.dromara.hutool.core.thread.ThreadUtil;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 分片有序执行器。
+ * 每个分片是一个单线程执行器，任务按分片键固定映射到某个分片上：
+ * 同一分片键（例如同一个WebSocket连接）的任务按提交顺序执行，不同分片键的任务可以在多个核心上并行执行。
+ */
+@Slf4j
+public class StripedExecutor {
+
+    /**
+     * 各分片的单线程执行器。
+     */
+    private final ExecutorService[] stripes;
+
+    /**
+     * 分片选择策略。
+     */
+    @Getter
+    private final StripePolicy policy;
+
+    /**
+     * 每个分片的任务队列容量。
+     */
+    @Getter
+    private final int queueCapacity;
+
+    /**
+     * 构造分片执行器。
+     *
+     * @param stripeCount 分片数量，小于1时使用CPU核心数
+     * @param queueCapacity 每个分片的任务队列容量
+     * @param policy 分片选择策略，为null时使用{@link StripePolicy#HASH}
+     * @param rejectedHandler 分片队列已满时的拒绝策略，为null时直接抛出拒绝异常
+     * @param namePrefix 分片线程名称前缀
+     */
+    public StripedExecutor(int stripeCount, int queueCapacity, StripePolicy policy,
+                           RejectedExecutionHandler rejectedHandler, String namePrefix) {
+        if (stripeCount < 1) {
+            stripeCount = Runtime.getRuntime().availableProcessors();
+        }
+        this.policy = policy == null ? StripePolicy.HASH : policy;
+        this.queueCapacity = queueCapacity;
+        RejectedExecutionHandler handler = rejectedHandler == null ? new ThreadPoolExecutor.AbortPolicy() : rejectedHandler;
+        this.stripes = new ExecutorService[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = ExecutorBuilder.of()
+                    .setCorePoolSize(1)
+                    .setMaxPoolSize(1)
+                    .setKeepAliveTime(0)
+                    .setWorkQueue(new ArrayBlockingQueue<>(queueCapacity))
+                    .setThreadFactory(ThreadUtil.newNamedThreadFactory(namePrefix + i + "-", true))
+                    .setHandler(handler)
+                    .build();
+        }
+    }
+
+    /**
+     * 提交任务到分片键对应的分片。
+     *
+     * @param stripeKey 分片键，相同分片键的任务按提交顺序执行
+     * @param task 要执行的任务
+     * @throws java.util.concurrent.RejectedExecutionException 分片队列已满且拒绝策略选择拒绝时抛出
+     */
+    public void execute(Object stripeKey, Runnable task) {
+        stripes[policy.select(stripeKey, stripes.length)].execute(task);
+    }
+
+    /**
+     * 获取分片数量。
+     *
+     * @return 分片数量
+     */
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * 获取指定分片当前排队的任务数。
+     *
+     * @param stripe 分片下标
+     * @return 排队中的任务数
+     */
+    public int getQueueSize(int stripe) {
+        return ((ThreadPoolExecutor) stripes[stripe]).getQueue().size();
+    }
+
+    /**
+     * 关闭所有分片，已提交的任务会继续执行完毕。
+     */
+    public void shutdown() {
+        for (ExecutorService stripe : stripes) {
+            stripe.shutdown();
+        }
+    }
+
+    /**
+     * 分片选择策略，决定分片键映射到哪个分片。
+     * 对同一分片键必须始终返回同一个分片下标，否则无法保证顺序。
+     */
+    public interface StripePolicy {
+        /**
+         * 按分片键的哈希值选择分片。
+         */
+        StripePolicy HASH = (stripeKey, stripeCount) -> {
+            int h = stripeKey == null ? 0 : stripeKey.hashCode();
+            h ^= (h >>> 16);
+            return Math.floorMod(h, stripeCount);
+        };
+
+        /**
+         * 选择分片。
+         *
+         * @param stripeKey 分片键
+         * @param stripeCount 分片数量
+         * @return 分片下标，范围为[0, stripeCount)
+         */
+        int select(Object stripeKey, int stripeCount);
+    }
+}
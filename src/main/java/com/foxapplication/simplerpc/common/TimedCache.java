@@ -4,11 +4,16 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
-import java.util.*;
-import java.util.concurrent.*;
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 /**
  * 一个具有超时功能的缓存类，当缓存项过期时会触发特定的消费函数。
+ * 过期由共享的时间轮定时器驱动，每个缓存项拥有独立的到期时间，添加和移除的开销均为O(1)。
  *
  * @param <K> 缓存键的类型
  * @param <V> 缓存值的类型
@@ -23,12 +28,12 @@ public class TimedCache<K, V> {
     private final Map<K, CacheEntry<V>> cache = new ConcurrentHashMap<>();
 
     /**
-     * 用于执行定时清理的调度器。
+     * 用于驱动过期的时间轮定时器，所有实例共享同一个工作线程。
      */
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private final HashedWheelTimer timer = HashedWheelTimer.shared();
 
     /**
-     * 缓存项的超时时间，单位为毫秒.
+     * 缓存项的默认超时时间，单位为毫秒.
      */
     @Setter
     @Getter
@@ -58,19 +63,42 @@ public class TimedCache<K, V> {
     }
 
     /**
-     * 向缓存中添加或更新一个键值对。
+     * 向缓存中添加或更新一个键值对，使用默认超时时间。
      * 如果键已存在，则其对应的值将被更新，并且其过期时间将被重置。
      *
      * @param key 键，用于标识缓存中的项。
      * @param value 值，要存储的对象。
      */
     public void put(K key, V value) {
-        cache.put(key, new CacheEntry<>(value, System.currentTimeMillis()));
+        put(key, value, timeout);
+    }
+
+    /**
+     * 向缓存中添加或更新一个键值对，并指定该项的超时时间。
+     * 如果键已存在，则其对应的值将被更新，原有的过期任务将被取消。
+     *
+     * @param key 键，用于标识缓存中的项。
+     * @param value 值，要存储的对象。
+     * @param timeout 该项的超时时间，单位为毫秒。
+     */
+    public void put(K key, V value, long timeout) {
+        long now = System.currentTimeMillis();
+        CacheEntry<V> entry = new CacheEntry<>(value, now, now + timeout);
+        // 先创建过期任务再放入缓存，并发的claim取走该项时总能取消它，定时器不会持有已取走的值直到到期
+        entry.expireTask = timer.newTimeout(() -> expire(key, entry), timeout, TimeUnit.MILLISECONDS);
+        CacheEntry<V> old = cache.put(key, entry);
+        if (old != null) {
+            old.cancel();
+        }
+        if (entry.expireTask.isExpired()) {
+            // 放入缓存前已经到期，过期回调可能没有找到该项，再次检查以免该项永不过期
+            expire(key, entry);
+        }
     }
 
     /**
      * 根据键获取缓存中的值。
-     * 如果键不存在或对应的项已过期，则返回null，并从缓存中移除该键。
+     * 如果键不存在或对应的项已过期，则返回null，已过期的项会由定时器移除并触发过期回调。
      *
      * @param key 键，用于查找缓存中的项。
      * @return 缓存中键对应的值，如果键不存在或项已过期，则返回null。
@@ -78,81 +106,157 @@ public class TimedCache<K, V> {
     public V get(K key) {
         CacheEntry<V> entry = cache.get(key);
         if (entry == null || isExpired(entry)) {
-            cache.remove(key);
             return null;
         }
         return entry.value;
     }
 
     /**
-     * 从缓存中移除指定键的项。
+     * 从缓存中移除指定键的项，并取消其过期任务。
      *
      * @param key 键，要从缓存中移除的项的标识。
      */
     public void remove(K key) {
-        cache.remove(key);
+        CacheEntry<V> entry = cache.remove(key);
+        if (entry != null) {
+            entry.cancel();
+        }
+    }
+
+    /**
+     * 原子地取出并移除指定键的项，同时取消其过期任务。
+     * 与先get再remove不同，同一个项只会被取出一次，不会与过期回调重复投递。
+     *
+     * @param key 键，要取出的项的标识。
+     * @return 缓存中键对应的值，如果键不存在或已被取出，则返回null。
+     */
+    public V claim(K key) {
+        CacheEntry<V> entry = cache.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.cancel();
+        return entry.value;
+    }
+
+    /**
+     * 原子地取出并移除所有值满足条件的项，同时取消其过期任务，取出的项不会再触发过期回调。
+     *
+     * @param predicate 值的条件
+     * @param consumer 取出的项的处理逻辑
+     * @return 取出的项数
+     */
+    public int claimIf(Predicate<? super V> predicate, BiConsumer<K, V> consumer) {
+        int claimed = 0;
+        for (Map.Entry<K, CacheEntry<V>> entry : cache.entrySet()) {
+            CacheEntry<V> value = entry.getValue();
+            if (predicate.test(value.value) && cache.remove(entry.getKey(), value)) {
+                value.cancel();
+                consumer.accept(entry.getKey(), value.value);
+                claimed++;
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * 遍历缓存中的项，遍历期间添加或移除的项可能不会被遍历到。
+     *
+     * @param consumer 项的处理逻辑
+     */
+    public void forEach(BiConsumer<K, V> consumer) {
+        cache.forEach((key, entry) -> consumer.accept(key, entry.value));
+    }
+
+    /**
+     * 获取缓存项数量。
+     *
+     * @return 缓存项数量，包括已到期但尚未被定时器移除的项
+     */
+    public int size() {
+        return cache.size();
     }
 
     /**
      * 检查给定的缓存项是否已过期。
-     * 通过比较当前时间和缓存项的时间戳来判断。
+     * 通过比较当前时间和缓存项的到期时间来判断。
      *
-     * @param entry 缓存项，包含值和时间戳。
+     * @param entry 缓存项，包含值和到期时间。
      * @return 如果缓存项已过期，则返回true；否则返回false。
      */
     private boolean isExpired(CacheEntry<V> entry) {
-        return System.currentTimeMillis() - entry.timestamp > timeout;
+        return System.currentTimeMillis() > entry.deadline;
     }
 
     /**
-     * 启动定时清理任务，定期检查并移除过期的缓存项。
-     * 清理任务会定期运行，以确保及时清理过期的缓存项。
+     * 缓存项到期时由定时器调用，仅当该项仍在缓存中时移除并触发过期回调。
+     *
+     * @param key 缓存项的键
+     * @param entry 到期的缓存项
+     */
+    private void expire(K key, CacheEntry<V> entry) {
+        if (!cache.remove(key, entry)) {
+            return;
+        }
+        if (callback != null) {
+            callback.onExpire(key, entry.value);
+        }
+        if (onExpire != null) {
+            onExpire.accept(new AbstractMap.SimpleEntry<>(key, entry.value));
+        }
+    }
+
+    /**
+     * 启动定时清理任务。
+     * 过期任务在添加缓存项时即已在共享时间轮中调度，此方法仅为兼容保留。
      */
     public void startCleanupTask() {
-        scheduler.scheduleAtFixedRate(() -> {
-            long now = System.currentTimeMillis();
-            for (Map.Entry<K, CacheEntry<V>> entry : cache.entrySet()) {
-                if (now - entry.getValue().timestamp > timeout) {
-                    if (callback!=null){
-                        callback.onExpire(entry.getKey(),entry.getValue().value);
-                    }
-                    cache.remove(entry.getKey());
-                    if (onExpire!=null) {
-                        onExpire.accept(new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue().value));
-                    }
-                }
-            }
-        }, timeout, timeout, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * 关闭缓存，包括取消所有的清理任务。
-     * 调用此方法可以安全地关闭缓存，确保没有后台任务在运行。
+     * 关闭缓存，取消所有缓存项的过期任务。
+     * 共享的时间轮定时器不会被关闭。
      */
     public void shutdown() {
-        scheduler.shutdown();
+        for (CacheEntry<V> entry : cache.values()) {
+            entry.cancel();
+        }
     }
 
     /**
      * 缓存项的内部类。
-     * 用于存储缓存项的值和创建时间（时间戳）。
+     * 用于存储缓存项的值、创建时间（时间戳）、到期时间和过期任务。
      *
      * @param <V> 缓存项的值的类型。
      */
     public static class CacheEntry<V> {
         private final V value;
         private final long timestamp;
+        private final long deadline;
+        private volatile HashedWheelTimer.Timeout expireTask;
 
         /**
          * CacheEntry的构造函数。
-         * 初始化缓存项的值和时间戳。
+         * 初始化缓存项的值、时间戳和到期时间。
          *
          * @param value 缓存项的值。
          * @param timestamp 缓存项的创建时间。
+         * @param deadline 缓存项的到期时间。
          */
-        CacheEntry(V value, long timestamp) {
+        CacheEntry(V value, long timestamp, long deadline) {
             this.value = value;
             this.timestamp = timestamp;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 取消该项的过期任务。
+         */
+        void cancel() {
+            HashedWheelTimer.Timeout task = expireTask;
+            if (task != null) {
+                task.cancel();
+            }
         }
     }
     public interface CacheCallback<T,V>{
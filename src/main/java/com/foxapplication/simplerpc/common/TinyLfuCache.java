@@ -0,0 +1,362 @@
+package com.foxapplication.simplerpc.common;
+
+import lombok.Getter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * 按总权重限制容量、带存活时间的缓存，使用W-TinyLFU策略淘汰。
+ * 新的项先进入约占容量1%的LRU窗口，被挤出窗口后与主区中最久未访问的项比较近期的访问频率，频率更高者留下；
+ * 访问频率由4位计数的Count-Min草图估算，计数定期减半，只反映近期的热度。
+ * 一次性访问的大量请求只会在窗口中短暂停留，不会冲掉真正的热点数据。
+ * 过期的项在访问或被挤出时移除，不占用定时器。
+ *
+ * @param <K> 缓存键的类型
+ * @param <V> 缓存值的类型
+ */
+public class TinyLfuCache<K, V> {
+
+    /**
+     * 总权重上限。
+     */
+    @Getter
+    private final long maxWeight;
+
+    /**
+     * 缓存项的存活时间，单位为毫秒，不大于0表示不过期。
+     */
+    @Getter
+    private final long ttl;
+
+    private final ToIntFunction<V> weigher;
+    private final long windowMax;
+    private final long mainMax;
+    private final LinkedHashMap<K, Node<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Node<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long windowWeight;
+    private long mainWeight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    //------------------------------类参数定义完-----------------------------------
+
+    /**
+     * 构造每项权重为1的缓存
+     *
+     * @param maxWeight 最大项数
+     * @param ttl 缓存项的存活时间，单位为毫秒，不大于0表示不过期
+     */
+    public TinyLfuCache(long maxWeight, long ttl) {
+        this(maxWeight, ttl, null);
+    }
+
+    /**
+     * 构造缓存
+     *
+     * @param maxWeight 总权重上限
+     * @param ttl 缓存项的存活时间，单位为毫秒，不大于0表示不过期
+     * @param weigher 计算缓存项权重的函数，为null时每项权重为1
+     */
+    public TinyLfuCache(long maxWeight, long ttl, ToIntFunction<V> weigher) {
+        this.maxWeight = Math.max(1, maxWeight);
+        this.ttl = ttl;
+        this.weigher = weigher;
+        this.windowMax = Math.max(1, this.maxWeight / 100);
+        this.mainMax = Math.max(1, this.maxWeight - windowMax);
+        this.sketch = new FrequencySketch(this.maxWeight);
+    }
+
+    /**
+     * 获取缓存的值
+     *
+     * @param key 键
+     * @return 缓存的值，不存在或已过期时返回null
+     */
+    public synchronized V get(K key) {
+        sketch.increment(key.hashCode());
+        Node<V> node = window.get(key);
+        if (node == null) {
+            node = main.get(key);
+        }
+        if (node == null) {
+            missCount++;
+            return null;
+        }
+        if (node.isExpired(System.currentTimeMillis())) {
+            remove(key);
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return node.value;
+    }
+
+    /**
+     * 添加或替换缓存的值，权重超过上限的值不会被缓存
+     *
+     * @param key 键
+     * @param value 值
+     */
+    public synchronized void put(K key, V value) {
+        int weight = weigher == null ? 1 : Math.max(1, weigher.applyAsInt(value));
+        remove(key);
+        if (weight > maxWeight) {
+            return;
+        }
+        long expireAt = ttl > 0 ? System.currentTimeMillis() + ttl : Long.MAX_VALUE;
+        window.put(key, new Node<>(value, weight, expireAt));
+        windowWeight += weight;
+        evict();
+    }
+
+    /**
+     * 使指定键的缓存失效
+     *
+     * @param key 键
+     */
+    public synchronized void invalidate(K key) {
+        remove(key);
+    }
+
+    /**
+     * 使满足条件的缓存失效
+     *
+     * @param predicate 键的条件
+     * @return 失效的项数
+     */
+    public synchronized int invalidateIf(Predicate<? super K> predicate) {
+        return removeIf(window, predicate, true) + removeIf(main, predicate, false);
+    }
+
+    /**
+     * 使全部缓存失效
+     */
+    public synchronized void invalidateAll() {
+        window.clear();
+        main.clear();
+        windowWeight = 0;
+        mainWeight = 0;
+    }
+
+    /**
+     * 获取缓存的项数
+     *
+     * @return 项数，包括尚未移除的过期项
+     */
+    public synchronized int size() {
+        return window.size() + main.size();
+    }
+
+    /**
+     * 获取缓存的总权重
+     *
+     * @return 总权重
+     */
+    public synchronized long getWeightedSize() {
+        return windowWeight + mainWeight;
+    }
+
+    /**
+     * 获取命中次数
+     *
+     * @return 命中次数
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * 获取未命中次数
+     *
+     * @return 未命中次数，包括命中过期项的次数
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * 获取因容量淘汰或拒绝进入主区的项数
+     *
+     * @return 淘汰的项数
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * 获取命中率
+     *
+     * @return 命中次数占查询次数的比例，尚无查询时为0
+     */
+    public synchronized double getHitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    //------------------------------类工具方法完-----------------------------------
+
+    private void remove(K key) {
+        Node<V> node = window.remove(key);
+        if (node != null) {
+            windowWeight -= node.weight;
+            return;
+        }
+        node = main.remove(key);
+        if (node != null) {
+            mainWeight -= node.weight;
+        }
+    }
+
+    private int removeIf(LinkedHashMap<K, Node<V>> segment, Predicate<? super K> predicate, boolean isWindow) {
+        int removed = 0;
+        Iterator<Map.Entry<K, Node<V>>> iterator = segment.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, Node<V>> entry = iterator.next();
+            if (predicate.test(entry.getKey())) {
+                iterator.remove();
+                if (isWindow) {
+                    windowWeight -= entry.getValue().weight;
+                } else {
+                    mainWeight -= entry.getValue().weight;
+                }
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 将超出窗口容量的项逐个移入主区
+     */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        while (windowWeight > windowMax) {
+            Iterator<Map.Entry<K, Node<V>>> iterator = window.entrySet().iterator();
+            Map.Entry<K, Node<V>> candidate = iterator.next();
+            iterator.remove();
+            windowWeight -= candidate.getValue().weight;
+            if (!candidate.getValue().isExpired(now)) {
+                admit(candidate.getKey(), candidate.getValue(), now);
+            }
+        }
+    }
+
+    /**
+     * 主区空间不足时，候选项的访问频率高于主区中最久未访问的项才能替换它，否则候选项被丢弃
+     */
+    private void admit(K key, Node<V> candidate, long now) {
+        int candidateFrequency = sketch.frequency(key.hashCode());
+        while (mainWeight + candidate.weight > mainMax && !main.isEmpty()) {
+            Iterator<Map.Entry<K, Node<V>>> iterator = main.entrySet().iterator();
+            Map.Entry<K, Node<V>> victim = iterator.next();
+            if (!victim.getValue().isExpired(now) && candidateFrequency <= sketch.frequency(victim.getKey().hashCode())) {
+                evictionCount++;
+                return;
+            }
+            iterator.remove();
+            mainWeight -= victim.getValue().weight;
+            evictionCount++;
+        }
+        if (mainWeight + candidate.weight > mainMax) {
+            evictionCount++;
+            return;
+        }
+        main.put(key, candidate);
+        mainWeight += candidate.weight;
+    }
+
+    /**
+     * 缓存项。
+     *
+     * @param <V> 缓存值的类型
+     */
+    private static final class Node<V> {
+        private final V value;
+        private final int weight;
+        private final long expireAt;
+
+        Node(V value, int weight, long expireAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expireAt = expireAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expireAt;
+        }
+    }
+
+    /**
+     * 4位计数的Count-Min草图，每个long容纳16个计数器，每个键在4个位置计数，取其中最小值作为频率估计。
+     * 累计计数达到容量的10倍后所有计数减半，使旧的热度逐渐衰减。
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int size;
+
+        FrequencySketch(long capacity) {
+            int length = 1;
+            long target = Math.min(Math.max(capacity, 16), 1 << 22);
+            while (length < target) {
+                length <<= 1;
+            }
+            this.table = new long[length];
+            this.mask = length - 1;
+            this.sampleSize = 10 * length;
+        }
+
+        int frequency(int hashCode) {
+            int hash = spread(hashCode);
+            int start = (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int shift = (start + i) << 2;
+                frequency = Math.min(frequency, (int) ((table[indexOf(hash, i)] >>> shift) & 0xF));
+            }
+            return frequency;
+        }
+
+        void increment(int hashCode) {
+            int hash = spread(hashCode);
+            int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int shift = (start + i) << 2;
+                if (((table[index] >>> shift) & 0xF) != 0xF) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++size >= sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & RESET_MASK;
+                }
+                size >>>= 1;
+            }
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & mask;
+        }
+
+        private static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+    }
+}
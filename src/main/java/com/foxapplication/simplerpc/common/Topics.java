@@ -0,0 +1,50 @@
+package com.foxapplication.simplerpc.common;
+
+import java.util.Arrays;
+
+/**
+ * 主题订阅信封工具。
+ * 订阅与取消订阅是key为{@link #SUBSCRIBE}或{@link #UNSUBSCRIBE}的APIResponse，request为主题名称数组，
+ * 服务端订阅后发布到主题的消息按其自身的key在客户端路由。
+ */
+public final class Topics {
+
+    /**
+     * 订阅主题的保留路由键。
+     */
+    public static final String SUBSCRIBE = "$subscribe";
+
+    /**
+     * 取消订阅的保留路由键。
+     */
+    public static final String UNSUBSCRIBE = "$unsubscribe";
+
+    private Topics() {
+    }
+
+    /**
+     * 构造订阅信封
+     *
+     * @param topics 主题名称
+     * @return 订阅信封
+     */
+    public static APIResponse subscribe(String... topics) {
+        APIResponse data = APIResponse.create();
+        data.setKey(SUBSCRIBE);
+        data.setRequest(Arrays.asList(topics));
+        return data;
+    }
+
+    /**
+     * 构造取消订阅信封
+     *
+     * @param topics 主题名称
+     * @return 取消订阅信封
+     */
+    public static APIResponse unsubscribe(String... topics) {
+        APIResponse data = APIResponse.create();
+        data.setKey(UNSUBSCRIBE);
+        data.setRequest(Arrays.asList(topics));
+        return data;
+    }
+}
@@ -0,0 +1,94 @@
+package com.foxapplication.simplerpc.common;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.hutool.core.text.StrUtil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 携带类型化消息体的APIResponse。
+ * 编码时request字段使用各编解码器按类型缓存的ObjectWriter写出，无需为每次调用按运行时类型查找序列化器。
+ */
+@Slf4j
+public class TypedAPIResponse extends APIResponse {
+
+    /**
+     * 消息体的类型，不参与序列化。
+     */
+    @Getter(onMethod_ = @JsonIgnore)
+    private final JavaType responseType;
+
+    /**
+     * 构造一个携带类型化消息体的APIResponse
+     *
+     * @param request 类型化的消息体
+     * @param responseType 消息体的类型
+     */
+    public TypedAPIResponse(Object request, JavaType responseType) {
+        this.responseType = responseType;
+        setRequest(request);
+    }
+
+    /**
+     * 复制当前对象，不复制UUID与数字关联ID，保留消息体的类型
+     *
+     * @return 新的TypedAPIResponse对象
+     */
+    @Override
+    public APIResponse copyUncorrelated() {
+        return copyTo(new TypedAPIResponse(getRequest(), responseType));
+    }
+
+    /**
+     * 将APIResponse对象转换为JSON字符串
+     *
+     * @return 表示APIResponse的JSON字符串
+     */
+    @Override
+    public String toString() {
+        try {
+            return EnvelopeWriter.writeAsString(getSerializer(), this, Codecs.JSON.writerFor(responseType));
+        } catch (IOException e) {
+            log.error("APIResponse toString error", e);
+            return StrUtil.EMPTY_JSON;
+        }
+    }
+
+    /**
+     * 将当前对象转换为UTF-8编码的JSON字节数组
+     *
+     * @return 字节数组，表示对象的JSON编码
+     */
+    @Override
+    public byte[] toHex() {
+        try {
+            return Codecs.JSON.encode(this);
+        } catch (IOException e) {
+            log.error("APIResponse toHex error", e);
+            return StrUtil.EMPTY_JSON.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * 将当前对象转换为BSON二进制字节数组
+     *
+     * @return 字节数组表示的当前对象的BSON编码
+     * @throws JsonProcessingException 如果对象无法被序列化为BSON格式，则抛出此异常
+     */
+    @Override
+    public byte[] toBin() throws JsonProcessingException {
+        try {
+            return Codecs.BSON.encode(this);
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            throw JsonMappingException.fromUnexpectedIOE(e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.foxapplication.simplerpc.common;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程工具类。
+ * 通过反射访问JDK 21的虚拟线程API，使项目在较低版本的JDK上仍可编译和运行。
+ */
+@Slf4j
+public class VirtualThreads {
+
+    /**
+     * 当前运行环境是否支持虚拟线程。
+     */
+    private static final boolean SUPPORTED;
+
+    static {
+        boolean supported;
+        try {
+            Thread.class.getMethod("ofVirtual");
+            supported = true;
+        } catch (NoSuchMethodException e) {
+            supported = false;
+        }
+        SUPPORTED = supported;
+    }
+
+    /**
+     * 判断当前运行环境是否支持虚拟线程。
+     *
+     * @return 支持时返回true
+     */
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    /**
+     * 创建一个为每个任务启动一个虚拟线程的执行器。
+     *
+     * @param namePrefix 虚拟线程名称前缀
+     * @return 虚拟线程执行器，当前运行环境不支持虚拟线程时返回null
+     */
+    public static ExecutorService newPerTaskExecutor(String namePrefix) {
+        if (!SUPPORTED) {
+            log.warn("Virtual threads require JDK 21 or later, current version: {}", System.getProperty("java.version"));
+            return null;
+        }
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) method.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            log.error("Failed to create virtual thread executor", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.foxapplication.simplerpc.server;
+
+import com.foxapplication.simplerpc.common.APIResponse;
+import org.smartboot.http.server.WebSocketRequest;
+import org.smartboot.http.server.WebSocketResponse;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 异步的RPC服务器接口，处理器立即返回，结果在返回的CompletionStage完成时写出。
+ * 等待IO的处理器不会占用分发线程，少量线程即可同时处理大量调用。
+ */
+public interface AsyncRPCServer {
+
+    /**
+     * 处理WebSocket请求的方法。
+     *
+     * @param request  WebSocket请求对象
+     * @param response WebSocket响应对象
+     * @param data     API响应数据
+     * @return 响应的CompletionStage，以null完成时不发送响应
+     */
+    CompletionStage<APIResponse> handle(WebSocketRequest request, WebSocketResponse response, APIResponse data);
+}
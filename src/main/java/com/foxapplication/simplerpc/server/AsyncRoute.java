@@ -0,0 +1,47 @@
+package com.foxapplication.simplerpc.server;
+
+import com.foxapplication.simplerpc.common.APIResponse;
+import org.smartboot.http.server.WebSocketRequest;
+import org.smartboot.http.server.WebSocketResponse;
+
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 异步路由，将AsyncRPCServer适配为RPCServer。
+ * 路由器识别该类型后直接取得CompletionStage，在其完成时交出结果，不会阻塞分发线程；
+ * 只有被当作普通RPCServer直接调用时才会等待结果。
+ */
+class AsyncRoute implements RPCServer {
+
+    /**
+     * 异步的处理器。
+     */
+    private final AsyncRPCServer server;
+
+    /**
+     * 构造异步路由
+     *
+     * @param server 异步的处理器
+     */
+    AsyncRoute(AsyncRPCServer server) {
+        this.server = server;
+    }
+
+    /**
+     * 调用异步的处理器
+     *
+     * @param request  WebSocket请求对象
+     * @param response WebSocket响应对象
+     * @param data     API响应数据
+     * @return 响应的CompletionStage
+     */
+    CompletionStage<APIResponse> handleAsync(WebSocketRequest request, WebSocketResponse response, APIResponse data) {
+        return server.handle(request, response, data);
+    }
+
+    @Override
+    public Optional<APIResponse> handle(WebSocketRequest request, WebSocketResponse response, APIResponse data) {
+        return Optional.ofNullable(server.handle(request, response, data).toCompletableFuture().join());
+    }
+}
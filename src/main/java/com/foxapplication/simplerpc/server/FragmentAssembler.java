@@ -0,0 +1,229 @@
+package com.foxapplication.simplerpc.server;
+
+import com.foxapplication.simplerpc.common.APIResponse;
+import com.foxapplication.simplerpc.common.BufferPool;
+import com.foxapplication.simplerpc.common.Codec;
+import com.foxapplication.simplerpc.common.MessageTooLargeException;
+import com.foxapplication.simplerpc.common.PerMessageDeflate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+/**
+ * 一个连接上分片消息的重组状态。
+ * 缓冲模式下保存各分片的负载，消息结束时一次拼接为恰好大小的数组；
+ * 流式模式下每个分片（压缩时先逐片解压）立即交给编解码器的增量解码器，分片负载随即可以释放。
+ * 同一连接的帧按顺序到达，不需要同步。
+ */
+class FragmentAssembler {
+
+    /**
+     * 当前消息的帧类型，为-1表示没有正在重组的消息。
+     */
+    private int opcode = -1;
+
+    /**
+     * 消息允许的最大字节数。
+     */
+    private int maxSize;
+
+    /**
+     * 已收到的负载字节数，流式解压时为解压后的字节数。
+     */
+    private long size;
+
+    /**
+     * 首帧是否设置了RSV1。
+     */
+    private boolean compressed;
+
+    /**
+     * 缓冲模式下已收到的分片。
+     */
+    private List<byte[]> fragments;
+
+    /**
+     * 流式模式下的增量解码器。
+     */
+    private Codec.Decoder decoder;
+
+    /**
+     * 流式模式下压缩消息的解压过程。
+     */
+    private PerMessageDeflate.Inflation inflation;
+
+    /**
+     * 当前消息是否已放弃，放弃后仍需接收到结束帧为止。
+     */
+    private boolean discarded;
+
+    /**
+     * 是否有正在重组的消息
+     *
+     * @return 收到首帧且尚未收到结束帧时返回true
+     */
+    boolean isActive() {
+        return opcode >= 0;
+    }
+
+    /**
+     * 获取正在重组的消息的帧类型
+     *
+     * @return 首帧的帧类型
+     */
+    int getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * 是否以流式模式重组
+     *
+     * @return 使用增量解码器时返回true
+     */
+    boolean isStreaming() {
+        return decoder != null;
+    }
+
+    /**
+     * 当前消息是否已放弃
+     *
+     * @return 调用过{@link #discard()}且尚未重置时返回true
+     */
+    boolean isDiscarded() {
+        return discarded;
+    }
+
+    /**
+     * 开始重组一条消息
+     *
+     * @param opcode 首帧的帧类型
+     * @param maxSize 消息允许的最大字节数
+     * @param compressed 首帧是否设置了RSV1
+     * @param deflate 连接协商的压缩状态，compressed为true时不能为null
+     * @param decoder 增量解码器，为null时使用缓冲模式
+     */
+    void begin(int opcode, int maxSize, boolean compressed, PerMessageDeflate deflate, Codec.Decoder decoder) {
+        this.opcode = opcode;
+        this.maxSize = maxSize;
+        this.compressed = compressed;
+        this.size = 0;
+        this.decoder = decoder;
+        if (decoder == null) {
+            fragments = new ArrayList<>();
+        } else if (compressed) {
+            inflation = deflate.beginInflate();
+        }
+    }
+
+    /**
+     * 追加一个分片
+     *
+     * @param payload 分片负载
+     * @throws MessageTooLargeException 消息超过最大字节数时抛出
+     * @throws DataFormatException 压缩数据格式错误时抛出
+     * @throws IOException 增量解码失败时抛出
+     */
+    void append(byte[] payload) throws IOException, DataFormatException {
+        if (discarded) {
+            return;
+        }
+        if (decoder == null) {
+            grow(payload.length);
+            fragments.add(payload);
+        } else if (inflation == null) {
+            grow(payload.length);
+            decoder.feed(payload, 0, payload.length);
+        } else {
+            try (BufferPool.Buffer out = BufferPool.acquire()) {
+                inflation.update(payload, (int) (maxSize - size), out);
+                grow(out.size());
+                decoder.feed(out.array(), 0, out.size());
+            }
+        }
+    }
+
+    /**
+     * 完成缓冲模式的重组
+     *
+     * @param deflate 连接协商的压缩状态，消息未压缩时可以为null
+     * @return 完整的消息负载，压缩消息已解压
+     * @throws MessageTooLargeException 解压后超过最大字节数时抛出
+     * @throws DataFormatException 压缩数据格式错误时抛出
+     */
+    byte[] finishBuffered(PerMessageDeflate deflate) throws MessageTooLargeException, DataFormatException {
+        try {
+            byte[] payload = new byte[(int) size];
+            int position = 0;
+            for (byte[] fragment : fragments) {
+                System.arraycopy(fragment, 0, payload, position, fragment.length);
+                position += fragment.length;
+            }
+            fragments = null;
+            if (!compressed) {
+                return payload;
+            }
+            return deflate.inflate(payload, maxSize);
+        } finally {
+            reset();
+        }
+    }
+
+    /**
+     * 完成流式模式的重组
+     *
+     * @return 解码后的信封
+     * @throws MessageTooLargeException 解压后超过最大字节数时抛出
+     * @throws DataFormatException 压缩数据格式错误时抛出
+     * @throws IOException 增量解码失败时抛出
+     */
+    APIResponse finishStreaming() throws IOException, DataFormatException {
+        try {
+            if (inflation != null) {
+                try (BufferPool.Buffer out = BufferPool.acquire()) {
+                    PerMessageDeflate.Inflation current = inflation;
+                    inflation = null;
+                    current.finish((int) (maxSize - size), out);
+                    grow(out.size());
+                    decoder.feed(out.array(), 0, out.size());
+                }
+            }
+            return decoder.finish();
+        } finally {
+            reset();
+        }
+    }
+
+    /**
+     * 放弃当前消息的内容，之后的分片直接丢弃，直到结束帧到达后重置
+     */
+    void discard() {
+        int current = opcode;
+        reset();
+        opcode = current;
+        discarded = true;
+    }
+
+    /**
+     * 放弃正在重组的消息并释放资源
+     */
+    void reset() {
+        opcode = -1;
+        discarded = false;
+        size = 0;
+        fragments = null;
+        decoder = null;
+        if (inflation != null) {
+            inflation.close();
+            inflation = null;
+        }
+    }
+
+    private void grow(int length) throws MessageTooLargeException {
+        size += length;
+        if (size > maxSize) {
+            throw new MessageTooLargeException(maxSize);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.foxapplication.simplerpc.server;
+
+import lombok.extern.slf4j.Slf4j;
+import org.smartboot.http.common.BufferOutputStream;
+import org.smartboot.socket.transport.AioSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 一个连接的发送队列。
+ * 帧以带完成回调的方式交给底层连接，同一时刻只有一批帧在写出，上一批全部写入套接字后由回调安排写出排队的下一批；
+ * 发送线程不会因为慢速读取的客户端阻塞，队列为空时直接从调用方的缓冲区写出，不复制。
+ * 已交出但尚未写入套接字的字节数达到高水位后连接变为不可写，读取在IO线程上暂停，新的调用被拒绝；
+ * 降到低水位以下后恢复。
+ */
+@Slf4j
+class OutboundQueue {
+
+    /**
+     * 一次写出的排队字节数上限，超过时剩余的帧等待下一次完成回调，单个帧不受限制。
+     */
+    private static final int WRITE_BATCH_BYTES = 32 * 1024;
+
+    private final BufferOutputStream out;
+
+    /**
+     * 连接的底层会话，用于暂停与恢复读取，为null时不暂停读取。
+     */
+    private final AioSession aioSession;
+
+    /**
+     * 完成回调之后的写出与恢复读取所使用的执行器，由{@link RPCRouter}持有。
+     */
+    private final Executor writer;
+
+    private final long highWatermark;
+    private final long lowWatermark;
+
+    private final ArrayDeque<byte[]> frames = new ArrayDeque<>();
+
+    /**
+     * 已交出但尚未写入套接字的字节数，包括正在写出的一批与排队的帧。
+     */
+    private long queuedBytes;
+
+    /**
+     * 正在写出的一批的字节数。
+     */
+    private long writingBytes;
+    private boolean writing;
+    private boolean writable = true;
+    private boolean readPaused;
+    private boolean closed;
+
+    /**
+     * 构造发送队列
+     *
+     * @param out 连接的输出流
+     * @param aioSession 连接的底层会话，可以为null
+     * @param highWatermark 排队字节数达到该值时连接变为不可写
+     * @param lowWatermark 排队字节数降到该值以下时连接恢复可写
+     * @param writer 完成回调之后的写出与恢复读取所使用的执行器
+     */
+    OutboundQueue(BufferOutputStream out, AioSession aioSession, long highWatermark, long lowWatermark, Executor writer) {
+        this.out = out;
+        this.aioSession = aioSession;
+        this.writer = writer;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = Math.min(lowWatermark, highWatermark);
+    }
+
+    /**
+     * 写出一个完整的帧，有一批正在写出时复制后排队
+     *
+     * @param frame 帧数据
+     * @param offset 起始位置
+     * @param length 字节数
+     * @throws IOException 连接已关闭或写出失败时抛出
+     */
+    void write(byte[] frame, int offset, int length) throws IOException {
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Connection closed");
+            }
+            queuedBytes += length;
+            if (writable && queuedBytes >= highWatermark) {
+                writable = false;
+            }
+            if (writing) {
+                byte[] copy = new byte[length];
+                System.arraycopy(frame, offset, copy, 0, length);
+                frames.add(copy);
+                return;
+            }
+            writing = true;
+            writingBytes = length;
+        }
+        try {
+            // 底层写缓冲区同步复制数据，返回后调用方的缓冲区即可复用
+            out.write(frame, offset, length, this::completed);
+        } catch (IOException | RuntimeException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    /**
+     * 上一批已全部写入套接字，在IO线程上回调
+     */
+    private void completed(BufferOutputStream stream) {
+        byte[][] batch;
+        boolean resume = false;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            queuedBytes -= writingBytes;
+            writingBytes = 0;
+            if (!writable && queuedBytes < lowWatermark) {
+                writable = true;
+                resume = readPaused;
+                readPaused = false;
+            }
+            batch = takeBatch();
+            if (batch == null) {
+                writing = false;
+            }
+        }
+        if (resume) {
+            // 回调在底层写缓冲区的锁内执行，恢复读取会在当前线程处理消息，交给其他线程执行
+            execute(aioSession::signalRead);
+        }
+        if (batch != null) {
+            // 回调所在的IO线程负责排空写缓冲区，在此写出时缓冲区满会永久等待，交给其他线程写出；
+            // 回调返回后底层会重新刷新，其他线程稍后写入的数据不会滞留
+            execute(() -> writeBatch(stream, batch));
+        }
+    }
+
+    /**
+     * 在写出执行器中执行任务，执行器已关闭时放弃连接
+     */
+    private void execute(Runnable task) {
+        try {
+            writer.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.debug("Outbound executor is shut down.", e);
+            abort();
+        }
+    }
+
+    /**
+     * 写出一批帧，最后一帧带完成回调
+     */
+    private void writeBatch(BufferOutputStream stream, byte[][] batch) {
+        try {
+            for (int i = 0; i < batch.length - 1; i++) {
+                stream.write(batch[i], 0, batch[i].length);
+            }
+            byte[] last = batch[batch.length - 1];
+            stream.write(last, 0, last.length, this::completed);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Outbound write failed.", e);
+            abort();
+        }
+    }
+
+    /**
+     * 取出下一批排队的帧，总字节数不超过{@link #WRITE_BATCH_BYTES}，至少一帧
+     *
+     * @return 下一批帧，队列为空时返回null
+     */
+    private byte[][] takeBatch() {
+        if (frames.isEmpty()) {
+            return null;
+        }
+        int count = 0;
+        long bytes = 0;
+        for (byte[] frame : frames) {
+            if (count > 0 && bytes + frame.length > WRITE_BATCH_BYTES) {
+                break;
+            }
+            bytes += frame.length;
+            count++;
+        }
+        byte[][] batch = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            batch[i] = frames.poll();
+        }
+        writingBytes = bytes;
+        return batch;
+    }
+
+    /**
+     * 连接不可写时暂停读取，只能在处理该连接消息的IO线程上调用
+     *
+     * @return 暂停了读取时返回true
+     */
+    synchronized boolean pauseReadIfUnwritable() {
+        if (writable || readPaused || closed || aioSession == null) {
+            return false;
+        }
+        readPaused = true;
+        aioSession.awaitRead();
+        return true;
+    }
+
+    /**
+     * 是否可以继续接受调用
+     *
+     * @return 排队字节数未达到高水位，或达到后已降到低水位以下时返回true
+     */
+    synchronized boolean isWritable() {
+        return writable;
+    }
+
+    /**
+     * 获取已交出但尚未写入套接字的字节数
+     *
+     * @return 排队字节数
+     */
+    synchronized long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * 写出失败或连接关闭时丢弃排队的帧，之后的写出直接失败
+     */
+    synchronized void abort() {
+        closed = true;
+        frames.clear();
+        queuedBytes = 0;
+        writingBytes = 0;
+        writing = false;
+        writable = true;
+        readPaused = false;
+    }
+}
@@ -1,21 +1,67 @@
 package com.foxapplication.simplerpc.server;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.foxapplication.simplerpc.common.AdaptiveLimiter;
 import com.foxapplication.simplerpc.common.APIResponse;
+import com.foxapplication.simplerpc.common.Batch;
+import com.foxapplication.simplerpc.common.Cancellation;
+import com.foxapplication.simplerpc.common.BufferPool;
+import com.foxapplication.simplerpc.common.Codec;
+import com.foxapplication.simplerpc.common.Codecs;
+import com.foxapplication.simplerpc.common.ExecutionMode;
+import com.foxapplication.simplerpc.common.HashedWheelTimer;
+import com.foxapplication.simplerpc.common.Invalidation;
+import com.foxapplication.simplerpc.common.LazyAPIResponse;
+import com.foxapplication.simplerpc.common.LongPendingTable;
+import com.foxapplication.simplerpc.common.PerMessageDeflate;
 import com.foxapplication.simplerpc.common.RPCRouterNode;
+import com.foxapplication.simplerpc.common.RequestKey;
+import com.foxapplication.simplerpc.common.RouteOptions;
+import com.foxapplication.simplerpc.common.RouteTable;
+import com.foxapplication.simplerpc.common.SingleFlight;
+import com.foxapplication.simplerpc.common.StripedExecutor;
 import com.foxapplication.simplerpc.common.TimedCache;
+import com.foxapplication.simplerpc.common.TinyLfuCache;
+import com.foxapplication.simplerpc.common.Topics;
+import com.foxapplication.simplerpc.common.VirtualThreads;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.dromara.hutool.core.text.StrUtil;
-import org.dromara.hutool.core.text.split.SplitUtil;
-import org.dromara.hutool.core.thread.ExecutorBuilder;
+import org.dromara.hutool.core.thread.ThreadUtil;
+import org.smartboot.http.common.BufferOutputStream;
 import org.smartboot.http.server.WebSocketRequest;
+import org.smartboot.http.common.utils.WebSocketUtil;
 import org.smartboot.http.server.WebSocketResponse;
+import org.smartboot.http.server.impl.WebSocketRequestImpl;
+import org.smartboot.http.server.impl.WebSocketResponseImpl;
+import org.smartboot.socket.transport.AioSession;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 @Slf4j
 public class RPCRouter {
@@ -23,28 +69,143 @@ public class RPCRouter {
      *  缓存请求，超时会传递错误
      */
     private final TimedCache<String,RPCServer> taskCache = new TimedCache<>();
+    /**
+     *  数字关联模式下的挂起回调表，超时会传递错误
+     */
+    private final LongPendingTable<RPCServer> pendingTable = new LongPendingTable<>();
+    /**
+     *  是否使用数字关联模式，开启后发送并回调时为请求分配递增的数字ID代替UUID
+     */
+    @Setter
+    @Getter
+    private boolean numericCorrelation = false;
     /**
      *  SimpleRPC实例
      */
     private final SimpleRPC simpleRPC;
     /**
-     *  任务执行器
+     *  任务执行器，按连接分片，同一连接的请求按顺序执行，不同连接的请求并行执行
+     */
+    private StripedExecutor executor;
+    /**
+     *  执行器分片数量，默认为CPU核心数
+     */
+    @Setter
+    @Getter
+    private int stripeCount = Runtime.getRuntime().availableProcessors();
+    /**
+     *  每个分片的任务队列容量
+     */
+    @Setter
+    @Getter
+    private int stripeQueueCapacity = 1024;
+    /**
+     *  分片选择策略
+     */
+    @Setter
+    @Getter
+    private StripedExecutor.StripePolicy stripePolicy = StripedExecutor.StripePolicy.HASH;
+    /**
+     *  分片队列已满时的拒绝策略，为null时直接拒绝并向客户端返回503
+     */
+    @Setter
+    @Getter
+    private RejectedExecutionHandler rejectedHandler = null;
+    /**
+     *  处理器执行模式，需在启动前设置
+     */
+    @Setter
+    @Getter
+    private ExecutionMode executionMode = ExecutionMode.DEFAULT;
+    /**
+     *  虚拟线程执行器，仅在虚拟线程模式下创建
+     */
+    private ExecutorService virtualExecutor;
+    /**
+     *  发送队列的写出执行器，慢速客户端的写出可能阻塞，每个连接同一时刻最多占用一个线程
+     */
+    private ExecutorService outboundExecutor;
+    /**
+     *  批量响应的合并执行器，触发各连接合并窗口的到期
      */
-    private final ExecutorService executorService = ExecutorBuilder.of()
-            .setCorePoolSize(1)
-            .setMaxPoolSize(1)
-            .setKeepAliveTime(0)
-            .build();
+    private ScheduledExecutorService replyScheduler;
+    /**
+     *  以批量信封到达的调用，每批最多合并的响应数量，小于2时每个响应单独发送
+     */
+    @Setter
+    @Getter
+    private int replyBatchSize = 64;
+    /**
+     *  批量响应的合并窗口，单位为微秒，第一条响应完成后最多等待该时长，不大于0时每个响应单独发送
+     */
+    @Setter
+    @Getter
+    private long replyLingerMicros = 200;
+    /**
+     *  每个连接同时进行的调用数量上限，超过时直接返回429，不大于0表示不限制
+     */
+    @Setter
+    @Getter
+    private int maxInFlightPerSession = 1024;
+    /**
+     *  发送队列的高水位字节数，连接排队的字节数达到该值后暂停读取并以503拒绝新的调用
+     */
+    @Setter
+    @Getter
+    private long outboundHighWatermark = 4 * 1024 * 1024;
+    /**
+     *  发送队列的低水位字节数，排队的字节数降到该值以下后恢复读取与接受调用
+     */
+    @Setter
+    @Getter
+    private long outboundLowWatermark = 1024 * 1024;
+    /**
+     *  全部路由共享的自适应并发限制器，达到限制时直接返回503，为null时不限制。
+     *  调用耗时从分发开始计算，包括在执行器中排队的时间，排队变长时限制随之收缩
+     */
+    @Setter
+    @Getter
+    private AdaptiveLimiter concurrencyLimiter = null;
+    /**
+     *  排队期间超过调用方截止时间而未执行的调用次数
+     */
+    private final LongAdder expiredCount = new LongAdder();
+    /**
+     *  被调用方取消的调用次数
+     */
+    private final LongAdder cancelledCount = new LongAdder();
     /**
      *  超时时间
      */
     @Setter
     @Getter
     private long timeout = 60 * 2 * 1000;
+    /**
+     *  路由表
+     */
+    @Getter
+    private final RouteTable<RPCServer> routeTable = new RouteTable<>();
     /**
      *  根路由节点
      */
-    private final RPCRouterNode<RPCServer> root = new RPCRouterNode<>();
+    private final RPCRouterNode<RPCServer> root = routeTable.getRoot();
+    /**
+     *  连接会话，键为连接的WebSocket响应对象
+     */
+    private final Map<WebSocketResponse, RPCSession> sessions = new ConcurrentHashMap<>();
+    /**
+     *  连接会话，键为会话ID，与sessions同时登记和移除
+     */
+    private final Map<String, RPCSession> sessionsById = new ConcurrentHashMap<>();
+    /**
+     *  主题订阅索引
+     */
+    @Getter
+    private final TopicRegistry topicRegistry = new TopicRegistry();
+    /**
+     *  压缩帧的帧头预留空间，帧头最长10字节
+     */
+    private static final byte[] FRAME_HEADER_RESERVE = new byte[10];
 
     /**
      * 构造函数，初始化RPC路由器
@@ -56,35 +217,85 @@ public class RPCRouter {
 
         // 设置根路由的RPC服务器处理逻辑
         root.setRpcServer((request,response,data)->{
-            // 从任务缓存中获取与请求UUID关联的RPC服务器实例
-            RPCServer server = taskCache.get(data.getUUID());
+            // 从任务缓存中原子地取出与请求数字ID或UUID关联的RPC服务器实例，避免与超时重复处理
+            RPCServer server = data.getId() != 0 ? pendingTable.claim(data.getId()) : taskCache.claim(data.getUUID());
             if (server != null){
-                // 如果找到匹配的RPC服务器实例，则从缓存中移除，以避免重复处理
-                taskCache.remove(data.getUUID());
                 // 调用找到的RPC服务器实例处理请求并返回处理结果
                 return server.handle(request,response,data);
             }
             // 如果没有找到匹配的RPC服务器实例，返回空的Optional
             return Optional.empty();
         });
+        // 订阅与取消订阅的保留路由，request为主题名称或主题名称数组
+        addRouterNode(Topics.SUBSCRIBE, (request, response, data) -> {
+            RPCSession session = sessions.get(response);
+            List<String> topics = topicsOf(data);
+            if (session == null || topics == null) {
+                return Optional.of(APIResponse.error("Invalid subscription"));
+            }
+            topics.removeIf(topic -> !topicRegistry.subscribe(session, topic));
+            return Optional.of(APIResponse.success("Subscribed", topics));
+        });
+        addRouterNode(Topics.UNSUBSCRIBE, (request, response, data) -> {
+            RPCSession session = sessions.get(response);
+            List<String> topics = topicsOf(data);
+            if (session == null || topics == null) {
+                return Optional.of(APIResponse.error("Invalid subscription"));
+            }
+            topics.forEach(topic -> topicRegistry.unsubscribe(session, topic));
+            return Optional.of(APIResponse.success("Unsubscribed", topics));
+        });
         taskCache.setCallback((key, value)->{
             APIResponse response = APIResponse.create().UUID(key);
             response.setStatus(408);
             response.setMessage("Request timeout");
             value.handle(null,null,response);
         });
+        pendingTable.setCallback((key, value)->{
+            APIResponse response = APIResponse.create().id(key);
+            response.setStatus(408);
+            response.setMessage("Request timeout");
+            value.handle(null,null,response);
+        });
     }
 
     /**
      * 启动任务
      */
     public void start(){
+        executor = new StripedExecutor(stripeCount, stripeQueueCapacity, stripePolicy, rejectedHandler, "SimpleRPC-Router-");
+        if (executionMode == ExecutionMode.VIRTUAL) {
+            virtualExecutor = VirtualThreads.newPerTaskExecutor("SimpleRPC-Router-Virtual-");
+        }
+        outboundExecutor = Executors.newCachedThreadPool(ThreadUtil.newNamedThreadFactory("SimpleRPC-Outbound-", true));
+        replyScheduler = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newNamedThreadFactory("SimpleRPC-Reply-Batch-", true));
         // 设置任务缓存的超时时间
         taskCache.setTimeout(timeout);
+        pendingTable.setTimeout(timeout);
         // 启动任务清理任务
         taskCache.startCleanupTask();
     }
 
+    /**
+     * 停止任务
+     */
+    public void stop(){
+        if (executor != null) {
+            executor.shutdown();
+        }
+        if (virtualExecutor != null) {
+            virtualExecutor.shutdown();
+        }
+        if (outboundExecutor != null) {
+            outboundExecutor.shutdownNow();
+        }
+        if (replyScheduler != null) {
+            replyScheduler.shutdown();
+        }
+        taskCache.shutdown();
+        pendingTable.shutdown();
+    }
+
     /**
      * 处理WebSocket请求的方法，通过字符串数据创建API响应对象
      * @param request WebSocket请求对象
@@ -94,8 +305,25 @@ public class RPCRouter {
     public void handle(WebSocketRequest request, WebSocketResponse response, String data){
         APIResponse apiResponse;
         try {
-            apiResponse = APIResponse.fromStr(data);
-        } catch (JsonProcessingException e) {
+            apiResponse = LazyAPIResponse.decodeStr(data);
+        } catch (IOException e) {
+            log.error("Data conversion failed.",e);
+            return;
+        }
+        handle(request,response,apiResponse);
+    }
+
+    /**
+     * 处理WebSocket请求的方法，直接从UTF-8编码的JSON字节创建API响应对象，不经过中间字符串
+     * @param request WebSocket请求对象
+     * @param response WebSocket响应对象
+     * @param data UTF-8编码的JSON字节，解码结果会引用该数组
+     */
+    public void handleText(WebSocketRequest request, WebSocketResponse response, byte[] data){
+        APIResponse apiResponse;
+        try {
+            apiResponse = LazyAPIResponse.decodeJson(data);
+        } catch (IOException e) {
             log.error("Data conversion failed.",e);
             return;
         }
@@ -111,7 +339,7 @@ public class RPCRouter {
     public void handleBin(WebSocketRequest request, WebSocketResponse response, byte[] data){
         APIResponse apiResponse;
         try {
-            apiResponse = APIResponse.fromBin(data);
+            apiResponse = binaryCodec(response).decode(data);
         } catch (Exception e) {
             log.error("Data conversion failed.",e);
             return;
@@ -127,133 +355,1177 @@ public class RPCRouter {
      * @param data API响应数据对象
      */
     protected void handle(WebSocketRequest request, WebSocketResponse response, APIResponse data){
-        if (StrUtil.isBlank(data.getKey())){
-            executeCallback(request, response, data, root);
-            return;
-        }
-        List<String> link = SplitUtil.split(data.getKey(),".",true,false);
-        RPCRouterNode<RPCServer> cacheNode = root;
-        for (String s : link) {
-            cacheNode = cacheNode.getChildren().get(s);
-            if (cacheNode == null){
-                break;
-            }
+        if (Batch.isBatch(data)){
+            handleBatch(request, response, data);
+        } else {
+            dispatch(request, response, data, request, result -> {
+                if (result != null) {
+                    send(response, result);
+                }
+            });
         }
-        if (cacheNode == null){
-            response.sendTextMessage(APIResponse.error404("No matching APIs found").UUID(data.getUUID()).toString());
-            return;
+        // 在IO线程上检查发送队列，超过高水位时暂停读取，写出线程降到低水位以下后恢复
+        RPCSession session = sessions.get(response);
+        if (session != null && session.outbound != null) {
+            session.outbound.pauseReadIfUnwritable();
         }
-        executeCallback(request, response, data, cacheNode);
     }
 
     /**
-     * 执行回调函数
+     * 拆开批量信封，其中的调用按各自的分片并行执行。
+     * 每个调用完成后立即交给连接的批量响应合并器，与合并窗口内完成的其他响应一起发回，不等待同一批量中的其他调用
      *
-     * @param request  WebSocket请求对象
+     * @param request WebSocket请求对象
      * @param response WebSocket响应对象
-     * @param data API响应数据
-     * @param root RPC路由树的根节点
+     * @param data 批量信封
      */
-    private void executeCallback(WebSocketRequest request, WebSocketResponse response, APIResponse data, RPCRouterNode<RPCServer> root) {
-        executorService.execute(() -> {
-            Optional<APIResponse> result = root.getRpcServer().handle(request, response, data);
-            result.ifPresent(apiResponse -> {
-                if (!simpleRPC.isBinaryFirst()) {
-                    response.sendTextMessage(apiResponse.toString());
-                } else {
-                    try {
-                        response.sendBinaryMessage(apiResponse.toBin());
-                    } catch (JsonProcessingException e) {
-                        log.error("Failed to convert data", e);
-                    }
-                }
-            });
-        });
+    private void handleBatch(WebSocketRequest request, WebSocketResponse response, APIResponse data){
+        List<APIResponse> items;
+        try {
+            items = Batch.unpack(data);
+        } catch (Exception e) {
+            log.error("Data conversion failed.",e);
+            return;
+        }
+        if (items.isEmpty()) {
+            return;
+        }
+        RPCSession session = sessions.get(response);
+        ReplyBatcher batcher = session == null ? null : session.replies;
+        Consumer<APIResponse> reply = result -> {
+            if (result == null) {
+                return;
+            }
+            if (batcher != null) {
+                batcher.add(result);
+            } else {
+                send(response, result);
+            }
+        };
+        for (APIResponse item : items) {
+            // 以调用的对象标识作为分片键，同一批量中的调用分散到不同分片上并行执行；
+            // 不使用调用本身，其hashCode会解码延迟解析的请求体
+            dispatch(request, response, item, System.identityHashCode(item), reply);
+        }
     }
 
     /**
-     * 添加路由节点
+     * 路由并提交单个调用
      *
-     * @param key 路由键，用于标识节点路径
-     * @param rpcServer 关联的RPC服务器实例
+     * @param request WebSocket请求对象
+     * @param response WebSocket响应对象
+     * @param data API响应数据对象
+     * @param stripeKey 分片键
+     * @param reply 调用结果的接收者，没有响应时传入null
      */
-    public void addRouterNode(String key, RPCServer rpcServer) {
-        if (StrUtil.isBlank(key)) {
-            log.error("It is not allowed to override the root node");
+    private void dispatch(WebSocketRequest request, WebSocketResponse response, APIResponse data, Object stripeKey, Consumer<APIResponse> reply){
+        if (StrUtil.isBlank(data.getKey())){
+            // 对端对服务端调用的回应不受连接的调用限制
+            executeCallback(request, response, data, root, null, stripeKey, reply);
             return;
         }
-        List<String> link = SplitUtil.split(key, ".", true, false);
-        RPCRouterNode<RPCServer> cacheNode = root;
-        for (String s : link) {
-            cacheNode = cacheNode.getChildren().computeIfAbsent(s, k -> RPCRouterNode.create(s));
+        if (Cancellation.KEY.equals(data.getKey())) {
+            // 取消在IO线程上立即处理，不排在被取消的调用之后
+            cancel(response, data);
+            reply.accept(null);
+            return;
         }
-        cacheNode.setRpcServer(rpcServer);
-    }
-    public void removeRouterNode(String key) {
-        if (StrUtil.isBlank(key)) {
-            log.error("Cannot remove root");
+        RPCRouterNode<RPCServer> cacheNode = routeTable.lookup(data.getKey());
+        if (cacheNode == null){
+            reply.accept(APIResponse.error404("No matching APIs found").correlate(data));
             return;
         }
-        List<String> link = SplitUtil.split(key, ".", true, false);
-        RPCRouterNode<RPCServer> cacheNode = root;
-        RPCRouterNode<RPCServer> lastNode = null;
-        String findKey = null;
-        for (String s : link) {
-            lastNode = cacheNode;
-            findKey = s;
-            cacheNode = cacheNode.getChildren().get(s);
-            if (cacheNode == null){
+        RouteOptions options = cacheNode.getOptions();
+        TinyLfuCache<RequestKey, APIResponse> cache = options == null ? null : options.getCache();
+        SingleFlight singleFlight = options == null ? null : options.getSingleFlight();
+        RequestKey requestKey = cache != null || singleFlight != null ? requestKey(data) : null;
+        if (cache != null && requestKey != null) {
+            APIResponse cached = cache.get(requestKey);
+            if (cached != null) {
+                reply.accept(cached.copyUncorrelated().correlate(data));
                 return;
             }
         }
-        if (lastNode == null || findKey == null){
+        RPCSession session = sessions.get(response);
+        if (session != null) {
+            if (!session.isWritable()) {
+                reply.accept(reject(data, 503, "Server busy"));
+                return;
+            }
+            if (maxInFlightPerSession > 0) {
+                if (session.inFlight.incrementAndGet() > maxInFlightPerSession) {
+                    session.inFlight.decrementAndGet();
+                    reply.accept(reject(data, 429, "Too many requests"));
+                    return;
+                }
+                Consumer<APIResponse> target = reply;
+                reply = result -> {
+                    session.inFlight.decrementAndGet();
+                    target.accept(result);
+                };
+            }
+        }
+        AdaptiveLimiter limiter = concurrencyLimiter;
+        if (limiter != null) {
+            if (!limiter.tryAcquire()) {
+                reply.accept(reject(data, 503, "Server overloaded"));
+                return;
+            }
+            long start = System.nanoTime();
+            Consumer<APIResponse> target = reply;
+            reply = result -> {
+                limiter.release(start);
+                target.accept(result);
+            };
+        }
+        Object callKey = session == null ? null : RunningCall.keyOf(data);
+        long deadline = RunningCall.deadlineOf(data);
+        RunningCall call = callKey != null || deadline != 0 ? new RunningCall(callKey, deadline) : null;
+        if (call != null) {
+            // 被取消的调用不回复调用方，结果仍交给合并等待的调用
+            RunningCall own = call;
+            Consumer<APIResponse> target = reply;
+            reply = result -> target.accept(own.isCancelled() ? null : result);
+        }
+        if (requestKey != null) {
+            if (singleFlight != null) {
+                // 通过准入检查后才加入合并，拒绝的结果不会分享给其他调用；等待者各自占用调用名额直到结果交出
+                reply = singleFlight.join(requestKey, data, reply);
+                if (reply == null) {
+                    return;
+                }
+                if (call != null) {
+                    call.share(() -> singleFlight.hasWaiters(requestKey));
+                }
+            }
+            if (cache != null) {
+                // 先写入缓存再结束合并，之后到达的相同调用可以直接命中缓存
+                Consumer<APIResponse> target = reply;
+                reply = result -> {
+                    if (result != null && Integer.valueOf(200).equals(result.getStatus())) {
+                        cache.put(requestKey, result.copyUncorrelated());
+                    }
+                    target.accept(result);
+                };
+            }
+        }
+        if (callKey != null) {
+            RunningCall registered = call;
+            session.calls.put(callKey, registered);
+            Consumer<APIResponse> target = reply;
+            reply = result -> {
+                session.calls.remove(callKey, registered);
+                target.accept(result);
+            };
+        }
+        executeCallback(request, response, data, cacheNode, call, stripeKey, reply);
+    }
+
+    /**
+     * 取消连接上的调用
+     *
+     * @param response WebSocket响应对象
+     * @param data 取消信封，UUID或数字ID与要取消的调用相同
+     */
+    private void cancel(WebSocketResponse response, APIResponse data) {
+        RPCSession session = sessions.get(response);
+        Object callKey = RunningCall.keyOf(data);
+        if (session == null || callKey == null) {
             return;
         }
-        lastNode.getChildren().remove(findKey);
+        RunningCall call = session.calls.get(callKey);
+        if (call != null && call.cancel(true)) {
+            cancelledCount.increment();
+            log.debug("Call cancelled:[{}]", callKey);
+        }
+    }
 
+    /**
+     * 获取排队期间超过调用方截止时间而未执行的调用次数
+     *
+     * @return 超时丢弃的调用次数
+     */
+    public long getExpiredCount() {
+        return expiredCount.sum();
     }
 
     /**
-     * 添加回调
+     * 获取被调用方取消的调用次数
      *
-     * @param uuid 回调的唯一标识符
-     * @param rpcServer 回调的RPC服务器实例
+     * @return 取消的调用次数
      */
-    public void addSendCallBack(String uuid, RPCServer rpcServer) {
-        taskCache.put(uuid, rpcServer);
+    public long getCancelledCount() {
+        return cancelledCount.sum();
     }
 
-    public void send(WebSocketResponse response, APIResponse data){
-        send(response, data, simpleRPC.isBinaryFirst());
+    /**
+     * 计算调用的标识
+     *
+     * @param data 调用
+     * @return 调用的标识，请求无法规范序列化时返回null
+     */
+    private static RequestKey requestKey(APIResponse data) {
+        try {
+            return RequestKey.of(data);
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.debug("Request is not cacheable:[{}]", data.getKey(), e);
+            return null;
+        }
     }
 
-    public void send(WebSocketResponse response, APIResponse data,boolean bin){
-        if (bin) {
-            try {
-                response.sendBinaryMessage(data.toBin());
-            } catch (JsonProcessingException e) {
-                log.error("Data conversion failed.", e);
-                taskCache.remove(data.getUUID());
-            }
+    /**
+     * 构造拒绝调用的响应
+     *
+     * @param data 被拒绝的调用
+     * @param status 状态码
+     * @param message 拒绝原因
+     * @return 与调用关联的响应
+     */
+    private static APIResponse reject(APIResponse data, int status, String message) {
+        APIResponse rejected = APIResponse.create().correlate(data);
+        rejected.setStatus(status);
+        rejected.setMessage(message);
+        return rejected;
+    }
+
+    /**
+     * 记录处理器的异常，被取消的调用因中断或取消而失败是预期的，只记录调试日志
+     *
+     * @param data 失败的调用
+     * @param call 调用的取消状态，可以为null
+     * @param error 处理器的异常
+     */
+    private static void logFailure(APIResponse data, RunningCall call, Throwable error) {
+        if (call != null && call.isCancelled()) {
+            log.debug("Cancelled handler failed:[{}]", data.getKey(), error);
         } else {
-            response.sendTextMessage(data.toString());
+            log.error("Handler failed:[{}]", data.getKey(), error);
         }
     }
 
     /**
-     * 发送数据并回调
+     * 构造处理器异常时的响应
+     *
+     * @param data 失败的调用
+     * @return 与调用关联的500响应，对端对服务端调用的回应没有路由键，不再回复，返回null
+     */
+    private static APIResponse failed(APIResponse data) {
+        if (StrUtil.isBlank(data.getKey())) {
+            return null;
+        }
+        return APIResponse.error("Handler failed").correlate(data);
+    }
+
+    /**
+     * 执行回调函数
      *
+     * @param request  WebSocket请求对象
      * @param response WebSocket响应对象
      * @param data API响应数据
-     * @param isBinary 是否以二进制方式发送
-     * @param rpcServer 相关的RPC服务器实例
+     * @param root RPC路由树的根节点
+     * @param call 调用的截止时间与取消状态，为null时总是执行
+     * @param stripeKey 分片键
+     * @param reply 调用结果的接收者
      */
-    public void sendAndCallBack(WebSocketResponse response, APIResponse data, boolean isBinary, RPCServer rpcServer) {
-        addSendCallBack(data.getUUID(), rpcServer);
-        send(response, data, isBinary);
+    private void executeCallback(WebSocketRequest request, WebSocketResponse response, APIResponse data, RPCRouterNode<RPCServer> root, RunningCall call, Object stripeKey, Consumer<APIResponse> reply) {
+        Runnable task = () -> invoke(request, response, data, root, call, reply);
+        try {
+            if (virtualExecutor != null) {
+                virtualExecutor.execute(task);
+            } else {
+                executor.execute(stripeKey, task);
+            }
+        } catch (RejectedExecutionException e) {
+            log.warn("Dispatch queue is full, reject request:[{}]", data.getKey());
+            reply.accept(reject(data, 503, "Server busy"));
+        }
     }
-    public void sendAndCallBack(WebSocketResponse response, APIResponse data, RPCServer rpcServer) {
-        addSendCallBack(data.getUUID(), rpcServer);
-        send(response, data);
+
+    /**
+     * 在执行器线程中调用路由节点的RPC服务器并交出结果
+     *
+     * @param request  WebSocket请求对象
+     * @param response WebSocket响应对象
+     * @param data API响应数据
+     * @param root 匹配到的路由节点
+     * @param call 调用的截止时间与取消状态，为null时总是执行
+     * @param reply 调用结果的接收者
+     */
+    private void invoke(WebSocketRequest request, WebSocketResponse response, APIResponse data, RPCRouterNode<RPCServer> root, RunningCall call, Consumer<APIResponse> reply) {
+        if (call != null) {
+            // 调用方已经放弃等待的调用不再执行，仍需交出结果以归还调用名额并结束合并
+            if (call.isExpired()) {
+                expiredCount.increment();
+                log.debug("Call expired before execution:[{}]", data.getKey());
+                reply.accept(null);
+                return;
+            }
+            if (!call.start()) {
+                reply.accept(null);
+                return;
+            }
+        }
+        RouteOptions options = root.getOptions();
+        if (root.getRpcServer() instanceof AsyncRoute) {
+            invokeAsync(request, response, data, (AsyncRoute) root.getRpcServer(), options, call, reply);
+            return;
+        }
+        if (!acquire(data, options, call, reply)) {
+            return;
+        }
+        APIResponse result;
+        try {
+            Optional<APIResponse> handled = root.getRpcServer().handle(request, response, data);
+            result = handled == null ? null : handled.map(apiResponse -> apiResponse.correlate(data)).orElse(null);
+        } catch (Throwable e) {
+            // 处理器异常或错误时同样回复500，调用方不必等到超时，调用名额与并发许可随回复归还
+            logFailure(data, call, e);
+            reply.accept(failed(data));
+            return;
+        } finally {
+            if (options != null) {
+                options.release();
+            }
+            if (call != null) {
+                call.finish();
+            }
+        }
+        // 已取消调用的结果在dispatch中丢弃，合并等待的调用仍能收到
+        reply.accept(result);
+    }
+
+    /**
+     * 获取路由的执行许可，未获得时结束调用并交出结果
+     * 虚拟线程模式下等待只占用虚拟线程；平台分片线程上不等待，避免阻塞分到同一分片的其他连接。
+     * 等待期间调用被取消时中断等待，不执行处理器也不回复调用方，其余情况以503拒绝
+     *
+     * @param data 调用
+     * @param options 路由的附加配置，为null时不限制
+     * @param call 调用的截止时间与取消状态，可以为null
+     * @param reply 调用结果的接收者
+     * @return 获得许可时返回true
+     */
+    private boolean acquire(APIResponse data, RouteOptions options, RunningCall call, Consumer<APIResponse> reply) {
+        if (options == null) {
+            return true;
+        }
+        try {
+            if (virtualExecutor != null) {
+                options.acquire();
+                return true;
+            }
+            if (options.tryAcquire()) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            log.debug("Interrupted while waiting for route permit:[{}]", data.getKey());
+        }
+        if (call != null) {
+            call.finish();
+        }
+        reply.accept(call != null && call.isCancelled() ? null : reject(data, 503, "Route busy"));
+        return false;
+    }
+
+    /**
+     * 调用异步路由，结果在CompletionStage完成时由完成它的线程交出，路由的并发许可同时归还。
+     * CompletionStage在调用方的截止时间内（没有截止时间时为路由器的超时时间）没有完成时取消它并回复408
+     *
+     * @param request  WebSocket请求对象
+     * @param response WebSocket响应对象
+     * @param data API响应数据
+     * @param route 异步路由
+     * @param options 路由的附加配置，可以为null
+     * @param call 调用的截止时间与取消状态，可以为null
+     * @param reply 调用结果的接收者
+     */
+    private void invokeAsync(WebSocketRequest request, WebSocketResponse response, APIResponse data, AsyncRoute route, RouteOptions options, RunningCall call, Consumer<APIResponse> reply) {
+        if (!acquire(data, options, call, reply)) {
+            return;
+        }
+        CompletionStage<APIResponse> stage;
+        try {
+            stage = route.handleAsync(request, response, data);
+        } catch (Throwable e) {
+            log.error("Handler failed:[{}]", data.getKey(), e);
+            stage = null;
+        } finally {
+            if (call != null) {
+                call.finish();
+            }
+        }
+        if (stage == null) {
+            // 处理器抛出异常或没有返回CompletionStage，立即归还许可并回复500
+            if (options != null) {
+                options.release();
+            }
+            reply.accept(failed(data));
+            return;
+        }
+        // 永不完成的CompletionStage不能一直占用许可与调用名额，到达调用方的截止时间或路由器的超时时间时归还并回复408
+        AtomicBoolean done = new AtomicBoolean();
+        HashedWheelTimer.Timeout expiry = null;
+        long limit = TimeUnit.MILLISECONDS.toNanos(timeout);
+        if (call != null) {
+            limit = call.remainingNanos(limit);
+        }
+        if (limit > 0) {
+            CompletionStage<APIResponse> started = stage;
+            expiry = HashedWheelTimer.shared().newTimeout(() -> {
+                if (!done.compareAndSet(false, true)) {
+                    return;
+                }
+                if (options != null) {
+                    options.release();
+                }
+                log.debug("Async call timed out:[{}]", data.getKey());
+                RunningCall.cancel(started);
+                reply.accept(reject(data, 408, "Request timeout"));
+            }, limit, TimeUnit.NANOSECONDS);
+        }
+        HashedWheelTimer.Timeout timer = expiry;
+        stage.whenComplete((result, error) -> {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            if (timer != null) {
+                timer.cancel();
+            }
+            if (options != null) {
+                options.release();
+            }
+            if (error != null) {
+                logFailure(data, call, error);
+                reply.accept(failed(data));
+                return;
+            }
+            reply.accept(result == null ? null : result.correlate(data));
+        });
+        if (call != null) {
+            call.attach(stage);
+        }
+    }
+
+    /**
+     * 添加路由节点
+     *
+     * @param key 路由键，用于标识节点路径
+     * @param rpcServer 关联的RPC服务器实例
+     */
+    public void addRouterNode(String key, RPCServer rpcServer) {
+        addRouterNode(key, rpcServer, null);
+    }
+
+    /**
+     * 添加带附加配置的路由节点
+     *
+     * @param key 路由键，用于标识节点路径
+     * @param rpcServer 关联的RPC服务器实例
+     * @param options 路由的附加配置，例如最大并发数量
+     */
+    public void addRouterNode(String key, RPCServer rpcServer, RouteOptions options) {
+        routeTable.add(key, rpcServer, options);
+    }
+
+    /**
+     * 添加异步路由节点
+     * 与同步路由使用不同的方法名，避免隐式类型的lambda在重载之间产生歧义
+     *
+     * @param key 路由键，用于标识节点路径
+     * @param server 异步的处理器
+     */
+    public void addAsyncRouterNode(String key, AsyncRPCServer server) {
+        addAsyncRouterNode(key, server, null);
+    }
+
+    /**
+     * 添加带附加配置的异步路由节点
+     * 路由的最大并发数量按未完成的CompletionStage计算
+     *
+     * @param key 路由键，用于标识节点路径
+     * @param server 异步的处理器
+     * @param options 路由的附加配置，例如最大并发数量
+     */
+    public void addAsyncRouterNode(String key, AsyncRPCServer server, RouteOptions options) {
+        addRouterNode(key, new AsyncRoute(server), options);
+    }
+
+    /**
+     * 添加类型化的路由节点
+     * 请求消息体直接解码为请求类型，处理器的返回值作为响应消息体，对应的ObjectReader和ObjectWriter只在此处构建一次
+     *
+     * @param key 路由键，用于标识节点路径
+     * @param requestType 请求消息体的类型
+     * @param responseType 响应消息体的类型
+     * @param server 类型化的处理器
+     */
+    public <T, R> void addRouterNode(String key, Class<T> requestType, Class<R> responseType, TypedRPCServer<T, R> server) {
+        TypeFactory typeFactory = APIResponse.getSerializer().getTypeFactory();
+        addRouterNode(key, new TypedRoute<>(typeFactory.constructType(requestType), typeFactory.constructType(responseType), server));
+    }
+
+    /**
+     * 添加类型化的路由节点，用于泛型请求或响应类型
+     *
+     * @param key 路由键，用于标识节点路径
+     * @param requestType 请求消息体的类型引用
+     * @param responseType 响应消息体的类型引用
+     * @param server 类型化的处理器
+     */
+    public <T, R> void addRouterNode(String key, TypeReference<T> requestType, TypeReference<R> responseType, TypedRPCServer<T, R> server) {
+        TypeFactory typeFactory = APIResponse.getSerializer().getTypeFactory();
+        addRouterNode(key, new TypedRoute<>(typeFactory.constructType(requestType), typeFactory.constructType(responseType), server));
+    }
+
+    /**
+     * 添加带附加配置的类型化路由节点
+     *
+     * @param key 路由键，用于标识节点路径
+     * @param requestType 请求消息体的类型
+     * @param responseType 响应消息体的类型
+     * @param server 类型化的处理器
+     * @param options 路由的附加配置，例如响应缓存
+     */
+    public <T, R> void addRouterNode(String key, Class<T> requestType, Class<R> responseType, TypedRPCServer<T, R> server, RouteOptions options) {
+        TypeFactory typeFactory = APIResponse.getSerializer().getTypeFactory();
+        addRouterNode(key, new TypedRoute<>(typeFactory.constructType(requestType), typeFactory.constructType(responseType), server), options);
+    }
+
+    /**
+     * 使路由的全部缓存响应失效
+     *
+     * @param key 路由键
+     * @return 失效的缓存项数，路由不存在或未开启缓存时返回0
+     */
+    public int invalidateCache(String key) {
+        TinyLfuCache<RequestKey, APIResponse> cache = routeCache(key);
+        return cache == null ? 0 : cache.invalidateIf(requestKey -> requestKey.getRoute().equals(key));
+    }
+
+    /**
+     * 使一次调用的缓存响应失效
+     *
+     * @param key 路由键
+     * @param request 请求对象
+     * @param params 请求参数
+     */
+    public void invalidateCache(String key, Object request, Map<String, Object> params) {
+        TinyLfuCache<RequestKey, APIResponse> cache = routeCache(key);
+        if (cache == null) {
+            return;
+        }
+        try {
+            cache.invalidate(RequestKey.of(key, request, params == null ? new ConcurrentHashMap<>() : params));
+        } catch (JsonProcessingException e) {
+            log.debug("Request is not cacheable:[{}]", key, e);
+        }
+    }
+
+    /**
+     * 获取路由的响应缓存，可用于查看命中率等统计
+     *
+     * @param key 路由键
+     * @return 响应缓存，路由不存在或未开启缓存时返回null
+     */
+    public TinyLfuCache<RequestKey, APIResponse> routeCache(String key) {
+        RPCRouterNode<RPCServer> node = routeTable.lookup(key);
+        if (node == null || node.getOptions() == null) {
+            return null;
+        }
+        return node.getOptions().getCache();
+    }
+
+    /**
+     * 移除路由节点及其所有子节点
+     *
+     * @param key 路由键，用于标识节点路径
+     */
+    public void removeRouterNode(String key) {
+        routeTable.remove(key);
+    }
+
+    /**
+     * 添加回调
+     * 超时时回调收到408响应，request与response参数为null
+     *
+     * @param uuid 回调的唯一标识符
+     * @param rpcServer 回调的RPC服务器实例
+     */
+    public void addSendCallBack(String uuid, RPCServer rpcServer) {
+        taskCache.put(uuid, rpcServer);
+    }
+
+    /**
+     * 为请求登记回调，数字关联模式下为请求分配数字ID，否则使用请求的UUID
+     * 请求未设置截止时间时以回调的超时时间作为截止时间，客户端不会执行排队期间已超时的请求
+     *
+     * @param data 要发送的请求
+     * @param rpcServer 回调的RPC服务器实例
+     */
+    private void addSendCallBack(APIResponse data, RPCServer rpcServer) {
+        if (data.getDeadline() == 0) {
+            data.setDeadline(timeout);
+        }
+        if (numericCorrelation) {
+            data.setId(pendingTable.put(rpcServer));
+        } else {
+            addSendCallBack(data.getUUID(), rpcServer);
+        }
+    }
+
+    /**
+     * 为发往指定连接的请求登记回调，并将回调的关联标识记录到会话中，连接关闭时这些回调立即以503结束
+     *
+     * @param response WebSocket响应对象
+     * @param data 要发送的请求
+     * @param rpcServer 回调的RPC服务器实例
+     */
+    private void addSendCallBack(WebSocketResponse response, APIResponse data, RPCServer rpcServer) {
+        RPCSession session = sessions.get(response);
+        if (session == null) {
+            addSendCallBack(data, rpcServer);
+            return;
+        }
+        SessionCallback callback = new SessionCallback(session, rpcServer);
+        addSendCallBack(data, callback);
+        callback.key = data.getId() != 0 ? (Object) data.getId() : data.getUUID();
+        session.callbacks.add(callback.key);
+        if (!session.isOpen()) {
+            // 会话在登记期间关闭
+            failCallback(callback.key);
+        }
+    }
+
+    /**
+     * 连接关闭时以503结束会话上全部等待回应的回调，只遍历该会话登记的回调
+     * 回调在执行器中执行，request与response参数为null
+     *
+     * @param session 已关闭的会话
+     */
+    private void failCallbacks(RPCSession session) {
+        for (Object key : session.callbacks) {
+            failCallback(key);
+        }
+        session.callbacks.clear();
+    }
+
+    /**
+     * 以连接关闭的响应结束一个等待回应的回调
+     *
+     * @param key 回调的数字关联ID或UUID
+     */
+    private void failCallback(Object key) {
+        RPCServer server = key instanceof Long ? pendingTable.claim((Long) key) : taskCache.claim((String) key);
+        if (server == null) {
+            return;
+        }
+        APIResponse response = key instanceof Long ? APIResponse.create().id((Long) key) : APIResponse.create().UUID((String) key);
+        response.setStatus(503);
+        response.setMessage("Connection closed");
+        Runnable task = () -> {
+            try {
+                server.handle(null, null, response);
+            } catch (RuntimeException e) {
+                log.error("Callback failed.", e);
+            }
+        };
+        // 回调与正常回应一样在执行器中执行，不占用关闭连接的IO线程
+        try {
+            if (virtualExecutor != null) {
+                virtualExecutor.execute(task);
+            } else {
+                executor.execute(key, task);
+            }
+        } catch (RejectedExecutionException e) {
+            // 执行器已停止或队列已满，在当前线程结束回调，调用方不必等到超时
+            task.run();
+        }
+    }
+
+    /**
+     * 获取全部连接上等待回应的回调数量
+     *
+     * @return 等待回应的回调数量
+     */
+    public int getPendingCallbacks() {
+        return taskCache.size() + pendingTable.size();
+    }
+
+    /**
+     * 取消请求登记的回调
+     *
+     * @param data 已登记回调的请求
+     */
+    private void removeSendCallBack(APIResponse data) {
+        RPCServer server = data.getId() != 0 ? pendingTable.claim(data.getId()) : taskCache.claim(data.getUUID());
+        if (server instanceof SessionCallback) {
+            ((SessionCallback) server).release();
+        }
+    }
+
+    /**
+     * 登记握手时创建的连接会话
+     *
+     * @param request 连接的WebSocket请求对象
+     * @param response 连接的WebSocket响应对象
+     * @param codec 协商的编解码器，对端未参与协商时为null
+     * @return 连接会话
+     */
+    public RPCSession openSession(WebSocketRequest request, WebSocketResponse response, Codec codec) {
+        return openSession(request, response, codec, null);
+    }
+
+    /**
+     * 登记握手时创建的连接会话
+     *
+     * @param request 连接的WebSocket请求对象
+     * @param response 连接的WebSocket响应对象
+     * @param codec 协商的编解码器，对端未参与协商时为null
+     * @param deflate 协商的压缩状态，未启用压缩时为null
+     * @return 连接会话
+     */
+    public RPCSession openSession(WebSocketRequest request, WebSocketResponse response, Codec codec, PerMessageDeflate deflate) {
+        RPCSession session = new RPCSession(request, response, codec, deflate);
+        if (response instanceof WebSocketResponseImpl) {
+            BufferOutputStream out = ((WebSocketResponseImpl) response).getOutputStream();
+            AioSession aioSession = request instanceof WebSocketRequestImpl ? ((WebSocketRequestImpl) request).getRequest().getAioSession() : null;
+            session.outbound = new OutboundQueue(out, aioSession, outboundHighWatermark, outboundLowWatermark, outboundExecutor);
+        }
+        if (replyBatchSize > 1 && replyLingerMicros > 0) {
+            session.replies = new ReplyBatcher(replyBatchSize, TimeUnit.MICROSECONDS.toNanos(replyLingerMicros), replyScheduler, replies -> {
+                if (replies.size() == 1) {
+                    send(response, replies.get(0));
+                } else {
+                    send(response, Batch.of(replies));
+                }
+            });
+        }
+        sessions.put(response, session);
+        sessionsById.put(session.getId(), session);
+        return session;
+    }
+
+    /**
+     * 移除连接会话
+     *
+     * @param response 连接的WebSocket响应对象
+     */
+    public void closeSession(WebSocketResponse response) {
+        RPCSession session = sessions.remove(response);
+        if (session != null) {
+            sessionsById.remove(session.getId());
+            // 先标记关闭再清理订阅，并发的订阅会看到关闭标记并自行撤销
+            session.close();
+            topicRegistry.unsubscribeAll(session);
+            failCallbacks(session);
+        }
+    }
+
+    /**
+     * 获取连接会话
+     *
+     * @param response 连接的WebSocket响应对象
+     * @return 连接会话，不存在时返回null
+     */
+    public RPCSession getSession(WebSocketResponse response) {
+        return sessions.get(response);
+    }
+
+    /**
+     * 按会话ID获取连接会话
+     *
+     * @param sessionId 会话ID
+     * @return 连接会话，不存在或连接已关闭时返回null
+     */
+    public RPCSession getSessionById(String sessionId) {
+        return sessionId == null ? null : sessionsById.get(sessionId);
+    }
+
+    /**
+     * 获取当前的连接会话
+     *
+     * @return 只读的会话视图，随连接建立和关闭变化
+     */
+    public Collection<RPCSession> getSessions() {
+        return Collections.unmodifiableCollection(sessionsById.values());
+    }
+
+    /**
+     * 获取当前的连接数量
+     *
+     * @return 连接会话数量
+     */
+    public int getSessionCount() {
+        return sessionsById.size();
+    }
+
+    /**
+     * 获取连接收发二进制消息使用的编解码器
+     *
+     * @param response 连接的WebSocket响应对象
+     * @return 协商的二进制编解码器，未协商或协商结果为文本格式时返回BSON编解码器
+     */
+    private Codec binaryCodec(WebSocketResponse response) {
+        RPCSession session = response == null ? null : sessions.get(response);
+        if (session == null || session.getCodec() == null || !session.getCodec().isBinary()) {
+            return Codecs.BSON;
+        }
+        return session.getCodec();
+    }
+
+    /**
+     * 创建连接上分片消息使用的增量解码器
+     *
+     * @param response 连接的WebSocket响应对象
+     * @param text 是否为文本消息
+     * @return 增量解码器，编解码器不支持增量解码时返回null
+     */
+    public Codec.Decoder newDecoder(WebSocketResponse response, boolean text) {
+        return (text ? Codecs.JSON : binaryCodec(response)).newDecoder();
+    }
+
+    /**
+     * 发送数据，连接协商过编解码器时按协商结果选择消息类型，否则按binaryFirst选择
+     *
+     * @param response WebSocket响应对象
+     * @param data API响应数据
+     */
+    public void send(WebSocketResponse response, APIResponse data){
+        RPCSession session = sessions.get(response);
+        Codec codec = session == null ? null : session.getCodec();
+        send(response, data, codec == null ? simpleRPC.isBinaryFirst() : codec.isBinary());
+    }
+
+    /**
+     * 发送数据并立即刷新，二进制消息使用连接协商的编解码器编码
+     *
+     * @param response WebSocket响应对象
+     * @param data API响应数据
+     * @param bin 是否以二进制方式发送
+     */
+    public void send(WebSocketResponse response, APIResponse data,boolean bin){
+        try (BufferPool.Buffer buffer = BufferPool.acquire()) {
+            // 帧头预留在编码输出之前，整帧一次交给发送队列
+            buffer.write(FRAME_HEADER_RESERVE, 0, FRAME_HEADER_RESERVE.length);
+            try {
+                (bin ? binaryCodec(response) : Codecs.JSON).encode(data, buffer);
+            } catch (IOException e) {
+                log.error("Data conversion failed.", e);
+                removeSendCallBack(data);
+                return;
+            }
+            byte[] array = buffer.array();
+            int length = buffer.size() - FRAME_HEADER_RESERVE.length;
+            if (!(response instanceof WebSocketResponseImpl)) {
+                if (bin) {
+                    response.sendBinaryMessage(array, FRAME_HEADER_RESERVE.length, length);
+                } else {
+                    response.sendTextMessage(new String(array, FRAME_HEADER_RESERVE.length, length, StandardCharsets.UTF_8));
+                }
+                response.flush();
+                return;
+            }
+            RPCSession session = sessions.get(response);
+            PerMessageDeflate deflate = session == null ? null : session.getDeflate();
+            byte opcode = bin ? WebSocketUtil.OPCODE_BINARY : WebSocketUtil.OPCODE_TEXT;
+            if (deflate != null && deflate.shouldCompress(length)) {
+                sendCompressed(session, deflate, opcode, array, FRAME_HEADER_RESERVE.length, length);
+            } else {
+                // FIN置位
+                int start = writeFrameHeader(array, 0x80 | opcode, length);
+                writeFrame(session, (WebSocketResponseImpl) response, array, start, buffer.size() - start);
+            }
+        }
+    }
+
+    /**
+     * 将完整的帧交给连接的发送队列，队列为空时直接写出并刷新
+     *
+     * @param session 连接会话，为null时直接写出
+     * @param response WebSocket响应对象
+     * @param frame 帧数据
+     * @param offset 起始位置
+     * @param length 字节数
+     */
+    private void writeFrame(RPCSession session, WebSocketResponseImpl response, byte[] frame, int offset, int length) {
+        try {
+            if (session != null && session.outbound != null) {
+                session.outbound.write(frame, offset, length);
+            } else {
+                OutputStream out = response.getOutputStream();
+                out.write(frame, offset, length);
+                // 在执行器线程中发送时不会经过IO线程的自动刷新，需要主动刷新
+                response.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 压缩消息并作为设置了RSV1的单帧写出
+     * 帧头预留在压缩输出之前，整帧一次写出，保留压缩上下文时压缩与入队在同一把锁内完成
+     *
+     * @param session 连接会话
+     * @param deflate 连接协商的压缩状态
+     * @param opcode 帧类型
+     * @param data 编码后的消息
+     * @param offset 消息起始位置
+     * @param length 消息字节数
+     */
+    private void sendCompressed(RPCSession session, PerMessageDeflate deflate, byte opcode, byte[] data, int offset, int length) {
+        try (BufferPool.Buffer frame = BufferPool.acquire()) {
+            synchronized (deflate.lock()) {
+                frame.write(FRAME_HEADER_RESERVE, 0, FRAME_HEADER_RESERVE.length);
+                deflate.deflate(data, offset, length, frame);
+                // FIN与RSV1置位
+                int start = writeFrameHeader(frame.array(), 0xC0 | opcode, frame.size() - FRAME_HEADER_RESERVE.length);
+                writeFrame(session, (WebSocketResponseImpl) session.getResponse(), frame.array(), start, frame.size() - start);
+            }
+        }
+    }
+
+    /**
+     * 在预留空间的末尾写入帧头，负载从预留空间之后开始
+     *
+     * @param array 以{@link #FRAME_HEADER_RESERVE}长度的预留空间开头的帧数据
+     * @param firstByte 帧头第一个字节，包含FIN、RSV与帧类型
+     * @param length 负载字节数
+     * @return 帧头的起始位置
+     */
+    private static int writeFrameHeader(byte[] array, int firstByte, long length) {
+        int headerLength = length < 126 ? 2 : length <= 0xFFFF ? 4 : 10;
+        int start = FRAME_HEADER_RESERVE.length - headerLength;
+        array[start] = (byte) firstByte;
+        if (headerLength == 2) {
+            array[start + 1] = (byte) length;
+        } else if (headerLength == 4) {
+            array[start + 1] = 126;
+            array[start + 2] = (byte) (length >>> 8);
+            array[start + 3] = (byte) length;
+        } else {
+            array[start + 1] = 127;
+            for (int i = 0; i < 8; i++) {
+                array[start + 2 + i] = (byte) (length >>> (56 - 8 * i));
+            }
+        }
+        return start;
+    }
+
+    /**
+     * 发送数据并回调
+     * 回应超时时回调收到408响应，连接在回应前关闭时收到503响应，这两种由服务端生成的结果中request与response参数为null
+     *
+     * @param response WebSocket响应对象
+     * @param data API响应数据
+     * @param isBinary 是否以二进制方式发送
+     * @param rpcServer 相关的RPC服务器实例
+     */
+    public void sendAndCallBack(WebSocketResponse response, APIResponse data, boolean isBinary, RPCServer rpcServer) {
+        addSendCallBack(response, data, rpcServer);
+        send(response, data, isBinary);
+    }
+    public void sendAndCallBack(WebSocketResponse response, APIResponse data, RPCServer rpcServer) {
+        addSendCallBack(response, data, rpcServer);
+        send(response, data);
+    }
+
+    /**
+     * 向指定会话推送消息，不等待回应
+     *
+     * @param sessionId 会话ID
+     * @param data 要推送的消息
+     * @return 会话不存在或连接已关闭时返回false，消息未发送
+     */
+    public boolean push(String sessionId, APIResponse data) {
+        RPCSession session = getSessionById(sessionId);
+        if (session == null) {
+            return false;
+        }
+        send(session.getResponse(), data);
+        return true;
+    }
+
+    /**
+     * 调用指定会话上的客户端，回应或超时时回调
+     * 超时时回调收到408响应，连接在回应前关闭时收到503响应，这两种由服务端生成的结果中request与response参数为null
+     *
+     * @param sessionId 会话ID
+     * @param data 请求数据
+     * @param rpcServer 回调的RPC服务器实例
+     * @return 会话不存在或连接已关闭时返回false，请求未发送且不会回调
+     */
+    public boolean call(String sessionId, APIResponse data, RPCServer rpcServer) {
+        RPCSession session = getSessionById(sessionId);
+        if (session == null) {
+            return false;
+        }
+        sendAndCallBack(session.getResponse(), data, rpcServer);
+        return true;
+    }
+
+    /**
+     * 向主题的全部订阅者推送消息
+     * 消息按订阅者连接使用的编解码器分组，每种编解码器只编码一次并构造一次完整的帧，之后向每个订阅者写出同一份字节；
+     * 启用了压缩且消息达到压缩阈值的连接仍需逐个压缩，压缩上下文属于各自的连接；发送队列超过高水位的订阅者被跳过
+     *
+     * @param topic 主题名称
+     * @param data 要推送的消息，key为客户端上处理该消息的路由
+     * @return 写出成功的订阅者数量
+     */
+    public int publish(String topic, APIResponse data) {
+        return fanOut(topicRegistry.getSubscribers(topic), data, true);
+    }
+
+    /**
+     * 通知全部客户端使其调用缓存失效，只有路由键时该路由的全部缓存失效
+     * 失效消息不受发送队列高水位的限制，以免客户端长时间使用过期的结果
+     *
+     * @param key 路由键
+     * @return 写出成功的连接数量
+     */
+    public int invalidateClients(String key) {
+        return fanOut(sessionsById.values(), Invalidation.of(key), false);
+    }
+
+    /**
+     * 通知全部客户端使一次调用的缓存失效
+     *
+     * @param key 路由键
+     * @param request 请求对象
+     * @param params 请求参数
+     * @return 写出成功的连接数量
+     */
+    public int invalidateClients(String key, Object request, Map<String, Object> params) {
+        return fanOut(sessionsById.values(), Invalidation.of(key, request, params), false);
+    }
+
+    /**
+     * 向多个连接推送同一条消息，每种编解码器只编码一次
+     *
+     * @param sessions 目标连接
+     * @param data 要推送的消息
+     * @param skipUnwritable 是否跳过发送队列超过高水位的连接
+     * @return 写出成功的连接数量
+     */
+    private int fanOut(Collection<RPCSession> sessions, APIResponse data, boolean skipUnwritable) {
+        if (sessions.isEmpty()) {
+            return 0;
+        }
+        Map<Codec, EncodedFrame> frames = new HashMap<>(4);
+        int delivered = 0;
+        for (RPCSession session : sessions) {
+            if (skipUnwritable && !session.isWritable()) {
+                // 发送队列超过高水位的订阅者跳过本次推送，慢速客户端不会拖累其余订阅者
+                continue;
+            }
+            WebSocketResponse response = session.getResponse();
+            boolean bin = isBinary(session);
+            Codec codec = bin ? binaryCodec(response) : Codecs.JSON;
+            byte opcode = bin ? WebSocketUtil.OPCODE_BINARY : WebSocketUtil.OPCODE_TEXT;
+            EncodedFrame frame = frames.get(codec);
+            if (frame == null) {
+                try {
+                    frame = new EncodedFrame(codec, opcode, data);
+                } catch (IOException e) {
+                    log.error("Data conversion failed.", e);
+                    return delivered;
+                }
+                frames.put(codec, frame);
+            }
+            try {
+                PerMessageDeflate deflate = session.getDeflate();
+                int length = frame.data.length - FRAME_HEADER_RESERVE.length;
+                if (!(response instanceof WebSocketResponseImpl)) {
+                    send(response, data, bin);
+                } else if (deflate != null && deflate.shouldCompress(length)) {
+                    sendCompressed(session, deflate, opcode, frame.data, FRAME_HEADER_RESERVE.length, length);
+                } else {
+                    writeFrame(session, (WebSocketResponseImpl) response, frame.data, frame.start, frame.data.length - frame.start);
+                }
+                delivered++;
+            } catch (RuntimeException e) {
+                // 订阅者可能正在断开，不影响其余订阅者
+                log.debug("Publish to session:[{}] failed.", session.getId(), e);
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * 连接发送消息时是否使用二进制帧，与{@link #send(WebSocketResponse, APIResponse)}的选择一致
+     */
+    private boolean isBinary(RPCSession session) {
+        Codec codec = session.getCodec();
+        return codec == null ? simpleRPC.isBinaryFirst() : codec.isBinary();
+    }
+
+    /**
+     * 发往某个连接的请求的回调，回应、超时或连接关闭时从会话的回调记录中移除。
+     */
+    private static final class SessionCallback implements RPCServer {
+        private final RPCSession session;
+        private final RPCServer delegate;
+        private volatile Object key;
+
+        private SessionCallback(RPCSession session, RPCServer delegate) {
+            this.session = session;
+            this.delegate = delegate;
+        }
+
+        private void release() {
+            Object current = key;
+            if (current != null) {
+                session.callbacks.remove(current);
+            }
+        }
+
+        @Override
+        public Optional<APIResponse> handle(WebSocketRequest request, WebSocketResponse response, APIResponse data) {
+            release();
+            return delegate.handle(request, response, data);
+        }
+    }
+
+    /**
+     * 发布时为一种编解码器编码一次的完整帧，负载从预留的帧头空间之后开始，帧头写在预留空间的末尾。
+     */
+    private static final class EncodedFrame {
+        private final byte[] data;
+        private final int start;
+
+        private EncodedFrame(Codec codec, byte opcode, APIResponse message) throws IOException {
+            try (BufferPool.Buffer buffer = BufferPool.acquire()) {
+                buffer.write(FRAME_HEADER_RESERVE, 0, FRAME_HEADER_RESERVE.length);
+                codec.encode(message, buffer);
+                data = buffer.toByteArray();
+            }
+            // FIN置位
+            start = writeFrameHeader(data, 0x80 | opcode, data.length - FRAME_HEADER_RESERVE.length);
+        }
+    }
+
+    /**
+     * 从订阅请求中读取主题名称
+     *
+     * @return 主题名称列表，格式不正确时返回null
+     */
+    private static List<String> topicsOf(APIResponse data) {
+        Object request = data.getRequest();
+        List<String> topics = new ArrayList<>();
+        if (request instanceof String) {
+            topics.add((String) request);
+        } else if (request instanceof List) {
+            for (Object topic : (List<?>) request) {
+                if (!(topic instanceof String)) {
+                    return null;
+                }
+                topics.add((String) topic);
+            }
+        } else {
+            return null;
+        }
+        topics.removeIf(StrUtil::isBlank);
+        return topics;
     }
 }
@@ -0,0 +1,223 @@
+package com.foxapplication.simplerpc.server;
+
+import com.foxapplication.simplerpc.common.Codec;
+import com.foxapplication.simplerpc.common.PerMessageDeflate;
+import lombok.Getter;
+import lombok.Setter;
+import org.dromara.hutool.core.data.id.IdUtil;
+import org.smartboot.http.server.WebSocketRequest;
+import org.smartboot.http.server.WebSocketResponse;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * WebSocket连接会话，保存握手时协商的连接级状态。
+ * 会话在握手时创建并以会话ID登记到{@link RPCRouter}，连接关闭时移除，之后不能再通过会话ID找到它。
+ */
+public class RPCSession {
+
+    /**
+     * 会话ID，在服务端内唯一，用于定向推送与调用。
+     */
+    @Getter
+    private final String id = IdUtil.fastSimpleUUID();
+
+    /**
+     * 连接的WebSocket请求对象。
+     */
+    @Getter
+    private final WebSocketRequest request;
+
+    /**
+     * 连接的WebSocket响应对象。
+     */
+    @Getter
+    private final WebSocketResponse response;
+
+    /**
+     * 握手时协商的编解码器，为null表示对端未参与协商。
+     */
+    @Getter
+    private final Codec codec;
+
+    /**
+     * 握手时协商的permessage-deflate压缩状态，为null表示未启用压缩。
+     */
+    @Getter
+    private final PerMessageDeflate deflate;
+
+    /**
+     * 客户端握手时携带的令牌，未携带时为null。
+     */
+    @Getter
+    @Setter
+    private volatile String token;
+
+    /**
+     * 会话属性，处理器可以在其中保存连接级的身份信息等数据。
+     */
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+    /**
+     * 会话是否仍然有效，连接关闭后为false。
+     */
+    @Getter
+    private volatile boolean open = true;
+
+    /**
+     * 会话订阅的主题，由{@link TopicRegistry}维护。
+     */
+    final Set<String> topics = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 连接的发送队列，由{@link RPCRouter}在登记会话时创建，响应对象不支持直接写出帧时为null。
+     */
+    OutboundQueue outbound;
+
+    /**
+     * 以批量信封到达的调用的响应合并器，由{@link RPCRouter}在登记会话时创建，未开启合并时为null。
+     */
+    ReplyBatcher replies;
+
+    /**
+     * 已接受但尚未交出结果的调用数量。
+     */
+    final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * 可以被取消的调用，键为调用的数字关联ID或UUID。
+     */
+    final Map<Object, RunningCall> calls = new ConcurrentHashMap<>();
+
+    /**
+     * 服务端发往该连接、等待回应的回调的数字关联ID或UUID，回调本身保存在{@link RPCRouter}的挂起表中。
+     */
+    final Set<Object> callbacks = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 分片消息的重组状态。
+     */
+    final FragmentAssembler fragments = new FragmentAssembler();
+
+    /**
+     * 构造一个连接会话
+     *
+     * @param request 连接的WebSocket请求对象
+     * @param response 连接的WebSocket响应对象
+     * @param codec 协商的编解码器，可以为null
+     */
+    public RPCSession(WebSocketRequest request, WebSocketResponse response, Codec codec) {
+        this(request, response, codec, null);
+    }
+
+    /**
+     * 构造一个连接会话
+     *
+     * @param request 连接的WebSocket请求对象
+     * @param response 连接的WebSocket响应对象
+     * @param codec 协商的编解码器，可以为null
+     * @param deflate 协商的压缩状态，可以为null
+     */
+    public RPCSession(WebSocketRequest request, WebSocketResponse response, Codec codec, PerMessageDeflate deflate) {
+        this.request = request;
+        this.response = response;
+        this.codec = codec;
+        this.deflate = deflate;
+    }
+
+    /**
+     * 获取已接受但尚未交出结果的调用数量
+     *
+     * @return 进行中的调用数量
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 获取服务端发往该连接、等待回应的回调数量
+     *
+     * @return 等待回应的回调数量
+     */
+    public int getPendingCallbacks() {
+        return callbacks.size();
+    }
+
+    /**
+     * 获取发送队列中尚未交给底层连接的字节数
+     *
+     * @return 排队字节数
+     */
+    public long getOutboundBytes() {
+        return outbound == null ? 0 : outbound.getQueuedBytes();
+    }
+
+    /**
+     * 连接是否可以继续接受调用
+     *
+     * @return 发送队列未超过高水位时返回true
+     */
+    public boolean isWritable() {
+        return outbound == null || outbound.isWritable();
+    }
+
+    /**
+     * 获取会话属性
+     *
+     * @param name 属性名
+     * @return 属性值，不存在时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getAttribute(String name) {
+        return (T) attributes.get(name);
+    }
+
+    /**
+     * 设置会话属性
+     *
+     * @param name 属性名
+     * @param value 属性值，为null时移除该属性
+     */
+    public void setAttribute(String name, Object value) {
+        if (value == null) {
+            attributes.remove(name);
+        } else {
+            attributes.put(name, value);
+        }
+    }
+
+    /**
+     * 移除会话属性
+     *
+     * @param name 属性名
+     * @return 被移除的属性值，不存在时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T removeAttribute(String name) {
+        return (T) attributes.remove(name);
+    }
+
+    /**
+     * 释放会话持有的连接级资源
+     */
+    public void close() {
+        open = false;
+        attributes.clear();
+        // 连接关闭后结果无法送达，尚在排队的调用不再执行
+        calls.values().forEach(call -> call.cancel(false));
+        calls.clear();
+        fragments.reset();
+        if (replies != null) {
+            replies.close();
+        }
+        if (outbound != null) {
+            outbound.abort();
+        }
+        if (deflate != null) {
+            deflate.close();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.foxapplication.simplerpc.server;
+
+import com.foxapplication.simplerpc.common.APIResponse;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 一个连接的批量响应合并器。
+ * 以批量信封到达的调用各自完成后立即交出响应，第一条响应入队后最多等待lingerNanos纳秒，
+ * 期间完成的响应与其合并为一批发出；攒满maxSize条时立即发出。
+ * 合并只为节省帧数，不等待同一批量中的其他调用，慢速或永不完成的调用不会拖住其他响应。
+ */
+@Slf4j
+final class ReplyBatcher {
+
+    private final int maxSize;
+    private final long lingerNanos;
+
+    /**
+     * 触发等待窗口到期的调度器，由{@link RPCRouter}持有，为null时不等待。
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * 一批响应的发送逻辑。
+     */
+    private final Consumer<List<APIResponse>> flusher;
+
+    private List<APIResponse> pending = new ArrayList<>();
+    private boolean scheduled;
+    private boolean closed;
+
+    /**
+     * 构造批量响应合并器
+     *
+     * @param maxSize 每批最多的响应数量
+     * @param lingerNanos 第一条响应入队后的最长等待时间，单位为纳秒
+     * @param scheduler 触发等待窗口到期的调度器，为null时不等待
+     * @param flusher 一批响应的发送逻辑
+     */
+    ReplyBatcher(int maxSize, long lingerNanos, ScheduledExecutorService scheduler, Consumer<List<APIResponse>> flusher) {
+        this.maxSize = Math.max(1, maxSize);
+        this.lingerNanos = Math.max(0, lingerNanos);
+        this.scheduler = lingerNanos > 0 ? scheduler : null;
+        this.flusher = flusher;
+    }
+
+    /**
+     * 加入一条响应
+     *
+     * @param reply 响应
+     */
+    void add(APIResponse reply) {
+        List<APIResponse> batch = null;
+        boolean schedule = false;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            pending.add(reply);
+            if (pending.size() >= maxSize || scheduler == null) {
+                batch = swap();
+            } else if (!scheduled) {
+                scheduled = schedule = true;
+            }
+        }
+        if (schedule) {
+            try {
+                scheduler.schedule(this::flushLingered, lingerNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // 路由器已停止，不再等待
+                flushLingered();
+            }
+        }
+        if (batch != null) {
+            flush(batch);
+        }
+    }
+
+    /**
+     * 连接关闭时丢弃尚未发出的响应
+     */
+    synchronized void close() {
+        closed = true;
+        pending = new ArrayList<>();
+    }
+
+    /**
+     * 等待窗口到期，发出已入队的响应
+     */
+    private void flushLingered() {
+        List<APIResponse> batch;
+        synchronized (this) {
+            scheduled = false;
+            batch = swap();
+        }
+        flush(batch);
+    }
+
+    private List<APIResponse> swap() {
+        List<APIResponse> batch = pending;
+        pending = new ArrayList<>();
+        return batch;
+    }
+
+    private void flush(List<APIResponse> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            flusher.accept(batch);
+        } catch (RuntimeException e) {
+            log.error("Batch send failed.", e);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.foxapplication.simplerpc.server;
+
+import com.foxapplication.simplerpc.common.APIResponse;
+import org.dromara.hutool.core.text.StrUtil;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 已接受但尚未交出结果的调用，记录调用的截止时间与取消状态。
+ * 调用在执行器中排队期间被取消或超过截止时间时不再执行处理器；
+ * 同步处理器执行期间被取消时中断其线程，异步处理器被取消时取消其CompletionStage。
+ * 合并执行的调用被取消时若仍有其他调用在等待结果，处理器继续执行，只丢弃被取消调用自己的回复。
+ */
+final class RunningCall {
+
+    /**
+     * 调用在会话中的标识，数字关联ID或UUID，调用没有关联标识时为null。
+     */
+    final Object key;
+
+    /**
+     * 以System.nanoTime()计的截止时间，为0表示没有截止时间。
+     */
+    private final long deadline;
+
+    /**
+     * 正在执行同步处理器的线程。
+     */
+    private Thread runner;
+
+    /**
+     * 异步处理器返回的CompletionStage。
+     */
+    private CompletionStage<?> stage;
+
+    /**
+     * 合并执行时判断是否还有其他调用在等待结果，未合并时为null。
+     */
+    private BooleanSupplier shared;
+
+    private boolean cancelled;
+
+    /**
+     * 构造一个调用
+     *
+     * @param key 调用在会话中的标识，可以为null
+     * @param deadline 以System.nanoTime()计的截止时间，为0表示没有截止时间
+     */
+    RunningCall(Object key, long deadline) {
+        this.key = key;
+        this.deadline = deadline;
+    }
+
+    /**
+     * 获取调用在会话中的标识
+     *
+     * @param data 调用
+     * @return 数字关联ID或UUID，调用没有关联标识时返回null
+     */
+    static Object keyOf(APIResponse data) {
+        if (data.getId() != 0) {
+            return data.getId();
+        }
+        return StrUtil.isBlank(data.getUUID()) ? null : data.getUUID();
+    }
+
+    /**
+     * 将调用方的剩余截止时间换算为本地的截止时间
+     *
+     * @param data 调用
+     * @return 以System.nanoTime()计的截止时间，调用没有截止时间时返回0
+     */
+    static long deadlineOf(APIResponse data) {
+        if (data.getDeadline() <= 0) {
+            return 0;
+        }
+        long deadline = System.nanoTime() + data.getDeadline() * 1_000_000L;
+        return deadline == 0 ? 1 : deadline;
+    }
+
+    /**
+     * 调用是否已超过截止时间
+     *
+     * @return 超过截止时间时返回true
+     */
+    boolean isExpired() {
+        return deadline != 0 && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * 获取距离截止时间的剩余时间
+     *
+     * @param fallback 调用没有截止时间时返回的时间，单位为纳秒
+     * @return 剩余的纳秒数，已超过截止时间时返回1
+     */
+    long remainingNanos(long fallback) {
+        return deadline == 0 ? fallback : Math.max(1, deadline - System.nanoTime());
+    }
+
+    /**
+     * 调用是否已被取消
+     *
+     * @return 已被取消时返回true
+     */
+    synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 登记调用作为合并执行的调用，被取消时还有其他调用在等待结果则不中断处理器
+     *
+     * @param shared 判断是否还有其他调用在等待结果
+     */
+    synchronized void share(BooleanSupplier shared) {
+        this.shared = shared;
+    }
+
+    /**
+     * 在当前线程开始执行处理器
+     *
+     * @return 调用已被取消且没有其他调用等待其结果时返回false，此时不应执行处理器
+     */
+    synchronized boolean start() {
+        if (cancelled && !isShared()) {
+            return false;
+        }
+        runner = Thread.currentThread();
+        return true;
+    }
+
+    /**
+     * 处理器返回后调用，之后的取消不再中断当前线程，并清除执行期间留下的中断标记，避免影响执行器的下一个任务
+     */
+    void finish() {
+        synchronized (this) {
+            runner = null;
+        }
+        Thread.interrupted();
+    }
+
+    /**
+     * 登记异步处理器返回的CompletionStage，调用已被取消时直接取消它
+     *
+     * @param stage 异步处理器返回的CompletionStage
+     */
+    void attach(CompletionStage<?> stage) {
+        synchronized (this) {
+            if (!cancelled || isShared()) {
+                this.stage = stage;
+                return;
+            }
+        }
+        cancel(stage);
+    }
+
+    /**
+     * 取消调用
+     *
+     * @param interrupt 是否中断正在执行的处理器，为false时只跳过尚未开始的处理器并丢弃结果
+     * @return 首次取消时返回true
+     */
+    boolean cancel(boolean interrupt) {
+        CompletionStage<?> target;
+        synchronized (this) {
+            if (cancelled) {
+                return false;
+            }
+            cancelled = true;
+            if (!interrupt || isShared()) {
+                return true;
+            }
+            if (runner != null) {
+                runner.interrupt();
+            }
+            target = stage;
+        }
+        if (target != null) {
+            cancel(target);
+        }
+        return true;
+    }
+
+    /**
+     * 是否还有其他调用在等待本调用的结果，需持有锁调用
+     *
+     * @return 合并执行且有等待者时返回true
+     */
+    private boolean isShared() {
+        return shared != null && shared.getAsBoolean();
+    }
+
+    /**
+     * 取消异步处理器返回的CompletionStage
+     * 只取消实现了Future的CompletionStage，其他实现的toCompletableFuture()可能返回副本，取消副本无法停止处理器；
+     * 只读的CompletionStage（例如minimalCompletionStage()）取消时抛出UnsupportedOperationException。
+     * 无法取消时结果在完成后被丢弃
+     *
+     * @param stage 异步处理器返回的CompletionStage
+     */
+    static void cancel(CompletionStage<?> stage) {
+        if (!(stage instanceof Future)) {
+            return;
+        }
+        try {
+            ((Future<?>) stage).cancel(true);
+        } catch (UnsupportedOperationException ignored) {
+            // 只读的CompletionStage不支持取消
+        }
+    }
+}
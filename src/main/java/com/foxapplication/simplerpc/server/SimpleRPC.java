@@ -1,6 +1,9 @@
 package com.foxapplication.simplerpc.server;
 
 import com.foxapplication.simplerpc.common.APIResponse;
+import com.foxapplication.simplerpc.common.Codec;
+import com.foxapplication.simplerpc.common.Codecs;
+import com.foxapplication.simplerpc.common.DeflateOptions;
 import com.foxapplication.simplerpc.common.HttpResponseUtil;
 import lombok.Getter;
 import lombok.Setter;
@@ -11,6 +14,8 @@ import org.smartboot.http.server.handler.HttpRouteHandler;
 import org.smartboot.http.server.handler.WebSocketRouteHandler;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 
 /**
  * SimpleRPC类，提供了一个简单的RPC服务器实现，支持WebSocket和HTTP协议。
@@ -34,6 +39,7 @@ public class SimpleRPC {
     /**
      * RPC路由器实例。
      */
+    @Getter
     private final RPCRouter rpcRouter = new RPCRouter(this);
 
     /**
@@ -75,6 +81,37 @@ public class SimpleRPC {
     @Setter
     private boolean binaryFirst = false;
 
+    /**
+     * 编解码器的偏好顺序，握手时选择其中第一个客户端也支持的编解码器。
+     * 客户端未参与协商时按binaryFirst使用JSON或BSON。
+     */
+    @Getter
+    @Setter
+    private List<String> codecs = Codecs.DEFAULT_PREFERENCE;
+
+    /**
+     * permessage-deflate压缩配置，为null时不接受客户端的压缩请求。
+     */
+    @Getter
+    @Setter
+    private DeflateOptions compression = null;
+
+    /**
+     * 单条消息允许的最大字节数，分片重组后和解压后的大小均受此限制，超过时以1009关闭连接。
+     */
+    @Getter
+    @Setter
+    private int maxMessageSize = 64 * 1024 * 1024;
+
+    /**
+     * 是否以流式方式接收分片消息。
+     * 开启后分片消息逐片交给编解码器的增量解码器（JSON、Smile与framed支持），不先拼接出完整的消息；
+     * 编解码器不支持增量解码时仍然缓冲重组。
+     */
+    @Getter
+    @Setter
+    private boolean streaming = false;
+
     /**
      * 默认构造函数。
      */
@@ -99,14 +136,24 @@ public class SimpleRPC {
         log.info("SimpleRPC init");
         websocketHandle.route(routeLink, new WebSocketHandlerImpl(this) {
             @Override
-            public void handleTextMessage(WebSocketRequest request, WebSocketResponse response, String data) {
-                rpcRouter.handle(request, response, data);
+            public void handleTextMessage(WebSocketRequest request, WebSocketResponse response, byte[] data) {
+                rpcRouter.handleText(request, response, data);
             }
 
             @Override
             public void handleBinaryMessage(WebSocketRequest request, WebSocketResponse response, byte[] data) {
                 rpcRouter.handleBin(request, response, data);
             }
+
+            @Override
+            public Codec.Decoder newStreamDecoder(WebSocketRequest request, WebSocketResponse response, boolean text) {
+                return streaming ? rpcRouter.newDecoder(response, text) : null;
+            }
+
+            @Override
+            public void handleDecodedMessage(WebSocketRequest request, WebSocketResponse response, APIResponse data) {
+                rpcRouter.handle(request, response, data);
+            }
         });
         httpHandle.route("/", new HttpServerHandler() {
             @Override
@@ -139,11 +186,73 @@ public class SimpleRPC {
         bootstrap.start();
     }
 
+    /**
+     * 向指定会话推送消息。
+     *
+     * @param sessionId 会话ID
+     * @param data 要推送的消息
+     * @return 会话不存在或连接已关闭时返回false
+     * @see RPCRouter#push(String, APIResponse)
+     */
+    public boolean push(String sessionId, APIResponse data) {
+        return rpcRouter.push(sessionId, data);
+    }
+
+    /**
+     * 调用指定会话上的客户端，回应或超时时回调。
+     *
+     * @param sessionId 会话ID
+     * @param data 请求数据
+     * @param rpcServer 回调的RPC服务器实例
+     * @return 会话不存在或连接已关闭时返回false，不会回调
+     * @see RPCRouter#call(String, APIResponse, RPCServer)
+     */
+    public boolean call(String sessionId, APIResponse data, RPCServer rpcServer) {
+        return rpcRouter.call(sessionId, data, rpcServer);
+    }
+
+    /**
+     * 向主题的全部订阅者推送消息。
+     *
+     * @param topic 主题名称
+     * @param data 要推送的消息
+     * @return 写出成功的订阅者数量
+     * @see RPCRouter#publish(String, APIResponse)
+     */
+    public int publish(String topic, APIResponse data) {
+        return rpcRouter.publish(topic, data);
+    }
+
+    /**
+     * 通知全部客户端使路由的调用缓存失效。
+     *
+     * @param key 路由键
+     * @return 写出成功的连接数量
+     * @see RPCRouter#invalidateClients(String)
+     */
+    public int invalidateClients(String key) {
+        return rpcRouter.invalidateClients(key);
+    }
+
+    /**
+     * 通知全部客户端使一次调用的缓存失效。
+     *
+     * @param key 路由键
+     * @param request 请求对象
+     * @param params 请求参数
+     * @return 写出成功的连接数量
+     * @see RPCRouter#invalidateClients(String, Object, Map)
+     */
+    public int invalidateClients(String key, Object request, Map<String, Object> params) {
+        return rpcRouter.invalidateClients(key, request, params);
+    }
+
     /**
      * 停止RPC服务器。
      */
     public void stop() {
         log.info("SimpleRPC stop");
         bootstrap.shutdown();
+        rpcRouter.stop();
     }
 }
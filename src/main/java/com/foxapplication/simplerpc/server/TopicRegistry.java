@@ -0,0 +1,92 @@
+package com.foxapplication.simplerpc.server;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 主题订阅索引。
+ * 每个主题对应一个并发的订阅者集合，会话同时记录自己订阅的主题，连接关闭时只需遍历该会话的订阅即可清理，
+ * 不需要扫描全部主题。订阅者集合为空时移除主题，主题数量不会随历史订阅增长。
+ * 客户端通过{@link com.foxapplication.simplerpc.common.Topics}中的保留路由订阅，服务端也可以直接为会话订阅。
+ */
+public class TopicRegistry {
+
+    /**
+     * 各主题的订阅者，键为主题名称。
+     */
+    private final Map<String, Set<RPCSession>> topics = new ConcurrentHashMap<>();
+
+    /**
+     * 订阅主题
+     *
+     * @param session 订阅者会话
+     * @param topic 主题名称
+     * @return 会话已关闭时返回false
+     */
+    public boolean subscribe(RPCSession session, String topic) {
+        if (!session.isOpen()) {
+            return false;
+        }
+        topics.compute(topic, (key, subscribers) -> {
+            if (subscribers == null) {
+                subscribers = ConcurrentHashMap.newKeySet();
+            }
+            subscribers.add(session);
+            return subscribers;
+        });
+        session.topics.add(topic);
+        // 与连接关闭并发时，关闭的清理可能已经结束，这里补做一次
+        if (!session.isOpen()) {
+            unsubscribe(session, topic);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 取消订阅主题
+     *
+     * @param session 订阅者会话
+     * @param topic 主题名称
+     */
+    public void unsubscribe(RPCSession session, String topic) {
+        session.topics.remove(topic);
+        topics.computeIfPresent(topic, (key, subscribers) -> {
+            subscribers.remove(session);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    /**
+     * 取消会话的全部订阅，连接关闭时调用
+     *
+     * @param session 订阅者会话
+     */
+    public void unsubscribeAll(RPCSession session) {
+        for (String topic : session.topics) {
+            unsubscribe(session, topic);
+        }
+    }
+
+    /**
+     * 获取主题的订阅者
+     *
+     * @param topic 主题名称
+     * @return 只读的订阅者视图，主题不存在时返回空集合
+     */
+    public Set<RPCSession> getSubscribers(String topic) {
+        Set<RPCSession> subscribers = topics.get(topic);
+        return subscribers == null ? Collections.emptySet() : Collections.unmodifiableSet(subscribers);
+    }
+
+    /**
+     * 获取当前有订阅者的主题
+     *
+     * @return 只读的主题名称视图
+     */
+    public Set<String> getTopics() {
+        return Collections.unmodifiableSet(topics.keySet());
+    }
+}
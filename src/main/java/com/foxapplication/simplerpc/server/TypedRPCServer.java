@@ -0,0 +1,27 @@
+package com.foxapplication.simplerpc.server;
+
+import com.foxapplication.simplerpc.common.APIResponse;
+import org.smartboot.http.server.WebSocketRequest;
+import org.smartboot.http.server.WebSocketResponse;
+
+import java.util.Optional;
+
+/**
+ * 类型化的RPC服务器接口，请求消息体直接解码为指定类型，返回值作为响应消息体。
+ *
+ * @param <T> 请求消息体的类型
+ * @param <R> 响应消息体的类型
+ */
+public interface TypedRPCServer<T, R> {
+
+    /**
+     * 处理WebSocket请求的方法。
+     *
+     * @param request  WebSocket请求对象
+     * @param response WebSocket响应对象
+     * @param data     API响应数据，其中的关联标识等头部字段可直接使用
+     * @param body     解码后的请求消息体
+     * @return 一个包含响应消息体的Optional对象，为空时不发送响应
+     */
+    Optional<R> handle(WebSocketRequest request, WebSocketResponse response, APIResponse data, T body);
+}
@@ -0,0 +1,65 @@
+package com.foxapplication.simplerpc.server;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.foxapplication.simplerpc.common.APIResponse;
+import com.foxapplication.simplerpc.common.TypedAPIResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.smartboot.http.server.WebSocketRequest;
+import org.smartboot.http.server.WebSocketResponse;
+
+import java.util.Optional;
+
+/**
+ * 类型化路由，将TypedRPCServer适配为RPCServer。
+ * 请求类型对应的ObjectReader在注册时构建一次，响应类型对应的ObjectWriter由各编解码器按类型缓存，之后每次调用直接复用。
+ *
+ * @param <T> 请求消息体的类型
+ * @param <R> 响应消息体的类型
+ */
+@Slf4j
+class TypedRoute<T, R> implements RPCServer {
+
+    /**
+     * 请求消息体的ObjectReader。
+     */
+    private final ObjectReader reader;
+
+    /**
+     * 响应消息体的类型。
+     */
+    private final JavaType responseType;
+
+    /**
+     * 类型化的处理器。
+     */
+    private final TypedRPCServer<T, R> server;
+
+    /**
+     * 构造类型化路由
+     *
+     * @param requestType 请求消息体的类型
+     * @param responseType 响应消息体的类型
+     * @param server 类型化的处理器
+     */
+    TypedRoute(JavaType requestType, JavaType responseType, TypedRPCServer<T, R> server) {
+        this.reader = APIResponse.getSerializer().readerFor(requestType);
+        this.responseType = responseType;
+        this.server = server;
+    }
+
+    @Override
+    public Optional<APIResponse> handle(WebSocketRequest request, WebSocketResponse response, APIResponse data) {
+        T body;
+        try {
+            body = data.readRequest(reader);
+        } catch (Exception e) {
+            log.debug("Request body conversion failed, key:[{}]", data.getKey(), e);
+            APIResponse badRequest = APIResponse.error("Bad request");
+            badRequest.setStatus(400);
+            return Optional.of(badRequest);
+        }
+        return server.handle(request, response, data, body)
+                .<APIResponse>map(result -> new TypedAPIResponse(result, responseType));
+    }
+}
@@ -1,5 +1,11 @@
 package com.foxapplication.simplerpc.server;
 
+import com.foxapplication.simplerpc.common.APIResponse;
+import com.foxapplication.simplerpc.common.Codec;
+import com.foxapplication.simplerpc.common.Codecs;
+import com.foxapplication.simplerpc.common.DeflateOptions;
+import com.foxapplication.simplerpc.common.MessageTooLargeException;
+import com.foxapplication.simplerpc.common.PerMessageDeflate;
 import lombok.extern.slf4j.Slf4j;
 import org.dromara.hutool.core.text.StrUtil;
 import org.smartboot.http.common.codec.websocket.CloseReason;
@@ -7,18 +13,57 @@ import org.smartboot.http.common.utils.WebSocketUtil;
 import org.smartboot.http.server.WebSocketHandler;
 import org.smartboot.http.server.WebSocketRequest;
 import org.smartboot.http.server.WebSocketResponse;
+import org.smartboot.http.server.impl.Request;
 import org.smartboot.http.server.impl.WebSocketRequestImpl;
 import org.smartboot.http.server.impl.WebSocketResponseImpl;
-import org.smartboot.socket.util.StringUtils;
+import org.smartboot.socket.util.AttachKey;
+import org.smartboot.socket.util.Attachment;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
 @Slf4j
 public class WebSocketHandlerImpl extends WebSocketHandler {
+    /**
+     * 帧头中RSV1位在getFrameRsv()返回值中的掩码
+     */
+    private static final int RSV1 = 0x4;
+    /**
+     * 握手响应头发出前协商的编解码器，认证通过后登记会话时取出
+     */
+    private static final AttachKey<Codec> CODEC = AttachKey.valueOf("SimpleRPC-Codec");
+    /**
+     * 握手响应头发出前协商的压缩状态，认证通过后登记会话时取出
+     */
+    private static final AttachKey<PerMessageDeflate> DEFLATE = AttachKey.valueOf("SimpleRPC-Deflate");
     private final SimpleRPC simpleRPC;
     public WebSocketHandlerImpl(SimpleRPC simpleRPC) {
         this.simpleRPC = simpleRPC;
     }
+    @Override
+    public void willHeaderComplete(WebSocketRequestImpl request, WebSocketResponseImpl response) {
+        Codec codec = onNegotiate(request);
+        if (codec != null) {
+            response.setHeader(Codecs.HEADER, codec.getName());
+        }
+        PerMessageDeflate deflate = onNegotiateCompression(request);
+        if (deflate != null) {
+            response.setHeader(DeflateOptions.HEADER, deflate.response());
+        }
+        // 会话在onHandShake认证通过后才登记，协商结果先保存在请求的附件中
+        Attachment attachment = request.getAttachment();
+        if (attachment == null) {
+            attachment = new Attachment();
+            request.setAttachment(attachment);
+        }
+        if (codec != null) {
+            attachment.put(CODEC, codec);
+        }
+        if (deflate != null) {
+            attachment.put(DEFLATE, deflate);
+        }
+    }
+
     @Override
     public void whenHeaderComplete(WebSocketRequestImpl request, WebSocketResponseImpl response) {
         onHandShake(request, response);
@@ -29,10 +74,8 @@ public class WebSocketHandlerImpl extends WebSocketHandler {
         try {
             switch (request.getFrameOpcode()) {
                 case WebSocketUtil.OPCODE_TEXT:
-                    handleTextMessage(request, response, new String(request.getPayload(), StandardCharsets.UTF_8));
-                    break;
                 case WebSocketUtil.OPCODE_BINARY:
-                    handleBinaryMessage(request, response, request.getPayload());
+                    onDataFrame(request, response);
                     break;
                 case WebSocketUtil.OPCODE_CLOSE:
                     try {
@@ -48,7 +91,11 @@ public class WebSocketHandlerImpl extends WebSocketHandler {
                     handlePong(request, response);
                     break;
                 case WebSocketUtil.OPCODE_CONTINUE:
-                    log.warn("unSupport OPCODE_CONTINUE now,ignore payload: {}", StringUtils.toHexString(request.getPayload()));
+                    try {
+                        onContinuationFrame(request, response);
+                    } finally {
+                        clearContinuationPayload(request);
+                    }
                     break;
                 default:
                     throw new UnsupportedOperationException();
@@ -59,6 +106,155 @@ public class WebSocketHandlerImpl extends WebSocketHandler {
         }
     }
 
+    /**
+     * 处理文本帧或二进制帧，未结束的帧开始重组分片消息
+     *
+     * @param request  WebSocket请求对象
+     * @param response WebSocket响应对象
+     */
+    private void onDataFrame(WebSocketRequest request, WebSocketResponse response) {
+        RPCSession session = simpleRPC.getRpcRouter().getSession(response);
+        int opcode = request.getFrameOpcode();
+        byte[] payload = request.getPayload();
+        if (session != null && session.fragments.isActive()) {
+            closeOnError(response, 1002, "Expected continuation frame", session);
+            return;
+        }
+        PerMessageDeflate deflate = session == null ? null : session.getDeflate();
+        boolean compressed = isCompressed(request);
+        if (compressed && deflate == null) {
+            closeOnError(response, 1002, "Compression not negotiated", session);
+            return;
+        }
+        if (!isFinal(request)) {
+            if (session == null) {
+                closeOnError(response, 1002, "Fragmented message without session", null);
+                return;
+            }
+            Codec.Decoder decoder = newStreamDecoder(request, response, opcode == WebSocketUtil.OPCODE_TEXT);
+            session.fragments.begin(opcode, simpleRPC.getMaxMessageSize(), compressed, deflate, decoder);
+            appendFragment(response, session, payload);
+            return;
+        }
+        if (payload.length > simpleRPC.getMaxMessageSize()) {
+            closeOnError(response, 1009, "Message too big", session);
+            return;
+        }
+        if (compressed) {
+            try {
+                payload = deflate.inflate(payload, simpleRPC.getMaxMessageSize());
+            } catch (MessageTooLargeException e) {
+                closeOnError(response, 1009, "Message too big", session);
+                return;
+            } catch (DataFormatException e) {
+                closeOnError(response, 1007, "Invalid compressed data", session);
+                return;
+            }
+        }
+        deliver(request, response, opcode, payload);
+    }
+
+    /**
+     * 处理后续分片，收到结束帧时交付重组后的消息
+     *
+     * @param request  WebSocket请求对象
+     * @param response WebSocket响应对象
+     */
+    private void onContinuationFrame(WebSocketRequest request, WebSocketResponse response) {
+        RPCSession session = simpleRPC.getRpcRouter().getSession(response);
+        if (session == null || !session.fragments.isActive()) {
+            closeOnError(response, 1002, "Unexpected continuation frame", session);
+            return;
+        }
+        if (isCompressed(request)) {
+            closeOnError(response, 1002, "RSV1 set on continuation frame", session);
+            return;
+        }
+        if (!appendFragment(response, session, request.getPayload()) || !isFinal(request)) {
+            return;
+        }
+        FragmentAssembler fragments = session.fragments;
+        if (fragments.isDiscarded()) {
+            fragments.reset();
+            return;
+        }
+        int opcode = fragments.getOpcode();
+        try {
+            if (fragments.isStreaming()) {
+                handleDecodedMessage(request, response, fragments.finishStreaming());
+            } else {
+                deliver(request, response, opcode, fragments.finishBuffered(session.getDeflate()));
+            }
+        } catch (MessageTooLargeException e) {
+            closeOnError(response, 1009, "Message too big", session);
+        } catch (DataFormatException e) {
+            closeOnError(response, 1007, "Invalid compressed data", session);
+        } catch (IOException e) {
+            log.error("Data conversion failed.", e);
+        }
+    }
+
+    /**
+     * 追加一个分片，失败时放弃这条消息
+     *
+     * @return 追加成功返回true
+     */
+    private boolean appendFragment(WebSocketResponse response, RPCSession session, byte[] payload) {
+        try {
+            session.fragments.append(payload);
+            return true;
+        } catch (MessageTooLargeException e) {
+            closeOnError(response, 1009, "Message too big", session);
+        } catch (DataFormatException e) {
+            closeOnError(response, 1007, "Invalid compressed data", session);
+        } catch (IOException e) {
+            // 格式错误的消息与单帧消息一样丢弃，后续分片按协议继续接收但不再处理
+            log.error("Data conversion failed.", e);
+            session.fragments.discard();
+        }
+        return false;
+    }
+
+    /**
+     * 按帧类型交付完整的消息负载
+     */
+    private void deliver(WebSocketRequest request, WebSocketResponse response, int opcode, byte[] payload) {
+        if (opcode == WebSocketUtil.OPCODE_TEXT) {
+            handleTextMessage(request, response, payload);
+        } else {
+            handleBinaryMessage(request, response, payload);
+        }
+    }
+
+    /**
+     * 协议错误或消息过大时放弃正在重组的消息并关闭连接
+     */
+    private void closeOnError(WebSocketResponse response, int code, String reason, RPCSession session) {
+        log.warn("Close connection:[{}] {}", code, reason);
+        if (session != null) {
+            session.fragments.reset();
+        }
+        response.close(code, reason);
+    }
+
+    /**
+     * smart-http处理完帧后只在帧类型不为CONTINUE时清空负载缓冲区，后续分片会与之前的分片累积，
+     * 结束帧的负载还会残留到下一条消息的首帧中。分片已交给重组状态，这里改写帧类型使缓冲区在本帧后被清空
+     */
+    private static void clearContinuationPayload(WebSocketRequest request) {
+        if (request instanceof WebSocketRequestImpl) {
+            ((WebSocketRequestImpl) request).setFrameOpcode(WebSocketUtil.OPCODE_BINARY);
+        }
+    }
+
+    private static boolean isCompressed(WebSocketRequest request) {
+        return request instanceof WebSocketRequestImpl && (((WebSocketRequestImpl) request).getFrameRsv() & RSV1) != 0;
+    }
+
+    private static boolean isFinal(WebSocketRequest request) {
+        return !(request instanceof WebSocketRequestImpl) || ((WebSocketRequestImpl) request).isFrameFinalFlag();
+    }
+
     /**
      * 处理WebSocket的ping请求
      * 当服务器接收到客户端的ping请求时，此方法将被调用
@@ -85,28 +281,78 @@ public class WebSocketHandlerImpl extends WebSocketHandler {
 
 
     /**
-     * 处理WebSocket握手
+     * 处理WebSocket握手，令牌认证通过后登记连接会话
      *
      * @param request  WebSocket请求对象
      * @param response WebSocket响应对象
      */
     public void onHandShake(WebSocketRequest request, WebSocketResponse response) {
+        String[] tokens = request.getParameters().get("token");
+        String token = tokens == null || tokens.length == 0 ? null : tokens[0];
         if (!StrUtil.isBlank(simpleRPC.getToken())){
-            String token = StrUtil.EMPTY;
-            try {
-                token = request.getParameters().get("token")[0];
-            }catch (Exception e){
+            if (token == null){
                 log.error("Request token is null , from:[{}]",request.getLocalAddress().toString());
             }
-            if (!token.equals(simpleRPC.getToken())){
+            if (!simpleRPC.getToken().equals(token)){
                 log.error("Request token is not match , handShake stop , id:[{}],from:[{}] ",token,request.getLocalAddress().toString());
+                // 认证失败的连接不登记会话，不能通过会话ID被推送或调用
                 response.close(403,"Auth fail");
+                return;
             }
         }
+        Attachment attachment = request instanceof WebSocketRequestImpl ? ((WebSocketRequestImpl) request).getAttachment() : null;
+        Codec codec = attachment == null ? null : attachment.get(CODEC);
+        PerMessageDeflate deflate = attachment == null ? null : attachment.get(DEFLATE);
+        RPCSession session = simpleRPC.getRpcRouter().openSession(request, response, codec, deflate);
+        session.setToken(token);
         log.debug("handShake success");
     }
 
 
+    /**
+     * 协商连接使用的编解码器
+     * 握手响应头发出前调用，客户端在查询参数中按偏好顺序列出支持的编解码器，服务端按自身的偏好顺序选择
+     *
+     * @param request WebSocket请求对象
+     * @return 协商的编解码器，客户端未参与协商或没有共同支持的编解码器时返回null
+     */
+    public Codec onNegotiate(WebSocketRequest request) {
+        String[] offered = request.getParameters().get(Codecs.QUERY_PARAM);
+        if (offered == null || offered.length == 0) {
+            return null;
+        }
+        Codec codec = Codecs.negotiate(offered[0], simpleRPC.getCodecs());
+        log.debug("Negotiated codec:[{}], offered:[{}]", codec == null ? null : codec.getName(), offered[0]);
+        return codec;
+    }
+
+    /**
+     * 协商连接的permessage-deflate压缩
+     * 握手响应头发出前调用，服务端未配置压缩或客户端未请求时不启用
+     *
+     * @param request WebSocket请求对象，此时可以读取握手请求头
+     * @return 协商的压缩状态，不启用压缩时返回null
+     */
+    public PerMessageDeflate onNegotiateCompression(WebSocketRequestImpl request) {
+        DeflateOptions options = simpleRPC.getCompression();
+        if (options == null) {
+            return null;
+        }
+        PerMessageDeflate deflate = options.accept(request.getHeader(DeflateOptions.HEADER));
+        log.debug("Negotiated compression:[{}]", deflate == null ? null : deflate.response());
+        return deflate;
+    }
+
+    /**
+     * 底层连接断开，无论是否收到关闭帧都会调用
+     *
+     * @param request HTTP请求对象
+     */
+    @Override
+    public void onClose(Request request) {
+        simpleRPC.getRpcRouter().closeSession(request.newWebsocketRequest().getResponse());
+    }
+
     /**
      * 连接关闭
      *
@@ -117,6 +363,19 @@ public class WebSocketHandlerImpl extends WebSocketHandler {
         log.debug("close connection");
     }
 
+    /**
+     * 处理UTF-8编码的文本请求消息
+     * 默认转换为字符串后交给{@link #handleTextMessage(WebSocketRequest, WebSocketResponse, String)}处理，
+     * 覆盖此方法可以直接解析原始字节，省去中间字符串
+     *
+     * @param request  WebSocket请求对象
+     * @param response WebSocket响应对象
+     * @param data WebSocket负载的UTF-8字节，每帧独立分配，可以在处理完成后继续引用
+     */
+    public void handleTextMessage(WebSocketRequest request, WebSocketResponse response, byte[] data) {
+        handleTextMessage(request, response, new String(data, StandardCharsets.UTF_8));
+    }
+
     /**
      * 处理字符串请求消息
      *
@@ -128,6 +387,29 @@ public class WebSocketHandlerImpl extends WebSocketHandler {
 
     }
 
+    /**
+     * 创建分片消息的增量解码器，返回null时分片消息先缓冲重组再按完整消息处理
+     *
+     * @param request  WebSocket请求对象
+     * @param response WebSocket响应对象
+     * @param text 是否为文本消息
+     * @return 增量解码器，默认返回null
+     */
+    public Codec.Decoder newStreamDecoder(WebSocketRequest request, WebSocketResponse response, boolean text) {
+        return null;
+    }
+
+    /**
+     * 处理以流式方式解码的分片消息
+     *
+     * @param request  WebSocket请求对象
+     * @param response WebSocket响应对象
+     * @param data 解码后的信封
+     */
+    public void handleDecodedMessage(WebSocketRequest request, WebSocketResponse response, APIResponse data) {
+
+    }
+
     /**
      * 处理二进制请求消息
      *
@@ -0,0 +1,110 @@
+package com.foxapplication.simplerpc.client;
+
+import com.foxapplication.simplerpc.common.APIResponse;
+import com.foxapplication.simplerpc.common.ExecutionMode;
+import com.foxapplication.simplerpc.server.TestServer;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SimpleRPCClientTest {
+
+    private static TestServer server() throws Exception {
+        TestServer server = new TestServer();
+        server.router().addAsyncRouterNode("never", (request, response, data) -> new CompletableFuture<>());
+        return server;
+    }
+
+    private static APIResponse request(String key) {
+        APIResponse data = APIResponse.create();
+        data.setKey(key);
+        data.setUUID(UUID.randomUUID().toString());
+        return data;
+    }
+
+    /**
+     * 停止客户端时挂起的Future与回调立即以503结束，不依赖异步的关闭回调
+     */
+    @Test
+    void stopFailsPendingCalls() throws Exception {
+        assertStopFailsPendingCalls(ExecutionMode.DEFAULT);
+    }
+
+    @Test
+    void stopFailsPendingCallsInVirtualMode() throws Exception {
+        assertStopFailsPendingCalls(ExecutionMode.VIRTUAL);
+    }
+
+    private static void assertStopFailsPendingCalls(ExecutionMode mode) throws Exception {
+        try (TestServer server = server().start()) {
+            SimpleRPCClient client = server.client(c -> c.setExecutionMode(mode));
+            CompletableFuture<APIResponse> future = client.call("never", null, Duration.ofSeconds(30));
+            CompletableFuture<APIResponse> callback = new CompletableFuture<>();
+            client.sendAndCallBack(request("never"), data -> {
+                callback.complete(data);
+                return Optional.empty();
+            });
+            TestServer.await("calls did not arrive", () -> !server.router().getSessions().isEmpty()
+                    && server.router().getSessions().iterator().next().getInFlight() == 2);
+
+            client.stop();
+            assertEquals(503, future.get(1, TimeUnit.SECONDS).getStatus());
+            assertEquals(503, callback.get(1, TimeUnit.SECONDS).getStatus());
+        }
+    }
+
+    /**
+     * 服务端关闭连接时挂起的调用立即以503结束
+     */
+    @Test
+    void serverCloseFailsPendingCalls() throws Exception {
+        TestServer server = server().start();
+        try {
+            SimpleRPCClient client = server.client();
+            CompletableFuture<APIResponse> future = client.call("never", null, Duration.ofSeconds(30));
+            TestServer.await("call did not arrive", () -> !server.router().getSessions().isEmpty()
+                    && server.router().getSessions().iterator().next().getInFlight() == 1);
+            server.server().stop();
+            APIResponse response = future.get(10, TimeUnit.SECONDS);
+            assertEquals(503, response.getStatus());
+            assertEquals("Connection closed", response.getMessage());
+        } finally {
+            server.close();
+        }
+    }
+
+    /**
+     * 自动重连后重新发送幂等路由的挂起调用，非幂等路由的调用以503结束
+     */
+    @Test
+    void reconnectResendsIdempotentCalls() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        try (TestServer server = new TestServer()) {
+            server.router().addAsyncRouterNode("flaky", (request, response, data) -> attempts.getAndIncrement() == 0
+                    ? new CompletableFuture<>()
+                    : CompletableFuture.completedFuture(APIResponse.success("flaky")));
+            server.router().addAsyncRouterNode("never", (request, response, data) -> new CompletableFuture<>());
+            server.start();
+            SimpleRPCClient client = server.client(c -> {
+                c.setAutoReconnect(true);
+                c.idempotent("flaky");
+            });
+            CompletableFuture<APIResponse> idempotent = client.call("flaky", null, Duration.ofSeconds(10));
+            CompletableFuture<APIResponse> other = client.call("never", null, Duration.ofSeconds(10));
+            TestServer.await("calls did not arrive", () -> attempts.get() == 1
+                    && server.router().getSessions().iterator().next().getInFlight() == 2);
+
+            client.getWebSocketClient().close();
+            assertEquals(503, other.get(10, TimeUnit.SECONDS).getStatus());
+            assertEquals(200, idempotent.get(10, TimeUnit.SECONDS).getStatus());
+            assertEquals(2, attempts.get());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.foxapplication.simplerpc.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FramedCodecTest {
+
+    private final FramedCodec codec = Codecs.FRAMED;
+
+    private static APIResponse sample() {
+        APIResponse data = APIResponse.success("你好", Map.of("name", "bob", "age", 3), Map.of("trace", "t-1"));
+        data.setUUID("5f0c3a4e9b2d4c1a8e7f6d5c4b3a2910");
+        data.setKey("user.get");
+        data.setId(42);
+        return data;
+    }
+
+    private static void assertSameEnvelope(APIResponse expected, APIResponse actual) {
+        assertEquals(expected.getUUID(), actual.getUUID());
+        assertEquals(expected.getKey(), actual.getKey());
+        assertEquals(expected.getMessage(), actual.getMessage());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getDeadline(), actual.getDeadline());
+        assertEquals(expected.getRequest(), actual.getRequest());
+        assertEquals(expected.getParams(), actual.getParams());
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        APIResponse data = sample();
+        assertSameEnvelope(data, codec.decode(codec.encode(data)));
+    }
+
+    @Test
+    void roundTripEmptyFields() throws IOException {
+        APIResponse data = APIResponse.create();
+        data.setStatus(null);
+        data.setRequest(null);
+        APIResponse decoded = codec.decode(codec.encode(data));
+        assertNull(decoded.getStatus());
+        assertEquals("", decoded.getUUID());
+        assertEquals("", decoded.getKey());
+        assertNull(decoded.getRequest());
+        assertEquals(0, decoded.getDeadline());
+    }
+
+    @Test
+    void deadlineFlag() throws IOException {
+        APIResponse data = sample();
+        byte[] without = codec.encode(data);
+        assertEquals(0, without[3] & 2);
+
+        data.setDeadline(120000);
+        byte[] with = codec.encode(data);
+        // 截止时间紧跟在24字节的固定头部之后
+        assertEquals(2, with[3] & 2);
+        assertEquals(without.length + 8, with.length);
+        assertArrayEquals(Arrays.copyOfRange(without, 24, without.length), Arrays.copyOfRange(with, 32, with.length));
+        assertSameEnvelope(data, codec.decode(with));
+
+        data.setDeadline(Long.MIN_VALUE);
+        assertSameEnvelope(data, codec.decode(codec.encode(data)));
+    }
+
+    @Test
+    void decodeWithOffset() throws IOException {
+        APIResponse data = sample();
+        data.setDeadline(5000);
+        byte[] frame = codec.encode(data);
+        byte[] padded = new byte[frame.length + 13];
+        Arrays.fill(padded, (byte) 0x7F);
+        System.arraycopy(frame, 0, padded, 7, frame.length);
+        assertSameEnvelope(data, codec.decode(padded, 7, frame.length));
+    }
+
+    @Test
+    void incrementalDecodeAtEverySplit() throws IOException {
+        APIResponse data = sample();
+        data.setDeadline(3000);
+        byte[] frame = codec.encode(data);
+        for (int split = 0; split <= frame.length; split++) {
+            Codec.Decoder decoder = codec.newDecoder();
+            decoder.feed(frame, 0, split);
+            decoder.feed(frame, split, frame.length - split);
+            assertSameEnvelope(data, decoder.finish());
+        }
+    }
+
+    @Test
+    void incrementalDecodeByteByByte() throws IOException {
+        APIResponse data = sample();
+        data.setDeadline(3000);
+        byte[] frame = codec.encode(data);
+        Codec.Decoder decoder = codec.newDecoder();
+        for (int i = 0; i < frame.length; i++) {
+            decoder.feed(frame, i, 1);
+        }
+        assertSameEnvelope(data, decoder.finish());
+    }
+
+    @Test
+    void truncatedFrame() throws IOException {
+        APIResponse data = sample();
+        data.setDeadline(3000);
+        byte[] frame = codec.encode(data);
+        // 固定头部不完整，或截止时间、UUID、key、message尚未全部到达
+        for (int length : new int[]{0, 23, 24, 31, 32, 40}) {
+            assertThrows(IOException.class, () -> codec.decode(frame, 0, length));
+            Codec.Decoder decoder = codec.newDecoder();
+            decoder.feed(frame, 0, length);
+            assertThrows(IOException.class, decoder::finish);
+        }
+    }
+
+    @Test
+    void illegalHeader() throws IOException {
+        byte[] frame = codec.encode(sample());
+        byte[] badMagic = frame.clone();
+        badMagic[0] = 0;
+        assertThrows(IOException.class, () -> codec.decode(badMagic));
+
+        byte[] badVersion = frame.clone();
+        badVersion[2] = 9;
+        assertThrows(IOException.class, () -> codec.decode(badVersion));
+
+        byte[] badLength = frame.clone();
+        badLength[20] = (byte) 0x80;
+        assertThrows(IOException.class, () -> codec.decode(badLength));
+    }
+
+    @Test
+    void keyLengthLimit() throws IOException {
+        APIResponse data = sample();
+        data.setKey("k".repeat(0xFFFF));
+        assertEquals(data.getKey(), codec.decode(codec.encode(data)).getKey());
+        data.setKey("k".repeat(0x10000));
+        assertThrows(IOException.class, () -> codec.encode(data));
+    }
+}
@@ -0,0 +1,72 @@
+package com.foxapplication.simplerpc.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashedWheelTimerTest {
+
+    /**
+     * 大量任务在同一刻度到期时，默认执行器只使用固定数量的线程
+     */
+    @Test
+    void expiredTasksRunOnBoundedThreads() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 64, "Test-Timer");
+        int count = 10000;
+        CountDownLatch done = new CountDownLatch(count);
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < count; i++) {
+            timer.newTimeout(() -> {
+                threads.add(Thread.currentThread());
+                done.countDown();
+            }, 20 + i % 3, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(threads.size() <= Math.max(2, Runtime.getRuntime().availableProcessors()), "threads " + threads.size());
+        assertEquals(0, timer.getPendingCount());
+    }
+
+    /**
+     * 阻塞的任务只占用执行器的一个线程，之后到期的任务仍按时执行
+     */
+    @Test
+    void blockingTaskDoesNotDelayLaterTicks() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 64, "Test-Timer");
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch later = new CountDownLatch(1);
+        timer.newTimeout(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+        timer.newTimeout(later::countDown, 50, TimeUnit.MILLISECONDS);
+        try {
+            assertTrue(later.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void cancelledTasksNeverRun() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 64, "Test-Timer");
+        AtomicInteger ran = new AtomicInteger();
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(ran::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        Thread.sleep(100);
+        assertEquals(0, ran.get());
+        assertTrue(timeout.isCancelled());
+        assertEquals(0, timer.getPendingCount());
+    }
+}
@@ -0,0 +1,236 @@
+package com.foxapplication.simplerpc.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongPendingTableTest {
+
+    /**
+     * 等待条件成立，超时时断言失败
+     */
+    private static void await(String message, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, message);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void claimOnce() {
+        LongPendingTable<String> table = new LongPendingTable<>();
+        long id = table.put("a", 60000);
+        assertEquals(1, table.size());
+        assertEquals("a", table.claim(id));
+        assertNull(table.claim(id));
+        assertNull(table.claim(0));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    void claimedEntriesNeverExpire() throws InterruptedException {
+        LongPendingTable<String> table = new LongPendingTable<>();
+        AtomicInteger expired = new AtomicInteger();
+        table.setCallback((id, value) -> expired.incrementAndGet());
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            ids.add(table.put("v" + i, 20));
+        }
+        for (long id : ids) {
+            table.claim(id);
+        }
+        Thread.sleep(200);
+        assertEquals(0, expired.get());
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    void unclaimedEntriesExpire() throws InterruptedException {
+        LongPendingTable<Integer> table = new LongPendingTable<>();
+        Set<Long> expired = ConcurrentHashMap.newKeySet();
+        table.setCallback((id, value) -> expired.add(id));
+        for (int i = 0; i < 1000; i++) {
+            table.put(i, 20);
+        }
+        await("entries did not expire", () -> expired.size() == 1000);
+        assertEquals(0, table.size());
+    }
+
+    /**
+     * 超时与取走竞争同一批挂起项，每一项只能被投递一次
+     */
+    @Test
+    void claimRacesExpiry() throws Exception {
+        LongPendingTable<Long> table = new LongPendingTable<>();
+        Map<Long, Integer> delivered = new ConcurrentHashMap<>();
+        table.setCallback((id, value) -> delivered.merge(id, 1, Integer::sum));
+        int threads = 4;
+        int perThread = 20000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    long[] batch = new long[200];
+                    for (int i = 0; i < perThread; i += batch.length) {
+                        for (int j = 0; j < batch.length; j++) {
+                            batch[j] = table.put((long) j, 10);
+                        }
+                        // 在到期的刻度附近取走，一部分挂起项已被超时取走
+                        Thread.sleep(i / batch.length % 20);
+                        for (long id : batch) {
+                            if (table.claim(id) != null) {
+                                delivered.merge(id, 1, Integer::sum);
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        await("entries were not delivered", () -> delivered.size() == threads * perThread);
+        Thread.sleep(100);
+        assertEquals(threads * perThread, delivered.size());
+        assertTrue(delivered.values().stream().allMatch(count -> count == 1), "an entry was delivered twice");
+        assertEquals(0, table.size());
+    }
+
+    /**
+     * 多个线程同时取走同一批挂起项，每一项只能被一个线程取到
+     */
+    @Test
+    void concurrentClaims() throws Exception {
+        LongPendingTable<Long> table = new LongPendingTable<>();
+        int count = 50000;
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = table.put((long) i, 60000);
+        }
+        int threads = 4;
+        AtomicInteger claimed = new AtomicInteger();
+        Set<Long> seen = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t;
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    // 各线程从不同位置开始，遍历全部ID
+                    for (int i = 0; i < count; i++) {
+                        long id = ids[(i + offset * count / threads) % count];
+                        if (table.claim(id) != null) {
+                            claimed.incrementAndGet();
+                            if (!seen.add(id)) {
+                                duplicates.incrementAndGet();
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(count, claimed.get());
+        assertEquals(0, duplicates.get());
+        assertEquals(0, table.size());
+    }
+
+    /**
+     * 按条件批量取出与单个取走并发进行，每一项只能被取出一次
+     */
+    @Test
+    void claimIfRacesClaim() throws Exception {
+        LongPendingTable<Long> table = new LongPendingTable<>();
+        int count = 20000;
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = table.put((long) i, 60000);
+        }
+        AtomicInteger claimed = new AtomicInteger();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> single = pool.submit(() -> {
+                for (long id : ids) {
+                    if (table.claim(id) != null) {
+                        claimed.incrementAndGet();
+                    }
+                }
+            });
+            int bulk = table.claimIf(value -> true, (id, value) -> claimed.incrementAndGet());
+            single.get(30, TimeUnit.SECONDS);
+            assertTrue(bulk <= count);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(count, claimed.get());
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    void claimIfSelectsMatchingEntries() {
+        LongPendingTable<Integer> table = new LongPendingTable<>();
+        for (int i = 0; i < 100; i++) {
+            table.put(i, 60000);
+        }
+        List<Integer> even = new ArrayList<>();
+        assertEquals(50, table.claimIf(value -> value % 2 == 0, (id, value) -> even.add(value)));
+        assertTrue(even.stream().allMatch(value -> value % 2 == 0));
+        assertEquals(50, table.size());
+        table.shutdown();
+    }
+
+    /**
+     * 大量挂起项触发分段扩容和回移删除后，剩余的项仍能按ID取到
+     */
+    @Test
+    void resizeAndBackwardShiftDelete() {
+        LongPendingTable<Long> table = new LongPendingTable<>();
+        int count = 10000;
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = table.put((long) i, 60000);
+        }
+        for (int i = 0; i < count; i += 3) {
+            assertEquals((long) i, table.claim(ids[i]));
+        }
+        for (int i = 0; i < count; i++) {
+            if (i % 3 != 0) {
+                assertEquals((long) i, table.claim(ids[i]));
+            }
+        }
+        assertEquals(0, table.size());
+        table.shutdown();
+    }
+}
@@ -0,0 +1,129 @@
+package com.foxapplication.simplerpc.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PerMessageDeflateTest {
+
+    private static byte[] message(int i) {
+        return ("{\"key\":\"user.get\",\"status\":200,\"request\":{\"name\":\"bob\",\"index\":" + i + "}}").repeat(8).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] deflate(PerMessageDeflate deflate, byte[] data) {
+        try (BufferPool.Buffer out = BufferPool.acquire()) {
+            deflate.deflate(data, 0, data.length, out);
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * 不保留上下文时每条消息独立压缩与解压
+     */
+    @Test
+    void roundTripWithoutContextTakeover() throws Exception {
+        PerMessageDeflate deflate = new PerMessageDeflate(0, 6, true, true);
+        for (int i = 0; i < 20; i++) {
+            byte[] data = message(i);
+            byte[] compressed = deflate(deflate, data);
+            assertTrue(compressed.length < data.length);
+            assertArrayEquals(data, deflate.inflate(compressed, Integer.MAX_VALUE));
+        }
+        // 独立压缩的消息可以交给任意一个连接解压
+        byte[] data = message(99);
+        assertArrayEquals(data, new PerMessageDeflate(0, 6, true, true).inflate(deflate(deflate, data), Integer.MAX_VALUE));
+    }
+
+    /**
+     * 保留上下文时按压缩顺序解压，后续消息引用之前消息的内容而变得更小
+     */
+    @Test
+    void roundTripWithContextTakeover() throws Exception {
+        PerMessageDeflate sender = new PerMessageDeflate(0, 6, false, false);
+        PerMessageDeflate receiver = new PerMessageDeflate(0, 6, false, false);
+        int first = 0;
+        int last = 0;
+        for (int i = 0; i < 20; i++) {
+            byte[] data = message(i);
+            byte[] compressed = deflate(sender, data);
+            if (i == 0) {
+                first = compressed.length;
+            }
+            last = compressed.length;
+            assertArrayEquals(data, receiver.inflate(compressed, Integer.MAX_VALUE));
+        }
+        assertTrue(last < first, "first " + first + " last " + last);
+        sender.close();
+        receiver.close();
+    }
+
+    /**
+     * 不保留上下文的连接共用线程级的Deflater，不同压缩级别的连接交替压缩时每条消息仍然完整
+     */
+    @Test
+    void levelChangeOnSharedDeflater() throws Exception {
+        for (int level : new int[]{1, 9, 1, 6, 6}) {
+            PerMessageDeflate deflate = new PerMessageDeflate(0, level, true, true);
+            byte[] data = message(level);
+            assertArrayEquals(data, deflate.inflate(deflate(deflate, data), Integer.MAX_VALUE), "level " + level);
+        }
+    }
+
+    @Test
+    void compressedOutputHasNoTail() {
+        byte[] compressed = deflate(new PerMessageDeflate(0, 6, true, true), message(1));
+        byte[] tail = Arrays.copyOfRange(compressed, compressed.length - 4, compressed.length);
+        assertFalse(Arrays.equals(new byte[]{0, 0, (byte) 0xff, (byte) 0xff}, tail));
+    }
+
+    @Test
+    void inflateLimit() {
+        PerMessageDeflate deflate = new PerMessageDeflate(0, 6, true, true);
+        byte[] data = new byte[100000];
+        byte[] compressed = deflate(deflate, data);
+        assertThrows(MessageTooLargeException.class, () -> deflate.inflate(compressed, 99999));
+    }
+
+    @Test
+    void corruptData() {
+        PerMessageDeflate deflate = new PerMessageDeflate(0, 6, true, true);
+        assertThrows(DataFormatException.class, () -> deflate.inflate(new byte[]{(byte) 0xff, (byte) 0xff, 1, 2, 3}, 1000));
+    }
+
+    /**
+     * 分片到达的压缩消息逐片解压，结果与整条解压相同
+     */
+    @Test
+    void inflateFragments() throws Exception {
+        for (boolean takeover : new boolean[]{false, true}) {
+            PerMessageDeflate sender = new PerMessageDeflate(0, 6, !takeover, !takeover);
+            PerMessageDeflate receiver = new PerMessageDeflate(0, 6, !takeover, !takeover);
+            for (int i = 0; i < 5; i++) {
+                byte[] data = message(i);
+                byte[] compressed = deflate(sender, data);
+                PerMessageDeflate.Inflation inflation = receiver.beginInflate();
+                try (BufferPool.Buffer out = BufferPool.acquire()) {
+                    for (int offset = 0; offset < compressed.length; offset += 7) {
+                        inflation.update(Arrays.copyOfRange(compressed, offset, Math.min(compressed.length, offset + 7)), Integer.MAX_VALUE, out);
+                    }
+                    inflation.finish(Integer.MAX_VALUE, out);
+                    assertArrayEquals(data, out.toByteArray());
+                }
+            }
+        }
+    }
+
+    @Test
+    void threshold() {
+        PerMessageDeflate deflate = new PerMessageDeflate(256, 6, true, true);
+        assertFalse(deflate.shouldCompress(255));
+        assertTrue(deflate.shouldCompress(256));
+    }
+}
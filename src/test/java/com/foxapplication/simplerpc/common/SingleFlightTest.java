@@ -0,0 +1,92 @@
+package com.foxapplication.simplerpc.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private static APIResponse call(long id) {
+        APIResponse data = APIResponse.create();
+        data.setKey("route");
+        data.setId(id);
+        return data;
+    }
+
+    private static RequestKey key(String request) throws Exception {
+        return RequestKey.of("route", request, null);
+    }
+
+    @Test
+    void waitersShareResult() throws Exception {
+        SingleFlight flight = new SingleFlight();
+        List<APIResponse> replies = new ArrayList<>();
+        Consumer<APIResponse> leader = flight.join(key("a"), call(1), replies::add);
+        assertNotNull(leader);
+        assertFalse(flight.hasWaiters(key("a")));
+        assertNull(flight.join(key("a"), call(2), replies::add));
+        assertNull(flight.join(key("a"), call(3), replies::add));
+        assertTrue(flight.hasWaiters(key("a")));
+        assertEquals(1, flight.getInFlight());
+
+        leader.accept(APIResponse.success("done", "value").correlate(call(1)));
+        assertEquals(3, replies.size());
+        for (int i = 0; i < replies.size(); i++) {
+            APIResponse reply = replies.get(i);
+            assertEquals(i + 1, reply.getId());
+            assertEquals("value", reply.getRequest());
+        }
+        assertNotSame(replies.get(0), replies.get(1));
+        assertEquals(2, flight.getSharedCount());
+        assertEquals(0, flight.getInFlight());
+    }
+
+    @Test
+    void differentKeysRunSeparately() throws Exception {
+        SingleFlight flight = new SingleFlight();
+        assertNotNull(flight.join(key("a"), call(1), reply -> { }));
+        assertNotNull(flight.join(key("b"), call(2), reply -> { }));
+        assertEquals(2, flight.getInFlight());
+    }
+
+    /**
+     * 完成后到达的相同调用重新执行，不会拿到上一次的结果
+     */
+    @Test
+    void completedCallIsNotCached() throws Exception {
+        SingleFlight flight = new SingleFlight();
+        Consumer<APIResponse> first = flight.join(key("a"), call(1), reply -> { });
+        first.accept(APIResponse.success("done"));
+        assertNotNull(flight.join(key("a"), call(2), reply -> { }));
+        assertEquals(0, flight.getSharedCount());
+    }
+
+    /**
+     * 执行的调用没有结果时，执行者收到null，等待者收到各自关联的503
+     */
+    @Test
+    void noResultAnswersWaitersWith503() throws Exception {
+        SingleFlight flight = new SingleFlight();
+        List<APIResponse> replies = new ArrayList<>();
+        Consumer<APIResponse> leader = flight.join(key("a"), call(1), replies::add);
+        flight.join(key("a"), call(2), replies::add);
+        flight.join(key("a"), call(3), replies::add);
+
+        leader.accept(null);
+        assertEquals(3, replies.size());
+        assertNull(replies.get(0));
+        for (int i = 1; i < replies.size(); i++) {
+            assertEquals(503, replies.get(i).getStatus());
+            assertEquals(i + 1, replies.get(i).getId());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.foxapplication.simplerpc.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimedCacheTest {
+
+    @Test
+    void claimOnce() {
+        TimedCache<String, String> cache = new TimedCache<>();
+        cache.put("a", "1", 60000);
+        assertEquals("1", cache.get("a"));
+        assertEquals("1", cache.claim("a"));
+        assertNull(cache.claim("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void unclaimedEntriesExpire() throws InterruptedException {
+        TimedCache<Integer, Integer> cache = new TimedCache<>();
+        Set<Integer> expired = ConcurrentHashMap.newKeySet();
+        cache.setCallback((key, value) -> expired.add(key));
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i, 20);
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (expired.size() < 1000) {
+            assertTrue(System.nanoTime() < deadline, "entries did not expire");
+            Thread.sleep(5);
+        }
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * 放入后立即被其他线程取走的项，过期任务总能被取消，不会留在时间轮中直到到期
+     */
+    @Test
+    void claimRacingPutCancelsTimeout() throws Exception {
+        HashedWheelTimer timer = HashedWheelTimer.shared();
+        int before = timer.getPendingCount();
+        TimedCache<Integer, Integer> cache = new TimedCache<>();
+        int count = 100000;
+        AtomicInteger claimed = new AtomicInteger();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> claimer = pool.submit(() -> {
+                for (int i = 0; i < count; i++) {
+                    while (cache.claim(i) == null) {
+                        Thread.onSpinWait();
+                    }
+                    claimed.incrementAndGet();
+                }
+            });
+            for (int i = 0; i < count; i++) {
+                cache.put(i, i, 60000);
+            }
+            claimer.get(30, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(count, claimed.get());
+        assertEquals(0, cache.size());
+        assertEquals(before, timer.getPendingCount());
+    }
+}
@@ -0,0 +1,137 @@
+package com.foxapplication.simplerpc.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TinyLfuCacheTest {
+
+    @Test
+    void getAndPut() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(100, 0);
+        assertNull(cache.get("a"));
+        cache.put("a", "1");
+        assertEquals("1", cache.get("a"));
+        cache.put("a", "2");
+        assertEquals("2", cache.get("a"));
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void weightNeverExceedsLimit() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(1000, 0, String::length);
+        for (int i = 0; i < 10000; i++) {
+            cache.put(i, "x".repeat(1 + i % 50));
+            assertTrue(cache.getWeightedSize() <= 1000, "weighted size " + cache.getWeightedSize());
+        }
+        assertTrue(cache.getEvictionCount() > 0);
+    }
+
+    @Test
+    void oversizedValueIsNotCached() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, 0, String::length);
+        cache.put("small", "12345");
+        cache.put("big", "12345678901");
+        assertNull(cache.get("big"));
+        assertEquals("12345", cache.get("small"));
+        // 替换为超过上限的值时旧值同样失效
+        cache.put("small", "12345678901");
+        assertNull(cache.get("small"));
+        assertEquals(0, cache.getWeightedSize());
+    }
+
+    /**
+     * 只访问一次的大量键扫过缓存时，频繁访问的热点键不会被冲掉
+     */
+    @Test
+    void scanDoesNotFlushHotEntries() {
+        TinyLfuCache<String, Integer> cache = new TinyLfuCache<>(100, 0);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 50; i++) {
+                if (cache.get("hot" + i) == null) {
+                    cache.put("hot" + i, i);
+                }
+            }
+        }
+        // 扫描期间热点键仍被持续访问
+        for (int i = 0; i < 10000; i++) {
+            String key = "scan" + i;
+            if (cache.get(key) == null) {
+                cache.put(key, i);
+            }
+            String hot = "hot" + i % 50;
+            if (cache.get(hot) == null) {
+                cache.put(hot, i % 50);
+            }
+        }
+        int retained = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get("hot" + i) != null) {
+                retained++;
+            }
+        }
+        assertEquals(50, retained);
+        assertTrue(cache.size() <= 100);
+    }
+
+    /**
+     * 主区已满时，访问频率不高于主区最久未访问项的候选项被拒绝，频率更高的候选项替换它
+     */
+    @Test
+    void admissionByFrequency() {
+        TinyLfuCache<String, Integer> cache = new TinyLfuCache<>(100, 0);
+        for (int i = 0; i < 100; i++) {
+            cache.put("main" + i, i);
+        }
+        for (int i = 0; i < 100; i++) {
+            cache.get("main" + i);
+        }
+        long evictions = cache.getEvictionCount();
+
+        // 只写入一次的候选项被挤出窗口后无法进入主区
+        cache.put("cold", -1);
+        cache.put("cold-next", -2);
+        assertNull(cache.get("cold"));
+        assertTrue(cache.getEvictionCount() > evictions);
+
+        // 多次访问过的候选项被挤出窗口后替换主区中的冷项
+        for (int i = 0; i < 5; i++) {
+            cache.get("warm");
+        }
+        cache.put("warm", 1);
+        cache.put("warm-next", 2);
+        assertEquals(1, cache.get("warm"));
+    }
+
+    @Test
+    void entriesExpire() throws InterruptedException {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(100, 50);
+        cache.put("a", "1");
+        assertEquals("1", cache.get("a"));
+        Thread.sleep(100);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void invalidate() {
+        TinyLfuCache<String, Integer> cache = new TinyLfuCache<>(1000, 0);
+        for (int i = 0; i < 200; i++) {
+            cache.put("k" + i, i);
+        }
+        int before = cache.size();
+        cache.invalidate("k199");
+        assertNull(cache.get("k199"));
+        int removed = cache.invalidateIf(key -> key.endsWith("0"));
+        assertTrue(removed > 0);
+        assertEquals(before - 1 - removed, cache.size());
+        assertEquals(cache.size(), cache.getWeightedSize());
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeightedSize());
+    }
+}
@@ -0,0 +1,43 @@
+package com.foxapplication.simplerpc.server;
+
+import com.foxapplication.simplerpc.client.SimpleRPCClient;
+import com.foxapplication.simplerpc.common.APIResponse;
+import com.foxapplication.simplerpc.common.DeflateOptions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CompressionTest {
+
+    /**
+     * 两端协商permessage-deflate后，大小消息在保留与不保留上下文时都能正确往返
+     */
+    @Test
+    void roundTrip() throws Exception {
+        for (boolean takeover : new boolean[]{false, true}) {
+            try (TestServer server = new TestServer()) {
+                server.server().setCompression(DeflateOptions.create().serverNoContextTakeover(!takeover));
+                server.router().addRouterNode("echo", (request, response, data) -> Optional.of(APIResponse.success("echo", data.getRequest())));
+                server.start();
+                for (List<String> codecs : List.of(List.<String>of(), List.of("framed"))) {
+                    SimpleRPCClient client = server.client(c -> {
+                        c.setCodecs(codecs);
+                        c.setCompression(DeflateOptions.create().serverNoContextTakeover(!takeover));
+                    });
+                    for (int i = 0; i < 50; i++) {
+                        String text = ("field" + i + ",").repeat(i % 3 == 0 ? 2 : 500);
+                        APIResponse response = client.call("echo", Map.of("text", text, "i", i), Duration.ofSeconds(10)).get(10, TimeUnit.SECONDS);
+                        assertEquals(200, response.getStatus());
+                        assertEquals(text, ((Map<?, ?>) response.getRequest()).get("text"), "takeover " + takeover + " codecs " + codecs);
+                    }
+                }
+            }
+        }
+    }
+}
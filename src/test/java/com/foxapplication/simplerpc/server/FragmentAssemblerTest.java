@@ -0,0 +1,138 @@
+package com.foxapplication.simplerpc.server;
+
+import com.foxapplication.simplerpc.common.APIResponse;
+import com.foxapplication.simplerpc.common.BufferPool;
+import com.foxapplication.simplerpc.common.Codec;
+import com.foxapplication.simplerpc.common.Codecs;
+import com.foxapplication.simplerpc.common.MessageTooLargeException;
+import com.foxapplication.simplerpc.common.PerMessageDeflate;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FragmentAssemblerTest {
+
+    private static final int BINARY = 2;
+
+    private static APIResponse sample() {
+        APIResponse data = APIResponse.success("ok", Map.of("text", "x".repeat(5000)));
+        data.setKey("echo");
+        data.setId(7);
+        return data;
+    }
+
+    private static byte[] deflate(PerMessageDeflate deflate, byte[] data) {
+        try (BufferPool.Buffer out = BufferPool.acquire()) {
+            deflate.deflate(data, 0, data.length, out);
+            return out.toByteArray();
+        }
+    }
+
+    private static void appendInChunks(FragmentAssembler assembler, byte[] data, int chunk) throws Exception {
+        for (int offset = 0; offset < data.length; offset += chunk) {
+            assembler.append(Arrays.copyOfRange(data, offset, Math.min(data.length, offset + chunk)));
+        }
+    }
+
+    @Test
+    void bufferedReassembly() throws Exception {
+        byte[] data = Codecs.FRAMED.encode(sample());
+        FragmentAssembler assembler = new FragmentAssembler();
+        assembler.begin(BINARY, 1 << 20, false, null, null);
+        assertTrue(assembler.isActive());
+        assertFalse(assembler.isStreaming());
+        appendInChunks(assembler, data, 1000);
+        assertArrayEquals(data, assembler.finishBuffered(null));
+        assertFalse(assembler.isActive());
+    }
+
+    @Test
+    void bufferedCompressedReassembly() throws Exception {
+        PerMessageDeflate deflate = new PerMessageDeflate(0, 6, true, true);
+        byte[] data = Codecs.FRAMED.encode(sample());
+        FragmentAssembler assembler = new FragmentAssembler();
+        assembler.begin(BINARY, 1 << 20, true, deflate, null);
+        appendInChunks(assembler, deflate(deflate, data), 50);
+        assertArrayEquals(data, assembler.finishBuffered(deflate));
+    }
+
+    @Test
+    void streamingReassembly() throws Exception {
+        for (boolean compressed : new boolean[]{false, true}) {
+            PerMessageDeflate deflate = new PerMessageDeflate(0, 6, true, true);
+            byte[] data = Codecs.FRAMED.encode(sample());
+            Codec.Decoder decoder = Codecs.FRAMED.newDecoder();
+            FragmentAssembler assembler = new FragmentAssembler();
+            assembler.begin(BINARY, 1 << 20, compressed, deflate, decoder);
+            assertTrue(assembler.isStreaming());
+            appendInChunks(assembler, compressed ? deflate(deflate, data) : data, 100);
+            APIResponse decoded = assembler.finishStreaming();
+            assertEquals("echo", decoded.getKey());
+            assertEquals(7, decoded.getId());
+            assertEquals(sample().getRequest(), decoded.getRequest());
+            assertFalse(assembler.isActive());
+        }
+    }
+
+    /**
+     * 分片累计超过上限时立即抛出，不必等到结束帧
+     */
+    @Test
+    void sizeLimit() throws Exception {
+        FragmentAssembler assembler = new FragmentAssembler();
+        assembler.begin(BINARY, 1000, false, null, null);
+        assembler.append(new byte[600]);
+        assertThrows(MessageTooLargeException.class, () -> assembler.append(new byte[401]));
+
+        assembler.reset();
+        byte[] data = Codecs.FRAMED.encode(sample());
+        assembler.begin(BINARY, 1000, false, null, Codecs.FRAMED.newDecoder());
+        assembler.append(Arrays.copyOfRange(data, 0, 1000));
+        assertThrows(MessageTooLargeException.class, () -> assembler.append(Arrays.copyOfRange(data, 1000, 1001)));
+    }
+
+    /**
+     * 压缩消息按解压后的大小计算上限，压缩比很高的小分片同样被拒绝
+     */
+    @Test
+    void sizeLimitAfterInflate() throws Exception {
+        PerMessageDeflate deflate = new PerMessageDeflate(0, 6, true, true);
+        byte[] compressed = deflate(deflate, new byte[100000]);
+        assertTrue(compressed.length < 1000);
+
+        FragmentAssembler buffered = new FragmentAssembler();
+        buffered.begin(BINARY, 10000, true, deflate, null);
+        buffered.append(compressed);
+        assertThrows(MessageTooLargeException.class, () -> buffered.finishBuffered(deflate));
+
+        FragmentAssembler streaming = new FragmentAssembler();
+        streaming.begin(BINARY, 10000, true, deflate, Codecs.FRAMED.newDecoder());
+        assertThrows(MessageTooLargeException.class, () -> {
+            streaming.append(compressed);
+            streaming.finishStreaming();
+        });
+        streaming.reset();
+    }
+
+    @Test
+    void discardedMessageIgnoresFragments() throws Exception {
+        FragmentAssembler assembler = new FragmentAssembler();
+        assembler.begin(BINARY, 1000, false, null, null);
+        assembler.append(new byte[10]);
+        assembler.discard();
+        assertTrue(assembler.isActive());
+        assertTrue(assembler.isDiscarded());
+        assertEquals(BINARY, assembler.getOpcode());
+        assembler.append(new byte[5000]);
+        assembler.reset();
+        assertFalse(assembler.isActive());
+        assertFalse(assembler.isDiscarded());
+    }
+}
@@ -0,0 +1,74 @@
+package com.foxapplication.simplerpc.server;
+
+import com.foxapplication.simplerpc.client.SimpleRPCClient;
+import com.foxapplication.simplerpc.common.APIResponse;
+import com.foxapplication.simplerpc.common.Codec;
+import com.foxapplication.simplerpc.common.Codecs;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FragmentTest {
+
+    /**
+     * 以分片发出调用
+     */
+    private static CompletableFuture<APIResponse> sendFragmented(SimpleRPCClient client, int length) throws Exception {
+        CompletableFuture<APIResponse> future = new CompletableFuture<>();
+        APIResponse data = APIResponse.success("x", Map.of("s", "a".repeat(length))).createUUID();
+        data.setKey("len");
+        client.addSendCallBack(data.getUUID(), response -> {
+            future.complete(response);
+            return Optional.empty();
+        });
+        Codec codec = client.getCodec() == null ? Codecs.JSON : client.getCodec();
+        byte[] bytes = codec.encode(data);
+        Opcode opcode = codec.isBinary() ? Opcode.BINARY : Opcode.TEXT;
+        int chunk = 16384;
+        try {
+            for (int i = 0; i < bytes.length; i += chunk) {
+                ByteBuffer fragment = ByteBuffer.wrap(Arrays.copyOfRange(bytes, i, Math.min(bytes.length, i + chunk)));
+                client.getWebSocketClient().sendFragmentedFrame(opcode, fragment, i + chunk >= bytes.length);
+            }
+        } catch (WebsocketNotConnectedException e) {
+            // 服务端在消息结束前关闭了连接
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 分片消息在缓冲与流式模式下重组后正常处理，超过上限时关闭连接
+     */
+    @Test
+    void reassemblyAndSizeLimit() throws Exception {
+        for (boolean streaming : new boolean[]{false, true}) {
+            try (TestServer server = new TestServer()) {
+                server.server().setStreaming(streaming);
+                server.server().setMaxMessageSize(1 << 20);
+                server.router().addRouterNode("len", (request, response, data) ->
+                        Optional.of(APIResponse.success("len", ((String) ((Map<?, ?>) data.getRequest()).get("s")).length())));
+                server.start();
+                for (List<String> codecs : List.of(List.<String>of(), List.of("framed"))) {
+                    SimpleRPCClient client = server.client(c -> c.setCodecs(codecs));
+                    APIResponse response = sendFragmented(client, 100000).get(10, TimeUnit.SECONDS);
+                    assertEquals(200, response.getStatus());
+                    assertEquals(100000, response.getRequest());
+
+                    sendFragmented(client, 2000000);
+                    TestServer.await("oversized message did not close the connection", () -> client.getWebSocketClient().isClosed());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.foxapplication.simplerpc.server;
+
+import com.foxapplication.simplerpc.client.SimpleRPCClient;
+import com.foxapplication.simplerpc.common.APIResponse;
+import com.foxapplication.simplerpc.common.AdaptiveLimiter;
+import com.foxapplication.simplerpc.common.RouteOptions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RPCRouterAdmissionTest {
+
+    private static int status(CompletableFuture<APIResponse> call) throws Exception {
+        return call.get(10, TimeUnit.SECONDS).getStatus();
+    }
+
+    private static RPCSession session(TestServer server) {
+        return server.router().getSessions().iterator().next();
+    }
+
+    /**
+     * 处理器抛出Error时回复500，调用名额与并发许可全部归还
+     */
+    @Test
+    void errorsReleaseSlots() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(2, 2, 2);
+        AtomicInteger nullCalls = new AtomicInteger();
+        try (TestServer server = new TestServer()) {
+            server.router().setMaxInFlightPerSession(2);
+            server.router().setConcurrencyLimiter(limiter);
+            server.router().addRouterNode("error", (request, response, data) -> {
+                throw new AssertionError("boom");
+            }, RouteOptions.create().maxConcurrency(1));
+            server.router().addAsyncRouterNode("asyncError", (request, response, data) -> {
+                throw new NoClassDefFoundError("boom");
+            }, RouteOptions.create().maxConcurrency(1));
+            server.router().addRouterNode("nullResult", (request, response, data) -> {
+                nullCalls.incrementAndGet();
+                return null;
+            });
+            server.router().addRouterNode("ok", (request, response, data) -> Optional.of(APIResponse.success("ok")));
+            server.start();
+            SimpleRPCClient client = server.client();
+            for (int i = 0; i < 10; i++) {
+                assertEquals(500, status(client.call("error", i, Duration.ofSeconds(10))));
+                assertEquals(500, status(client.call("asyncError", i, Duration.ofSeconds(10))));
+            }
+            assertEquals(200, status(client.call("ok", null, Duration.ofSeconds(10))));
+            TestServer.await("slots were not released", () -> session(server).getInFlight() == 0 && limiter.getInFlight() == 0);
+
+            // 没有结果的调用不回复，名额同样归还
+            for (int i = 1; i <= 3; i++) {
+                int calls = i;
+                client.call("nullResult", i, Duration.ofSeconds(10));
+                TestServer.await("slots were not released",
+                        () -> nullCalls.get() == calls && session(server).getInFlight() == 0 && limiter.getInFlight() == 0);
+            }
+            assertEquals(200, status(client.call("ok", null, Duration.ofSeconds(10))));
+        }
+    }
+
+    /**
+     * 连接上进行中的调用达到上限时以429拒绝，完成后恢复
+     */
+    @Test
+    void perSessionLimit() throws Exception {
+        CompletableFuture<APIResponse> release = new CompletableFuture<>();
+        try (TestServer server = new TestServer()) {
+            server.router().setMaxInFlightPerSession(2);
+            server.router().addAsyncRouterNode("hold", (request, response, data) -> release.thenApply(result -> APIResponse.success("held")));
+            server.start();
+            SimpleRPCClient client = server.client();
+            CompletableFuture<APIResponse> first = client.call("hold", 1, Duration.ofSeconds(10));
+            CompletableFuture<APIResponse> second = client.call("hold", 2, Duration.ofSeconds(10));
+            TestServer.await("calls were not accepted", () -> session(server).getInFlight() == 2);
+            APIResponse rejected = client.call("hold", 3, Duration.ofSeconds(10)).get(10, TimeUnit.SECONDS);
+            assertEquals(429, rejected.getStatus());
+            assertEquals("Too many requests", rejected.getMessage());
+
+            release.complete(null);
+            assertEquals(200, status(first));
+            assertEquals(200, status(second));
+            assertEquals(200, status(client.call("hold", 4, Duration.ofSeconds(10))));
+        }
+    }
+
+    /**
+     * 自适应限制器达到限制时以503拒绝
+     */
+    @Test
+    void limiterRejects() throws Exception {
+        CompletableFuture<APIResponse> release = new CompletableFuture<>();
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1);
+        try (TestServer server = new TestServer()) {
+            server.router().setConcurrencyLimiter(limiter);
+            server.router().addAsyncRouterNode("hold", (request, response, data) -> release.thenApply(result -> APIResponse.success("held")));
+            server.start();
+            SimpleRPCClient client = server.client();
+            CompletableFuture<APIResponse> first = client.call("hold", 1, Duration.ofSeconds(10));
+            TestServer.await("call was not accepted", () -> limiter.getInFlight() == 1);
+            APIResponse rejected = client.call("hold", 2, Duration.ofSeconds(10)).get(10, TimeUnit.SECONDS);
+            assertEquals(503, rejected.getStatus());
+            assertEquals("Server overloaded", rejected.getMessage());
+
+            release.complete(null);
+            assertEquals(200, status(first));
+            assertEquals(0, limiter.getInFlight());
+        }
+    }
+
+    /**
+     * 永不完成的异步调用在调用方的截止时间到达时被取消，许可与调用名额随之归还
+     */
+    @Test
+    void neverCompletingStageExpiresAtDeadline() throws Exception {
+        CompletableFuture<APIResponse> never = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+        try (TestServer server = new TestServer()) {
+            server.router().setMaxInFlightPerSession(1);
+            server.router().addAsyncRouterNode("once", (request, response, data) ->
+                    calls.getAndIncrement() == 0 ? never : CompletableFuture.completedFuture(APIResponse.success("ok")),
+                    RouteOptions.create().maxConcurrency(1));
+            server.start();
+            SimpleRPCClient client = server.client();
+            assertEquals(408, status(client.call("once", 1, Duration.ofMillis(300))));
+            TestServer.await("stage was not cancelled", never::isCancelled);
+            TestServer.await("slot was not released", () -> session(server).getInFlight() == 0);
+            assertEquals(200, status(client.call("once", 2, Duration.ofSeconds(10))));
+        }
+    }
+
+    /**
+     * 调用没有截止时间时以路由器的超时时间为限，服务端回复408
+     */
+    @Test
+    void neverCompletingStageFallsBackToRouterTimeout() throws Exception {
+        CompletableFuture<APIResponse> never = new CompletableFuture<>();
+        try (TestServer server = new TestServer()) {
+            server.router().setTimeout(300);
+            server.router().addAsyncRouterNode("never", (request, response, data) -> never, RouteOptions.create().maxConcurrency(1));
+            server.start();
+            SimpleRPCClient client = server.client();
+            APIResponse data = APIResponse.create();
+            data.setKey("never");
+            data.setDeadline(-1);
+            APIResponse timedOut = client.call(data, Duration.ofSeconds(10)).get(10, TimeUnit.SECONDS);
+            assertEquals(408, timedOut.getStatus());
+            assertEquals("Request timeout", timedOut.getMessage());
+            assertTrue(never.isCancelled());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.foxapplication.simplerpc.server;
+
+import com.foxapplication.simplerpc.client.SimpleRPCClient;
+import com.foxapplication.simplerpc.common.APIResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class RPCRouterBatchTest {
+
+    /**
+     * 同一批量中的快速调用不等待慢速或永不完成的调用；慢速调用以异步路由实现，不占用分片线程
+     */
+    @Test
+    void fastRepliesDoNotWaitForSlowItems() throws Exception {
+        CompletableFuture<APIResponse> release = new CompletableFuture<>();
+        try (TestServer server = new TestServer()) {
+            server.router().setStripeCount(4);
+            server.router().addRouterNode("fast", (request, response, data) -> Optional.of(APIResponse.success("fast", data.getRequest())));
+            server.router().addAsyncRouterNode("slow", (request, response, data) -> release.thenApply(result -> APIResponse.success("slow")));
+            server.router().addAsyncRouterNode("never", (request, response, data) -> new CompletableFuture<>());
+            server.start();
+            SimpleRPCClient client = server.client(c -> {
+                c.setBatchSize(16);
+                c.setBatchLingerMicros(20000);
+            });
+
+            CompletableFuture<APIResponse> never = client.call("never", null, Duration.ofSeconds(30));
+            CompletableFuture<APIResponse> slow = client.call("slow", null, Duration.ofSeconds(30));
+            List<CompletableFuture<APIResponse>> fast = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                fast.add(client.call("fast", i, Duration.ofSeconds(30)));
+            }
+            for (int i = 0; i < fast.size(); i++) {
+                APIResponse response = fast.get(i).get(5, TimeUnit.SECONDS);
+                assertEquals(200, response.getStatus());
+                assertEquals(i, response.getRequest());
+            }
+            assertFalse(slow.isDone());
+            assertFalse(never.isDone());
+
+            release.complete(null);
+            assertEquals(200, slow.get(5, TimeUnit.SECONDS).getStatus());
+        }
+    }
+
+    /**
+     * 批量中的调用全部完成，响应逐一关联到各自的调用
+     */
+    @Test
+    void everyItemIsAnswered() throws Exception {
+        try (TestServer server = new TestServer()) {
+            server.router().setStripeCount(4);
+            server.router().addRouterNode("echo", (request, response, data) -> Optional.of(APIResponse.success("echo", data.getRequest())));
+            server.start();
+            SimpleRPCClient client = server.client(c -> c.setBatchSize(32));
+            List<CompletableFuture<APIResponse>> calls = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                calls.add(client.call("echo", i, Duration.ofSeconds(30)));
+            }
+            for (int i = 0; i < calls.size(); i++) {
+                assertEquals(i, calls.get(i).get(10, TimeUnit.SECONDS).getRequest());
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.foxapplication.simplerpc.server;
+
+import com.foxapplication.simplerpc.client.SimpleRPCClient;
+import com.foxapplication.simplerpc.common.APIResponse;
+import com.foxapplication.simplerpc.common.RouteOptions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RPCRouterCancellationTest {
+
+    /**
+     * 单分片的路由器，block路由阻塞到latch打开，count路由记录执行次数
+     */
+    private static TestServer server(CountDownLatch latch, AtomicInteger executions) throws Exception {
+        TestServer server = new TestServer();
+        server.router().setStripeCount(1);
+        server.router().addRouterNode("block", (request, response, data) -> {
+            try {
+                latch.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Optional.of(APIResponse.success("block"));
+        });
+        server.router().addRouterNode("count", (request, response, data) -> {
+            executions.incrementAndGet();
+            return Optional.of(APIResponse.success("count"));
+        });
+        return server.start();
+    }
+
+    /**
+     * 排队期间被取消的调用不再执行
+     */
+    @Test
+    void queuedCallIsSkipped() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        try (TestServer server = server(latch, executions)) {
+            SimpleRPCClient client = server.client();
+            CompletableFuture<APIResponse> block = client.call("block", null, Duration.ofSeconds(10));
+            CompletableFuture<APIResponse> queued = client.call("count", null, Duration.ofSeconds(10));
+            Thread.sleep(100);
+            queued.cancel(true);
+            TestServer.await("cancel was not received", () -> server.router().getCancelledCount() == 1);
+
+            latch.countDown();
+            assertEquals(200, block.get(10, TimeUnit.SECONDS).getStatus());
+            assertEquals(200, client.call("count", null, Duration.ofSeconds(10)).get(10, TimeUnit.SECONDS).getStatus());
+            assertEquals(1, executions.get());
+        }
+    }
+
+    /**
+     * 排队期间超过调用方截止时间的调用被丢弃
+     */
+    @Test
+    void expiredCallIsDropped() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        try (TestServer server = server(latch, executions)) {
+            SimpleRPCClient client = server.client();
+            CompletableFuture<APIResponse> block = client.call("block", null, Duration.ofSeconds(10));
+            CompletableFuture<APIResponse> expired = client.call("count", null, Duration.ofMillis(200));
+            assertEquals(408, expired.get(10, TimeUnit.SECONDS).getStatus());
+            // 服务端的截止时间从收到调用时开始计算，比调用方稍晚到达
+            Thread.sleep(200);
+
+            latch.countDown();
+            assertEquals(200, block.get(10, TimeUnit.SECONDS).getStatus());
+            TestServer.await("expired call was not dropped", () -> server.router().getExpiredCount() == 1);
+            assertEquals(0, executions.get());
+        }
+    }
+
+    /**
+     * 执行中的同步调用被取消时中断处理器线程，之后的调用不受残留的中断标记影响
+     */
+    @Test
+    void runningSyncCallIsInterrupted() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        try (TestServer server = new TestServer()) {
+            server.router().setStripeCount(1);
+            server.router().addRouterNode("sleep", (request, response, data) -> {
+                started.countDown();
+                try {
+                    Thread.sleep(30000);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+                return Optional.of(APIResponse.success("sleep"));
+            });
+            server.router().addRouterNode("check", (request, response, data) ->
+                    Optional.of(APIResponse.success("check", Thread.currentThread().isInterrupted())));
+            server.start();
+            SimpleRPCClient client = server.client();
+            CompletableFuture<APIResponse> sleep = client.call("sleep", null, Duration.ofSeconds(30));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            sleep.cancel(true);
+            TestServer.await("handler was not interrupted", interrupted::get);
+
+            APIResponse check = client.call("check", null, Duration.ofSeconds(10)).get(10, TimeUnit.SECONDS);
+            assertEquals(false, check.getRequest());
+        }
+    }
+
+    /**
+     * 执行的调用被取消时，等待者仍收到结果
+     */
+    @Test
+    void cancelledLeaderStillAnswersWaiters() throws Exception {
+        CompletableFuture<APIResponse> release = new CompletableFuture<>();
+        RouteOptions options = RouteOptions.create().singleFlight(true);
+        try (TestServer server = new TestServer()) {
+            server.router().addAsyncRouterNode("hot", (request, response, data) ->
+                    release.thenApply(result -> APIResponse.success("hot")), options);
+            server.start();
+            SimpleRPCClient client = server.client();
+            CompletableFuture<APIResponse> leader = client.call("hot", "x", Duration.ofSeconds(10));
+            TestServer.await("leader was not started", () -> options.getSingleFlight().getInFlight() == 1);
+            CompletableFuture<APIResponse> waiter = client.call("hot", "x", Duration.ofSeconds(10));
+            TestServer.await("waiter was not joined", () -> options.getSingleFlight().getSharedCount() == 1);
+            leader.cancel(true);
+            TestServer.await("cancel was not received", () -> server.router().getCancelledCount() == 1);
+
+            release.complete(null);
+            assertEquals(200, waiter.get(10, TimeUnit.SECONDS).getStatus());
+        }
+    }
+}
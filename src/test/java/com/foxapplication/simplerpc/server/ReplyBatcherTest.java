@@ -0,0 +1,81 @@
+package com.foxapplication.simplerpc.server;
+
+import com.foxapplication.simplerpc.common.APIResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplyBatcherTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<List<APIResponse>> flushed = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private static APIResponse reply(int id) {
+        return APIResponse.create().id(id);
+    }
+
+    @Test
+    void repliesWithinLingerAreMerged() throws InterruptedException {
+        ReplyBatcher batcher = new ReplyBatcher(64, TimeUnit.MILLISECONDS.toNanos(50), scheduler, flushed::add);
+        batcher.add(reply(1));
+        batcher.add(reply(2));
+        batcher.add(reply(3));
+        assertTrue(flushed.isEmpty());
+        TestServer.await("batch was not flushed", () -> flushed.size() == 1);
+        assertEquals(3, flushed.get(0).size());
+
+        batcher.add(reply(4));
+        TestServer.await("batch was not flushed", () -> flushed.size() == 2);
+        assertEquals(1, flushed.get(1).size());
+    }
+
+    @Test
+    void fullBatchIsFlushedImmediately() {
+        ReplyBatcher batcher = new ReplyBatcher(3, TimeUnit.SECONDS.toNanos(10), scheduler, flushed::add);
+        for (int i = 1; i <= 7; i++) {
+            batcher.add(reply(i));
+        }
+        assertEquals(2, flushed.size());
+        assertEquals(3, flushed.get(0).size());
+        assertEquals(3, flushed.get(1).size());
+    }
+
+    @Test
+    void withoutLingerEveryReplyIsSentAlone() {
+        ReplyBatcher batcher = new ReplyBatcher(64, 0, scheduler, flushed::add);
+        batcher.add(reply(1));
+        batcher.add(reply(2));
+        assertEquals(2, flushed.size());
+    }
+
+    @Test
+    void closeDropsPendingReplies() throws InterruptedException {
+        ReplyBatcher batcher = new ReplyBatcher(64, TimeUnit.MILLISECONDS.toNanos(20), scheduler, flushed::add);
+        batcher.add(reply(1));
+        batcher.close();
+        batcher.add(reply(2));
+        Thread.sleep(100);
+        assertTrue(flushed.isEmpty());
+    }
+
+    @Test
+    void stoppedSchedulerFlushesImmediately() {
+        scheduler.shutdown();
+        ReplyBatcher batcher = new ReplyBatcher(64, TimeUnit.SECONDS.toNanos(10), scheduler, flushed::add);
+        batcher.add(reply(1));
+        assertEquals(1, flushed.size());
+    }
+}
@@ -0,0 +1,70 @@
+package com.foxapplication.simplerpc.server;
+
+import com.foxapplication.simplerpc.client.SimpleRPCClient;
+import com.foxapplication.simplerpc.common.APIResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionCallbackTest {
+
+    private static APIResponse request(String key) {
+        APIResponse data = APIResponse.create();
+        data.setKey(key);
+        return data;
+    }
+
+    /**
+     * 客户端回应后回调收到结果，会话上的挂起回调随之移除
+     */
+    @Test
+    void answeredCallbackIsRemoved() throws Exception {
+        try (TestServer server = new TestServer().start()) {
+            SimpleRPCClient client = server.client();
+            client.addRouterNode("echo", data -> Optional.of(APIResponse.success("echo", data.getRequest())));
+            RPCSession session = server.router().getSessions().iterator().next();
+            CompletableFuture<APIResponse> answer = new CompletableFuture<>();
+            APIResponse data = request("echo");
+            data.setRequest("ping");
+            assertTrue(server.router().call(session.getId(), data, (request, response, reply) -> {
+                answer.complete(reply);
+                return Optional.empty();
+            }));
+
+            APIResponse reply = answer.get(10, TimeUnit.SECONDS);
+            assertEquals(200, reply.getStatus());
+            assertEquals("ping", reply.getRequest());
+            TestServer.await("callback was not removed", () -> session.getPendingCallbacks() == 0);
+        }
+    }
+
+    /**
+     * 连接在回应前关闭时回调立即收到503，不必等到超时
+     */
+    @Test
+    void closeFailsPendingCallbacks() throws Exception {
+        try (TestServer server = new TestServer().start()) {
+            SimpleRPCClient client = server.client();
+            client.addRouterNode("silent", data -> Optional.empty());
+            RPCSession session = server.router().getSessions().iterator().next();
+            CompletableFuture<APIResponse> answer = new CompletableFuture<>();
+            assertTrue(server.router().call(session.getId(), request("silent"), (request, response, reply) -> {
+                answer.complete(reply);
+                return Optional.empty();
+            }));
+            assertEquals(1, session.getPendingCallbacks());
+
+            client.stop();
+            APIResponse reply = answer.get(10, TimeUnit.SECONDS);
+            assertEquals(503, reply.getStatus());
+            assertEquals(0, session.getPendingCallbacks());
+            assertFalse(server.router().call(session.getId(), request("silent"), (request, response, ignored) -> Optional.empty()));
+        }
+    }
+}
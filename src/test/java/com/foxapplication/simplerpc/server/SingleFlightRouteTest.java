@@ -0,0 +1,78 @@
+package com.foxapplication.simplerpc.server;
+
+import com.foxapplication.simplerpc.client.SimpleRPCClient;
+import com.foxapplication.simplerpc.common.APIResponse;
+import com.foxapplication.simplerpc.common.RouteOptions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SingleFlightRouteTest {
+
+    /**
+     * 相同的进行中调用只执行一次处理器，结果关联到各自的调用
+     */
+    @Test
+    void identicalCallsShareOneExecution() throws Exception {
+        CompletableFuture<APIResponse> release = new CompletableFuture<>();
+        AtomicInteger executions = new AtomicInteger();
+        RouteOptions options = RouteOptions.create().singleFlight(true);
+        try (TestServer server = new TestServer()) {
+            server.router().addAsyncRouterNode("hot", (request, response, data) -> {
+                executions.incrementAndGet();
+                return release.thenApply(result -> APIResponse.success("hot", data.getRequest()));
+            }, options);
+            server.start();
+            SimpleRPCClient first = server.client();
+            SimpleRPCClient second = server.client();
+            List<CompletableFuture<APIResponse>> calls = new ArrayList<>();
+            calls.add(first.call("hot", "x", Duration.ofSeconds(10)));
+            TestServer.await("leader was not started", () -> executions.get() == 1);
+            calls.add(first.call("hot", "x", Duration.ofSeconds(10)));
+            calls.add(second.call("hot", "x", Duration.ofSeconds(10)));
+            TestServer.await("calls were not joined", () -> options.getSingleFlight().getSharedCount() == 2);
+
+            release.complete(null);
+            for (CompletableFuture<APIResponse> call : calls) {
+                APIResponse response = call.get(10, TimeUnit.SECONDS);
+                assertEquals(200, response.getStatus());
+                assertEquals("x", response.getRequest());
+            }
+            assertEquals(1, executions.get());
+            assertEquals(0, options.getSingleFlight().getInFlight());
+        }
+    }
+
+    /**
+     * 准入检查拒绝的调用不加入合并，拒绝结果不会交给其他调用方
+     */
+    @Test
+    void rejectionsAreNotShared() throws Exception {
+        CompletableFuture<APIResponse> release = new CompletableFuture<>();
+        RouteOptions options = RouteOptions.create().singleFlight(true);
+        try (TestServer server = new TestServer()) {
+            server.router().setMaxInFlightPerSession(1);
+            server.router().addAsyncRouterNode("hot", (request, response, data) ->
+                    release.thenApply(result -> APIResponse.success("hot")), options);
+            server.start();
+            SimpleRPCClient busy = server.client();
+            SimpleRPCClient other = server.client();
+            CompletableFuture<APIResponse> leader = busy.call("hot", "x", Duration.ofSeconds(10));
+            TestServer.await("leader was not started", () -> options.getSingleFlight().getInFlight() == 1);
+            assertEquals(429, busy.call("hot", "x", Duration.ofSeconds(10)).get(10, TimeUnit.SECONDS).getStatus());
+            CompletableFuture<APIResponse> waiter = other.call("hot", "x", Duration.ofSeconds(10));
+            TestServer.await("waiter was not joined", () -> options.getSingleFlight().getSharedCount() == 1);
+
+            release.complete(null);
+            assertEquals(200, leader.get(10, TimeUnit.SECONDS).getStatus());
+            assertEquals(200, waiter.get(10, TimeUnit.SECONDS).getStatus());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.foxapplication.simplerpc.server;
+
+import com.foxapplication.simplerpc.client.SimpleRPCClient;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 测试用的服务端，监听本机的空闲端口，关闭时一并停止创建的客户端
+ */
+public final class TestServer implements AutoCloseable {
+
+    private final SimpleRPC server;
+    private final int port;
+    private final List<SimpleRPCClient> clients = new ArrayList<>();
+
+    /**
+     * 创建并初始化服务端，启动前可以通过{@link #router()}配置路由
+     */
+    public TestServer() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new SimpleRPC("/ws", port);
+        server.init();
+    }
+
+    public SimpleRPC server() {
+        return server;
+    }
+
+    public RPCRouter router() {
+        return server.getRpcRouter();
+    }
+
+    /**
+     * 启动服务端
+     *
+     * @return 当前对象，便于链式调用
+     */
+    public TestServer start() {
+        server.start();
+        return this;
+    }
+
+    /**
+     * 获取客户端连接的地址
+     *
+     * @return 不带协议的地址
+     */
+    public String url() {
+        return "127.0.0.1:" + port + "/ws";
+    }
+
+    /**
+     * 创建并启动一个客户端，等待连接建立
+     *
+     * @param config 启动前的客户端配置
+     * @return 已连接的客户端
+     */
+    public SimpleRPCClient client(Consumer<SimpleRPCClient> config) throws Exception {
+        SimpleRPCClient client = new SimpleRPCClient(url());
+        config.accept(client);
+        client.init();
+        client.start();
+        clients.add(client);
+        await("client did not connect", client::isStandby);
+        return client;
+    }
+
+    /**
+     * 创建并启动一个默认配置的客户端，等待连接建立
+     *
+     * @return 已连接的客户端
+     */
+    public SimpleRPCClient client() throws Exception {
+        return client(client -> {
+        });
+    }
+
+    /**
+     * 等待条件成立，超时时断言失败
+     */
+    public static void await(String message, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, message);
+            Thread.sleep(5);
+        }
+    }
+
+    @Override
+    public void close() {
+        clients.forEach(SimpleRPCClient::stop);
+        server.stop();
+    }
+}